@@ -0,0 +1,119 @@
+package io.sweers.tictactoe;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Evaluates large batches of packed positions (see {@link PackedBoard}) in parallel.
+ *
+ * Batches are split into contiguous chunks that worker threads solve straight into the caller's
+ * output arrays, so the only allocations are per chunk rather than per position. Every worker
+ * goes through the same {@link SolvedPositionCache}, which is what deduplicates repeated and
+ * transposed positions: the first worker to reach one solves it and everyone else reads it back.
+ */
+public final class BatchEvaluator {
+
+    // Below this it's cheaper to just do the work on the calling thread
+    private static final int MIN_CHUNK_SIZE = 256;
+
+    private final PositionSolver solver;
+    private final ExecutorService executor;
+    private final int parallelism;
+
+    public BatchEvaluator(PositionSolver solver) {
+        this(solver, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchEvaluator(PositionSolver solver, int parallelism) {
+        this.solver = solver;
+        this.parallelism = parallelism;
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism,
+                30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "BatchEvaluator-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        ((ThreadPoolExecutor) executor).allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Solves every position in {@code positions}, blocking until they're all done.
+     *
+     * @param scores receives each position's score for the player to move
+     * @param moves receives each position's best move, or {@link PositionSolver#NO_MOVE} if the
+     *              game is already over
+     */
+    public void evaluate(int[] positions, int[] scores, int[] moves) throws InterruptedException {
+        if (scores.length < positions.length || moves.length < positions.length) {
+            throw new IllegalArgumentException("Output arrays are smaller than the batch");
+        }
+
+        final int count = positions.length;
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, (count + parallelism * 4 - 1) / (parallelism * 4));
+        if (count <= chunkSize) {
+            solver.solveAll(positions, 0, count, scores, moves);
+            return;
+        }
+
+        int chunks = (count + chunkSize - 1) / chunkSize;
+        CountDownLatch latch = new CountDownLatch(chunks);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int from = 0; from < count; from += chunkSize) {
+            executor.execute(new Chunk(positions, from, Math.min(count, from + chunkSize), scores, moves, latch, failure));
+        }
+        latch.await();
+
+        Throwable error = failure.get();
+        if (error != null) {
+            throw new RuntimeException("Batch evaluation failed", error);
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private final class Chunk implements Runnable {
+        private final int[] positions;
+        private final int from;
+        private final int to;
+        private final int[] scores;
+        private final int[] moves;
+        private final CountDownLatch latch;
+        private final AtomicReference<Throwable> failure;
+
+        Chunk(int[] positions, int from, int to, int[] scores, int[] moves,
+                CountDownLatch latch, AtomicReference<Throwable> failure) {
+            this.positions = positions;
+            this.from = from;
+            this.to = to;
+            this.scores = scores;
+            this.moves = moves;
+            this.latch = latch;
+            this.failure = failure;
+        }
+
+        @Override
+        public void run() {
+            try {
+                solver.solveAll(positions, from, to, scores, moves);
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            } finally {
+                latch.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package io.sweers.tictactoe;
+
+import java.util.Random;
+
+import static io.sweers.tictactoe.TicTacToeGame.NONE;
+import static io.sweers.tictactoe.TicTacToeGame.PLAYER_ONE;
+import static io.sweers.tictactoe.TicTacToeGame.PLAYER_TWO;
+
+/**
+ * Mutable N x N board where K in a row wins, meant for searching. Moves are made and unmade in
+ * place and a Zobrist hash of the position (including who's to move) is kept up to date, so
+ * searches never need to copy the board or build string keys.
+ *
+ * Cells hold {@link #EMPTY}, {@link #ONE} or {@link #TWO} rather than the chars {@link TicTacToeGame}
+ * uses; {@link #toChar(byte)} and {@link #fromChar(char)} convert between the two.
+ */
+public final class Board {
+
+    public static final byte EMPTY = 0;
+    public static final byte ONE = 1;
+    public static final byte TWO = 2;
+
+    // Row/column steps for horizontal, vertical, diagonal and anti-diagonal lines
+    private static final int[] DIRECTIONS = {1, 0, 0, 1, 1, 1, 1, -1};
+
+    private final int size;
+    private final int winLength;
+    private final byte[] cells;
+    private final int[] history;
+    private final long[] zobrist;
+    private final long zobristTwoToMove;
+    private int moveCount;
+    private byte toMove = ONE;
+    private byte winner = EMPTY;
+    private long hash;
+
+    public Board(int size, int winLength) {
+        if (winLength < 1 || winLength > size) {
+            throw new IllegalArgumentException("Can't get " + winLength + " in a row on a " + size + "x" + size + " board");
+        }
+        this.size = size;
+        this.winLength = winLength;
+        this.cells = new byte[size * size];
+        this.history = new int[size * size];
+
+        // Seeded so that every board of a given size hashes positions the same way
+        Random random = new Random(size * 31 + winLength);
+        zobrist = new long[cells.length * 2];
+        for (int i = 0; i < zobrist.length; i++) {
+            zobrist[i] = random.nextLong();
+        }
+        zobristTwoToMove = random.nextLong();
+    }
+
+    /**
+     * Builds a 3x3 board from one of {@link TicTacToeGame}'s grids.
+     */
+    public static Board fromGrid(char[] grid, char toMove) {
+        int size = (int) Math.round(Math.sqrt(grid.length));
+        Board board = new Board(size, size);
+        for (int i = 0; i < grid.length; i++) {
+            byte player = fromChar(grid[i]);
+            if (player != EMPTY) {
+                board.set(i, player);
+            }
+        }
+        board.setToMove(fromChar(toMove));
+        return board;
+    }
+
+    public static byte fromChar(char player) {
+        return player == PLAYER_ONE ? ONE : player == PLAYER_TWO ? TWO : EMPTY;
+    }
+
+    public static char toChar(byte player) {
+        return player == ONE ? PLAYER_ONE : player == TWO ? PLAYER_TWO : NONE;
+    }
+
+    public static byte opponent(byte player) {
+        return player == ONE ? TWO : ONE;
+    }
+
+    public Board copy() {
+        Board copy = new Board(size, winLength);
+        System.arraycopy(cells, 0, copy.cells, 0, cells.length);
+        System.arraycopy(history, 0, copy.history, 0, moveCount);
+        copy.moveCount = moveCount;
+        copy.toMove = toMove;
+        copy.winner = winner;
+        copy.hash = hash;
+        return copy;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int winLength() {
+        return winLength;
+    }
+
+    public int cellCount() {
+        return cells.length;
+    }
+
+    public byte get(int cell) {
+        return cells[cell];
+    }
+
+    public byte toMove() {
+        return toMove;
+    }
+
+    public void setToMove(byte player) {
+        if (player != toMove) {
+            toMove = player;
+            hash ^= zobristTwoToMove;
+        }
+    }
+
+    public int moveCount() {
+        return moveCount;
+    }
+
+    /**
+     * @return the cell played {@code ply} moves into the game
+     */
+    public int moveAt(int ply) {
+        return history[ply];
+    }
+
+    public int lastMove() {
+        return moveCount == 0 ? -1 : history[moveCount - 1];
+    }
+
+    public int emptyCount() {
+        int empty = 0;
+        for (byte cell : cells) {
+            if (cell == EMPTY) {
+                empty++;
+            }
+        }
+        return empty;
+    }
+
+    public long hash() {
+        return hash;
+    }
+
+    /**
+     * @return the player who completed a line, or {@link #EMPTY} if nobody has yet
+     */
+    public byte winner() {
+        return winner;
+    }
+
+    public boolean isOver() {
+        return winner != EMPTY || emptyCount() == 0;
+    }
+
+    public boolean isLegal(int cell) {
+        return winner == EMPTY && cell >= 0 && cell < cells.length && cells[cell] == EMPTY;
+    }
+
+    /**
+     * Places a piece for whoever is to move and passes the turn.
+     */
+    public void play(int cell) {
+        if (!isLegal(cell)) {
+            throw new IllegalStateException("Illegal move " + cell + " on\n" + this);
+        }
+        byte player = toMove;
+        set(cell, player);
+        history[moveCount++] = cell;
+        if (completesLine(cell)) {
+            winner = player;
+        }
+        setToMove(opponent(player));
+    }
+
+    /**
+     * Takes back the most recent {@link #play(int)}.
+     */
+    public void undo() {
+        int cell = history[--moveCount];
+        byte player = cells[cell];
+        hash ^= zobrist[cell * 2 + player - 1];
+        cells[cell] = EMPTY;
+        winner = EMPTY;
+        setToMove(player);
+    }
+
+    public void clear() {
+        while (moveCount > 0) {
+            undo();
+        }
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] != EMPTY) {
+                hash ^= zobrist[i * 2 + cells[i] - 1];
+                cells[i] = EMPTY;
+            }
+        }
+        winner = EMPTY;
+        setToMove(ONE);
+    }
+
+    /**
+     * Drops a piece on the board without recording it as a move, e.g. when setting up a position.
+     */
+    public void set(int cell, byte player) {
+        if (cells[cell] != EMPTY) {
+            hash ^= zobrist[cell * 2 + cells[cell] - 1];
+        }
+        cells[cell] = player;
+        if (player != EMPTY) {
+            hash ^= zobrist[cell * 2 + player - 1];
+        }
+    }
+
+    /**
+     * @return true if the piece on the given cell is part of K in a row
+     */
+    public boolean completesLine(int cell) {
+        byte player = cells[cell];
+        if (player == EMPTY) {
+            return false;
+        }
+        int row = cell / size;
+        int column = cell % size;
+        for (int d = 0; d < DIRECTIONS.length; d += 2) {
+            int dRow = DIRECTIONS[d + 1];
+            int dColumn = DIRECTIONS[d];
+            int run = 1
+                    + count(row, column, dRow, dColumn, player)
+                    + count(row, column, -dRow, -dColumn, player);
+            if (run >= winLength) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int count(int row, int column, int dRow, int dColumn, byte player) {
+        int count = 0;
+        int r = row + dRow;
+        int c = column + dColumn;
+        while (r >= 0 && r < size && c >= 0 && c < size && cells[r * size + c] == player) {
+            count++;
+            r += dRow;
+            c += dColumn;
+        }
+        return count;
+    }
+
+    /**
+     * Enumerates every window of {@code winLength} cells in a row on a {@code size} board, i.e.
+     * every line someone could win on.
+     */
+    public static int[][] lines(int size, int winLength) {
+        int count = 0;
+        int[][] scratch = new int[4 * size * size][];
+        for (int row = 0; row < size; row++) {
+            for (int column = 0; column < size; column++) {
+                for (int d = 0; d < DIRECTIONS.length; d += 2) {
+                    int dColumn = DIRECTIONS[d];
+                    int dRow = DIRECTIONS[d + 1];
+                    int endRow = row + dRow * (winLength - 1);
+                    int endColumn = column + dColumn * (winLength - 1);
+                    if (endRow < 0 || endRow >= size || endColumn < 0 || endColumn >= size) {
+                        continue;
+                    }
+                    int[] line = new int[winLength];
+                    for (int i = 0; i < winLength; i++) {
+                        line[i] = (row + dRow * i) * size + column + dColumn * i;
+                    }
+                    scratch[count++] = line;
+                }
+            }
+        }
+        int[][] lines = new int[count][];
+        System.arraycopy(scratch, 0, lines, 0, count);
+        return lines;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < cells.length; i++) {
+            builder.append(toChar(cells[i]));
+            if (i % size == size - 1 && i != cells.length - 1) {
+                builder.append('\n');
+            }
+        }
+        return builder.toString();
+    }
+}
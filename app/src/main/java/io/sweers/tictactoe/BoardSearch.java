@@ -0,0 +1,310 @@
+package io.sweers.tictactoe;
+
+/**
+ * Depth-limited alpha-beta search over a {@link Board} of any size.
+ *
+ * Once a position is covered by the {@link EndgameTable} (if there is one), the search stops
+ * descending and reads the exact result out of the table instead, so play near the end of the
+ * game is both instant and perfect.
+ *
+ * When a search can't see to the end of the game, positions at the horizon are scored by a
+ * {@link PatternEvaluator} that's kept up to date as moves are made and unmade, and only moves near
+ * existing stones are searched. Searches that can reach the end stay exhaustive, so their results
+ * are exact. Either way moves are tried most promising first, which is what makes alpha-beta cut.
+ *
+ * Positions that have already been searched deep enough are answered from a transposition table,
+ * which is kept from one call to the next. That's what lets consecutive turns (or
+ * {@link #scoreMove(Board, int, int) scoring} every move of the same position) build on each
+ * other's work rather than starting from nothing.
+ *
+ * Scores are from the perspective of the player to move. Wins are worth {@link #WIN_SCORE} minus
+ * the number of plies it takes to get there, so quicker wins are preferred. Instances keep scratch
+ * state between calls and shouldn't be shared between threads.
+ */
+public final class BoardSearch {
+
+    public static final int WIN_SCORE = 1000000;
+
+    private static final int TABLE_SIZE = 1 << 14;
+    private static final int EXACT = 0;
+    private static final int LOWER_BOUND = 1;
+    private static final int UPPER_BOUND = 2;
+
+    private EndgameTable endgameTable;
+    private PatternEvaluator evaluator;
+    private float[] weights;
+    // Which installed EvalWeights the evaluator was built with, when they aren't overridden
+    private int weightsVersion;
+    private int[][] moveBuffers;
+    private float[][] scoreBuffers;
+    private boolean pruning;
+    private long[] tableKeys;
+    private int[] tableScores;
+    // Depth searched, shifted left two, and which kind of score it is
+    private int[] tableEntries;
+    private long nodes;
+    private int lastScore;
+
+    public void setEndgameTable(EndgameTable table) {
+        this.endgameTable = table;
+        clearTable();
+    }
+
+    /**
+     * Overrides the evaluation weights, or goes back to {@link EvalWeights#forWinLength(int)} if null.
+     */
+    public void setWeights(float[] weights) {
+        this.weights = weights;
+        evaluator = null;
+        clearTable();
+    }
+
+    public long nodes() {
+        return nodes;
+    }
+
+    /**
+     * @return the score of the root position from the most recent {@link #bestMove(Board, int)}
+     */
+    public int lastScore() {
+        return lastScore;
+    }
+
+    /**
+     * @param maxDepth how many plies to look ahead before giving up on finding a result
+     * @return the best move for the player to move, or -1 if the game is already over
+     */
+    public int bestMove(Board board, int maxDepth) {
+        nodes = 0;
+        if (board.isOver()) {
+            lastScore = 0;
+            return -1;
+        }
+
+        if (endgameTable != null && endgameTable.covers(board)) {
+            int move = endgameTable.bestMove(board);
+            if (move != -1) {
+                lastScore = tableScore(endgameTable.value(board), 0);
+                return move;
+            }
+        }
+
+        prepare(board);
+        pruning = maxDepth < board.emptyCount();
+        int alpha = -WIN_SCORE - 1;
+        int bestMove = -1;
+        int count = orderedMoves(board, 0);
+        int[] moves = moveBuffers[0];
+        for (int i = 0; i < count; i++) {
+            int cell = moves[i];
+            play(board, cell);
+            int score = -negamax(board, maxDepth - 1, 1, -WIN_SCORE - 1, -alpha);
+            undo(board);
+            if (score > alpha || bestMove == -1) {
+                alpha = score;
+                bestMove = cell;
+            }
+        }
+        lastScore = alpha;
+        return bestMove;
+    }
+
+    /**
+     * Scores a single move exactly, rather than just well enough to rule it out like
+     * {@link #bestMove(Board, int)} does. Scoring every move of a position this way is what hints
+     * are made of; the transposition table means the moves share most of the work.
+     *
+     * @return the score for the player to move after playing {@code cell}
+     */
+    public int scoreMove(Board board, int cell, int maxDepth) {
+        nodes = 0;
+        prepare(board);
+        pruning = maxDepth < board.emptyCount();
+        play(board, cell);
+        int score = -negamax(board, maxDepth - 1, 1, -WIN_SCORE - 1, WIN_SCORE + 1);
+        undo(board);
+        return score;
+    }
+
+    private int negamax(Board board, int depth, int ply, int alpha, int beta) {
+        nodes++;
+        if (board.winner() != Board.EMPTY) {
+            // Whoever just moved won
+            return ply - WIN_SCORE;
+        }
+
+        if (endgameTable != null && endgameTable.covers(board)) {
+            int value = endgameTable.value(board);
+            if (value != EndgameTable.UNKNOWN) {
+                return tableScore(value, ply);
+            }
+        }
+
+        byte toMove = board.toMove();
+        if (evaluator.hasOpenWin(toMove)) {
+            // One stone away from K in a row with nothing in the way, so they win next move
+            return WIN_SCORE - ply - 1;
+        }
+
+        if (depth <= 0) {
+            return evaluator.evaluate(toMove);
+        }
+
+        long key = board.hash();
+        int slot = (int) (key ^ (key >>> 32)) & (TABLE_SIZE - 1);
+        if (tableKeys[slot] == key && tableEntries[slot] >> 2 >= depth) {
+            int score = fromTable(tableScores[slot], ply);
+            switch (tableEntries[slot] & 3) {
+                case EXACT:
+                    return score;
+                case LOWER_BOUND:
+                    alpha = Math.max(alpha, score);
+                    break;
+                default:
+                    beta = Math.min(beta, score);
+            }
+            if (alpha >= beta) {
+                return score;
+            }
+        }
+
+        int originalAlpha = alpha;
+        int count = orderedMoves(board, ply);
+        int[] moves = moveBuffers[ply];
+        for (int i = 0; i < count; i++) {
+            play(board, moves[i]);
+            int score = -negamax(board, depth - 1, ply + 1, -beta, -alpha);
+            undo(board);
+            if (score > alpha) {
+                alpha = score;
+                if (alpha >= beta) {
+                    break;
+                }
+            }
+        }
+        if (count == 0) {
+            return 0;   // No moves left means a tie
+        }
+
+        int kind = alpha <= originalAlpha ? UPPER_BOUND : alpha >= beta ? LOWER_BOUND : EXACT;
+        tableKeys[slot] = key;
+        tableScores[slot] = toTable(alpha, ply);
+        tableEntries[slot] = depth << 2 | kind;
+        return alpha;
+    }
+
+    /**
+     * Wins are stored as plies from the position they're stored for, rather than from the root of
+     * whichever search found them, so they still mean the same thing when reached some other way.
+     */
+    private static int toTable(int score, int ply) {
+        return score > WIN_SCORE / 2 ? score + ply : score < -WIN_SCORE / 2 ? score - ply : score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        return score > WIN_SCORE / 2 ? score - ply : score < -WIN_SCORE / 2 ? score + ply : score;
+    }
+
+    private void clearTable() {
+        tableKeys = null;
+        tableScores = null;
+        tableEntries = null;
+    }
+
+    /**
+     * Gets the evaluator and move buffers ready for a search of the given board, starting over if
+     * the board's dimensions or the installed {@link EvalWeights} have changed since last time.
+     */
+    private void prepare(Board board) {
+        int version = EvalWeights.version();
+        if (evaluator == null
+                || evaluator.size() != board.size()
+                || evaluator.winLength() != board.winLength()
+                || (weights == null && version != weightsVersion)) {
+            evaluator = new PatternEvaluator(board.size(), board.winLength());
+            weightsVersion = version;
+            if (weights != null) {
+                evaluator.setWeights(weights);
+            }
+            moveBuffers = new int[board.cellCount() + 1][];
+            scoreBuffers = new float[board.cellCount() + 1][];
+            // Scores in the table came from the old evaluator
+            clearTable();
+        }
+        if (tableKeys == null) {
+            tableKeys = new long[TABLE_SIZE];
+            tableScores = new int[TABLE_SIZE];
+            tableEntries = new int[TABLE_SIZE];
+        }
+        evaluator.reset(board);
+    }
+
+    private void play(Board board, int cell) {
+        byte player = board.toMove();
+        board.play(cell);
+        evaluator.add(cell, player);
+    }
+
+    private void undo(Board board) {
+        int cell = board.lastMove();
+        byte player = board.get(cell);
+        board.undo();
+        evaluator.remove(cell, player);
+    }
+
+    /**
+     * Fills in the move buffer for the given ply, best looking moves first.
+     *
+     * @return how many moves there are
+     */
+    private int orderedMoves(Board board, int ply) {
+        if (moveBuffers[ply] == null) {
+            moveBuffers[ply] = new int[board.cellCount()];
+            scoreBuffers[ply] = new float[board.cellCount()];
+        }
+        int[] moves = moveBuffers[ply];
+        float[] scores = scoreBuffers[ply];
+
+        int count;
+        if (pruning) {
+            count = evaluator.candidates(board, moves);
+        } else {
+            count = 0;
+            for (int cell = 0; cell < board.cellCount(); cell++) {
+                if (board.get(cell) == Board.EMPTY) {
+                    moves[count++] = cell;
+                }
+            }
+        }
+
+        // Insertion sort is plenty for a board's worth of moves
+        byte player = board.toMove();
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            float score = evaluator.moveScore(move, player);
+            int j = i;
+            while (j > 0 && scores[j - 1] < score) {
+                moves[j] = moves[j - 1];
+                scores[j] = scores[j - 1];
+                j--;
+            }
+            moves[j] = move;
+            scores[j] = score;
+        }
+        return count;
+    }
+
+    /**
+     * Tables only know the result, not how far away it is, so assume the game plays out to the end.
+     */
+    private static int tableScore(int value, int ply) {
+        switch (value) {
+            case EndgameTable.WIN:
+                return WIN_SCORE - ply - 1;
+            case EndgameTable.LOSS:
+                return ply + 1 - WIN_SCORE;
+            default:
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package io.sweers.tictactoe;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Perfect-play table for every position on an N x N, K in a row board with at most
+ * {@link #maxEmpty()} empty cells.
+ *
+ * Tables are built by retrograde analysis: pieces only ever get added, so every position with e
+ * empty cells only depends on positions with e - 1, and we can solve layer by layer outwards from
+ * the full board. Each position is given a dense index via a combinatorial ranking (which cells are
+ * empty, then which of the filled cells belong to PLAYER_ONE), and stores one byte holding its
+ * value for either player to move.
+ *
+ * Built tables can be written to disk and later memory mapped with {@link #map(File)}, so
+ * looking a position up at runtime costs a rank computation and a single read. The app ships the
+ * 3x3 one as {@code assets/endgame_3x3.bin}, built with {@code EndgameTable 3 3 6}.
+ *
+ * Usage: {@code EndgameTable <size> <winLength> <maxEmpty> <output file>}
+ */
+public final class EndgameTable {
+
+    public static final int UNKNOWN = 0;
+    public static final int LOSS = 1;
+    public static final int DRAW = 2;
+    public static final int WIN = 3;
+
+    private static final int MAGIC = 0x54545445;    // "TTTE"
+    private static final int VERSION = 1;
+
+    private final int size;
+    private final int winLength;
+    private final int maxEmpty;
+    private final int cellCount;
+    private final long[][] binomials;
+    private final int[] layerOffsets;
+    private final ByteBuffer data;
+    private final int dataStart;
+
+    private EndgameTable(int size, int winLength, int maxEmpty, ByteBuffer data, int dataStart) {
+        this.size = size;
+        this.winLength = winLength;
+        this.maxEmpty = maxEmpty;
+        this.cellCount = size * size;
+        this.binomials = binomials(cellCount);
+        this.layerOffsets = layerOffsets(cellCount, maxEmpty, binomials);
+        this.data = data;
+        this.dataStart = dataStart;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("Usage: EndgameTable <size> <winLength> <maxEmpty> <output file>");
+            System.exit(1);
+        }
+        long start = System.nanoTime();
+        EndgameTable table = build(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+        table.write(new File(args[3]));
+        System.out.println("Built " + table.positionCount() + " positions in "
+                + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+
+    /**
+     * Solves every position with at most {@code maxEmpty} empty cells.
+     */
+    public static EndgameTable build(int size, int winLength, int maxEmpty) {
+        int cellCount = size * size;
+        if (maxEmpty < 0 || maxEmpty > cellCount) {
+            throw new IllegalArgumentException("maxEmpty must be between 0 and " + cellCount);
+        }
+        long[][] binomials = binomials(cellCount);
+        int[] offsets = layerOffsets(cellCount, maxEmpty, binomials);
+        EndgameTable table = new EndgameTable(size, winLength, maxEmpty,
+                ByteBuffer.wrap(new byte[offsets[maxEmpty + 1]]), 0);
+        new Builder(table).run();
+        return table;
+    }
+
+    /**
+     * Memory maps a table previously saved with {@link #write(File)}.
+     */
+    public static EndgameTable map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not an endgame table: " + file);
+            }
+            EndgameTable table = new EndgameTable(buffer.getInt(8), buffer.getInt(12), buffer.getInt(16), buffer, 20);
+            if (channel.size() < table.dataStart + table.positionCount()) {
+                throw new IOException("Truncated endgame table: " + file);
+            }
+            return table;
+        } finally {
+            // The mapping stays valid after the channel is closed
+            raf.close();
+        }
+    }
+
+    public void write(File file) throws IOException {
+        OutputStream stream = new FileOutputStream(file);
+        try {
+            write(stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    public void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(size);
+        out.writeInt(winLength);
+        out.writeInt(maxEmpty);
+        byte[] chunk = new byte[8192];
+        int count = positionCount();
+        for (int i = 0; i < count; i += chunk.length) {
+            int length = Math.min(chunk.length, count - i);
+            for (int j = 0; j < length; j++) {
+                chunk[j] = data.get(dataStart + i + j);
+            }
+            out.write(chunk, 0, length);
+        }
+        out.flush();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int winLength() {
+        return winLength;
+    }
+
+    public int maxEmpty() {
+        return maxEmpty;
+    }
+
+    public int positionCount() {
+        return layerOffsets[maxEmpty + 1];
+    }
+
+    /**
+     * @return true if the given board's position is in this table
+     */
+    public boolean covers(Board board) {
+        return board.size() == size
+                && board.winLength() == winLength
+                && board.emptyCount() <= maxEmpty;
+    }
+
+    /**
+     * @return {@link #WIN}, {@link #DRAW} or {@link #LOSS} for the player to move, or
+     *         {@link #UNKNOWN} if the position isn't covered or can't come up in a real game
+     */
+    public int value(Board board) {
+        if (!covers(board)) {
+            return UNKNOWN;
+        }
+        return value(board, board.emptyCount(), board.toMove());
+    }
+
+    private int value(Board board, int empty, byte toMove) {
+        int entry = data.get(dataStart + rank(board, empty));
+        return toMove == Board.ONE ? entry & 0x3 : (entry >> 2) & 0x3;
+    }
+
+    /**
+     * @return the best move for the player to move, or -1 if the position isn't covered or the
+     *         game is already over
+     */
+    public int bestMove(Board board) {
+        if (!covers(board) || board.winner() != Board.EMPTY) {
+            return -1;
+        }
+        int empty = board.emptyCount();
+        int bestMove = -1;
+        int bestValue = UNKNOWN;
+        for (int cell = 0; cell < cellCount; cell++) {
+            if (board.get(cell) != Board.EMPTY) {
+                continue;
+            }
+            board.play(cell);
+            boolean won = board.winner() != Board.EMPTY;
+            int value = won ? WIN : negate(value(board, empty - 1, board.toMove()));
+            board.undo();
+            if (won) {
+                return cell;    // Don't dawdle
+            }
+            if (value > bestValue) {
+                bestValue = value;
+                bestMove = cell;
+            }
+        }
+        return bestMove;
+    }
+
+    private static int negate(int value) {
+        return value == UNKNOWN ? UNKNOWN : WIN + LOSS - value;
+    }
+
+    /**
+     * Dense index of a position with {@code empty} empty cells. Positions are grouped by how many
+     * cells are empty, then by how many pieces PLAYER_ONE has, then by the colex rank of the set of
+     * empty cells and finally by the colex rank of PLAYER_ONE's cells among the filled ones.
+     */
+    private int rank(Board board, int empty) {
+        int filled = cellCount - empty;
+        long emptyRank = 0;
+        long oneRank = 0;
+        int empties = 0;
+        int filledSeen = 0;
+        int ones = 0;
+        for (int cell = 0; cell < cellCount; cell++) {
+            byte player = board.get(cell);
+            if (player == Board.EMPTY) {
+                emptyRank += binomials[cell][++empties];
+            } else {
+                if (player == Board.ONE) {
+                    oneRank += binomials[filledSeen][++ones];
+                }
+                filledSeen++;
+            }
+        }
+        int lowOnes = filled / 2;
+        long oneSets = binomials[filled][lowOnes];
+        long group = ones == lowOnes ? 0 : 1;
+        return (int) (layerOffsets[empty]
+                + group * binomials[cellCount][empty] * oneSets
+                + emptyRank * oneSets
+                + oneRank);
+    }
+
+    /**
+     * Saturating Pascal's triangle, so absurd table sizes show up as too big instead of wrapping.
+     */
+    private static long[][] binomials(int n) {
+        long[][] c = new long[n + 1][n + 2];
+        for (int i = 0; i <= n; i++) {
+            c[i][0] = 1;
+            for (int k = 1; k <= i; k++) {
+                long sum = c[i - 1][k - 1] + c[i - 1][k];
+                c[i][k] = sum < 0 ? Long.MAX_VALUE : sum;
+            }
+        }
+        return c;
+    }
+
+    private static int[] layerOffsets(int cellCount, int maxEmpty, long[][] binomials) {
+        int[] offsets = new int[maxEmpty + 2];
+        long total = 0;
+        for (int empty = 0; empty <= maxEmpty; empty++) {
+            offsets[empty] = (int) total;
+            int filled = cellCount - empty;
+            double groups = filled % 2 == 0 ? 1 : 2;
+            double layer = groups * binomials[cellCount][empty] * binomials[filled][filled / 2];
+            if (total + layer > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("Endgame table with " + maxEmpty
+                        + " empty cells on " + cellCount + " cells is too big");
+            }
+            total += (long) layer;
+        }
+        offsets[maxEmpty + 1] = (int) total;
+        return offsets;
+    }
+
+    /**
+     * Fills in a freshly allocated table one layer at a time.
+     */
+    private static final class Builder {
+        private final EndgameTable table;
+        private final Board board;
+        private final int[][] lines;
+        private final int[] emptyCells;
+        private final int[] filledCells;
+        private final int[] oneIndices;
+
+        Builder(EndgameTable table) {
+            this.table = table;
+            this.board = new Board(table.size, table.winLength);
+            this.lines = Board.lines(table.size, table.winLength);
+            this.emptyCells = new int[table.cellCount];
+            this.filledCells = new int[table.cellCount];
+            this.oneIndices = new int[table.cellCount];
+        }
+
+        void run() {
+            long[][] c = table.binomials;
+            int cellCount = table.cellCount;
+            for (int empty = 0; empty <= table.maxEmpty; empty++) {
+                int filled = cellCount - empty;
+                int lowOnes = filled / 2;
+                long emptySets = c[cellCount][empty];
+                long oneSets = c[filled][lowOnes];
+                int groups = filled % 2 == 0 ? 1 : 2;
+                int index = table.layerOffsets[empty];
+                for (int group = 0; group < groups; group++) {
+                    int ones = lowOnes + group;
+                    for (long emptyRank = 0; emptyRank < emptySets; emptyRank++) {
+                        unrank(emptyRank, empty, cellCount, emptyCells);
+                        for (long oneRank = 0; oneRank < oneSets; oneRank++) {
+                            setUp(empty, filled, ones, oneRank);
+                            table.data.put(index++, (byte) solve(empty, filled, ones));
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Decodes a colex rank back into the k-subset of [0, n) it came from.
+         */
+        private void unrank(long rank, int k, int n, int[] out) {
+            long[][] c = table.binomials;
+            int candidate = n - 1;
+            for (int i = k; i > 0; i--) {
+                while (c[candidate][i] > rank) {
+                    candidate--;
+                }
+                out[i - 1] = candidate;
+                rank -= c[candidate][i];
+                candidate--;
+            }
+        }
+
+        private void setUp(int empty, int filled, int ones, long oneRank) {
+            int e = 0;
+            int f = 0;
+            for (int cell = 0; cell < table.cellCount; cell++) {
+                if (e < empty && emptyCells[e] == cell) {
+                    e++;
+                } else {
+                    filledCells[f++] = cell;
+                }
+            }
+            for (int i = 0; i < filled; i++) {
+                board.set(filledCells[i], Board.TWO);
+            }
+            for (int i = 0; i < empty; i++) {
+                board.set(emptyCells[i], Board.EMPTY);
+            }
+            unrank(oneRank, ones, filled, oneIndices);
+            for (int i = 0; i < ones; i++) {
+                board.set(filledCells[oneIndices[i]], Board.ONE);
+            }
+        }
+
+        /**
+         * @return the packed entry for the position currently on {@link #board}
+         */
+        private int solve(int empty, int filled, int ones) {
+            int twos = filled - ones;
+            boolean oneHasLine = hasLine(Board.ONE);
+            boolean twoHasLine = hasLine(Board.TWO);
+            int entry = 0;
+            // Whoever has fewer pieces is to move; with equal counts it depends on who started
+            if (ones <= twos) {
+                entry |= solveFor(Board.ONE, empty, oneHasLine, twoHasLine);
+            }
+            if (twos <= ones) {
+                entry |= solveFor(Board.TWO, empty, twoHasLine, oneHasLine) << 2;
+            }
+            return entry;
+        }
+
+        private int solveFor(byte toMove, int empty, boolean moverHasLine, boolean otherHasLine) {
+            if (moverHasLine) {
+                // The game would have ended before the opponent got to move
+                return UNKNOWN;
+            } else if (otherHasLine) {
+                return LOSS;
+            } else if (empty == 0) {
+                return DRAW;
+            }
+
+            board.setToMove(toMove);
+            int best = LOSS;
+            for (int i = 0; i < empty && best != WIN; i++) {
+                int cell = emptyCells[i];
+                board.set(cell, toMove);
+                best = Math.max(best, negate(table.value(board, empty - 1, Board.opponent(toMove))));
+                board.set(cell, Board.EMPTY);
+            }
+            return best;
+        }
+
+        private boolean hasLine(byte player) {
+            for (int[] line : lines) {
+                boolean complete = true;
+                for (int cell : line) {
+                    if (board.get(cell) != player) {
+                        complete = false;
+                        break;
+                    }
+                }
+                if (complete) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package io.sweers.tictactoe;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Keeps track of every {@link TrimmableCache} the engine is using, so they can be sized to the
+ * device and trimmed together when memory runs low. Caches are held weakly, so registering one
+ * doesn't keep it (or whatever owns it) alive.
+ */
+public final class EngineCaches {
+
+    // Used until the app says otherwise, and for anything running off device
+    static final long DEFAULT_LIMIT = 4 * 1024 * 1024;
+
+    private static final Map<TrimmableCache, Boolean> caches = new WeakHashMap<>();
+    private static long limit = DEFAULT_LIMIT;
+
+    private EngineCaches() {
+        throw new AssertionError("No instances");
+    }
+
+    public static synchronized void register(TrimmableCache cache) {
+        caches.put(cache, Boolean.TRUE);
+    }
+
+    public static synchronized void unregister(TrimmableCache cache) {
+        caches.remove(cache);
+    }
+
+    /**
+     * @return how many bytes the growable caches (currently {@link TicTacToeGame#SCORE_CACHE}) are
+     * allowed between them
+     */
+    public static synchronized long limit() {
+        return limit;
+    }
+
+    public static void setLimit(long bytes) {
+        synchronized (EngineCaches.class) {
+            limit = bytes;
+        }
+        TicTacToeGame.SCORE_CACHE.setMaxBytes(bytes);
+    }
+
+    /**
+     * @return roughly how many bytes all the registered caches are holding on to
+     */
+    public static long byteSize() {
+        long total = 0;
+        for (TrimmableCache cache : snapshot()) {
+            total += cache.byteSize();
+        }
+        return total;
+    }
+
+    /**
+     * Trims every registered cache. See {@link TrimmableCache#trim(float)}.
+     */
+    public static void trim(float keep) {
+        for (TrimmableCache cache : snapshot()) {
+            cache.trim(keep);
+        }
+    }
+
+    // Caches take their own locks to trim, so don't hold ours while they do
+    private static synchronized List<TrimmableCache> snapshot() {
+        return new ArrayList<>(caches.keySet());
+    }
+}
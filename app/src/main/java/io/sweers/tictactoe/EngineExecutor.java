@@ -0,0 +1,290 @@
+package io.sweers.tictactoe;
+
+import android.os.Process;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Runs engine work one request at a time on a single background priority thread, so searches
+ * never compete with each other or with rendering for CPU.
+ *
+ * Requests are keyed, usually by the game they're for. A new request for a key that's still
+ * waiting takes the old one's place in line, and the old one completes without emitting anything,
+ * so restarting over and over only ever leaves one search queued per game. The queue is bounded
+ * too: once {@link #capacity()} different keys are waiting, new ones fail with a
+ * {@link RejectedExecutionException} instead of piling up.
+ */
+public final class EngineExecutor {
+
+    private static final int DEFAULT_CAPACITY = 8;
+    // How long the thread hangs around with nothing to do before exiting
+    private static final long IDLE_MILLIS = 30000;
+
+    public static final EngineExecutor SHARED = new EngineExecutor(DEFAULT_CAPACITY, new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "EngineExecutor");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final int capacity;
+    private final ThreadFactory threadFactory;
+    private final Object lock = new Object();
+    // Insertion ordered, and replacing a key keeps its spot, so this is the queue
+    private final LinkedHashMap<Object, Task<?>> pending = new LinkedHashMap<>();
+    private Thread worker;
+    private int maxQueueDepth;
+
+    private final LatencyHistogram waitTimes = new LatencyHistogram();
+    private final LatencyHistogram runTimes = new LatencyHistogram();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public EngineExecutor(int capacity, ThreadFactory threadFactory) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * Moves subscribing to the source onto the engine thread, queued under {@code key}. Use it with
+     * {@link Observable#compose}, in place of {@code subscribeOn}.
+     *
+     * Unsubscribing before the request starts takes it out of the queue. After that it's up to the
+     * source to notice, since searches can't be interrupted part way.
+     */
+    public <T> Observable.Transformer<T, T> schedule(final Object key) {
+        return new Observable.Transformer<T, T>() {
+            @Override
+            public Observable<T> call(final Observable<T> source) {
+                return Observable.create(new Observable.OnSubscribe<T>() {
+                    @Override
+                    public void call(Subscriber<? super T> subscriber) {
+                        final Task<T> task = new Task<>(key, source, subscriber);
+                        subscriber.add(Subscriptions.create(new Action0() {
+                            @Override
+                            public void call() {
+                                cancel(task);
+                            }
+                        }));
+                        enqueue(task);
+                    }
+                });
+            }
+        };
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int queueDepth() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    public int maxQueueDepth() {
+        synchronized (lock) {
+            return maxQueueDepth;
+        }
+    }
+
+    /**
+     * @return how long requests sat in the queue before starting
+     */
+    public LatencyHistogram waitTimes() {
+        return waitTimes;
+    }
+
+    /**
+     * @return how long requests kept the engine thread busy
+     */
+    public LatencyHistogram runTimes() {
+        return runTimes;
+    }
+
+    public long submitted() {
+        return submitted.get();
+    }
+
+    /**
+     * @return how many requests were replaced by a newer one for the same key before starting
+     */
+    public long coalesced() {
+        return coalesced.get();
+    }
+
+    public long rejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return how many requests threw something that couldn't even be handed to their subscriber
+     */
+    public long failures() {
+        return failures.get();
+    }
+
+    public void resetMetrics() {
+        synchronized (lock) {
+            maxQueueDepth = pending.size();
+        }
+        waitTimes.reset();
+        runTimes.reset();
+        submitted.set(0);
+        coalesced.set(0);
+        rejected.set(0);
+        failures.set(0);
+    }
+
+    private void enqueue(Task<?> task) {
+        Task<?> replaced;
+        synchronized (lock) {
+            replaced = pending.get(task.key);
+            if (replaced == null && pending.size() >= capacity) {
+                replaced = task;
+            } else {
+                pending.put(task.key, task);
+                maxQueueDepth = Math.max(maxQueueDepth, pending.size());
+                if (worker == null) {
+                    worker = threadFactory.newThread(loop);
+                    worker.start();
+                } else {
+                    lock.notify();
+                }
+            }
+        }
+
+        // Outside the lock, since these call straight into subscribers
+        if (replaced == task) {
+            rejected.incrementAndGet();
+            task.subscriber.onError(new RejectedExecutionException(
+                    "Engine queue is full (" + capacity + " waiting)"));
+            return;
+        }
+        submitted.incrementAndGet();
+        if (replaced != null) {
+            coalesced.incrementAndGet();
+            replaced.subscriber.onCompleted();
+        }
+    }
+
+    private void cancel(Task<?> task) {
+        synchronized (lock) {
+            // It might have been replaced already, in which case the new one stays
+            if (pending.get(task.key) == task) {
+                pending.remove(task.key);
+            }
+        }
+    }
+
+    private final Runnable loop = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Task<?> task;
+                    synchronized (lock) {
+                        if (pending.isEmpty()) {
+                            try {
+                                lock.wait(IDLE_MILLIS);
+                            } catch (InterruptedException e) {
+                                // Fall through, and exit if there's still nothing to do
+                            }
+                        }
+                        if (pending.isEmpty()) {
+                            return;
+                        }
+                        Iterator<Task<?>> iterator = pending.values().iterator();
+                        task = iterator.next();
+                        iterator.remove();
+                    }
+                    try {
+                        task.run();
+                    } catch (Throwable t) {
+                        // Most likely the subscriber's own onError blew up. Either way there's no
+                        // one left to tell, and the requests behind it still need running
+                        failures.incrementAndGet();
+                    }
+                }
+            } finally {
+                synchronized (lock) {
+                    // The next request starts a new thread, even if this one died somehow
+                    worker = null;
+                    if (!pending.isEmpty()) {
+                        worker = threadFactory.newThread(loop);
+                        worker.start();
+                    }
+                }
+            }
+        }
+    };
+
+    @Override
+    public String toString() {
+        return "EngineExecutor{queueDepth=" + queueDepth()
+                + ", maxQueueDepth=" + maxQueueDepth()
+                + ", submitted=" + submitted()
+                + ", coalesced=" + coalesced()
+                + ", rejected=" + rejected()
+                + ", failures=" + failures()
+                + ", wait={" + waitTimes + "}"
+                + ", run={" + runTimes + "}"
+                + "}";
+    }
+
+    private final class Task<T> {
+        final Object key;
+        final Observable<T> source;
+        final Subscriber<? super T> subscriber;
+        final long queuedNanos = System.nanoTime();
+
+        Task(Object key, Observable<T> source, Subscriber<? super T> subscriber) {
+            this.key = key;
+            this.source = source;
+            this.subscriber = subscriber;
+        }
+
+        void run() {
+            long start = System.nanoTime();
+            waitTimes.record(start - queuedNanos);
+            if (subscriber.isUnsubscribed()) {
+                return;
+            }
+            try {
+                source.unsafeSubscribe(subscriber);
+            } catch (Throwable t) {
+                if (subscriber.isUnsubscribed()) {
+                    // It's already had its onError, and that's what threw. Telling it again
+                    // would go nowhere, so hand it to the loop to count
+                    throw t;
+                }
+                subscriber.onError(t);
+            } finally {
+                runTimes.record(System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package io.sweers.tictactoe;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A set of {@link PatternEvaluator} weights for K in a row, usually learned offline from self-play.
+ * Weights only depend on K, so a set trained on one board size is fine to use on others.
+ *
+ * Sets that have been {@link #install(EvalWeights) installed} are picked up by every evaluator
+ * created afterwards; anything else gets {@link PatternEvaluator#defaultWeights(int)}. Installing
+ * can happen on any thread at any time, so searches that hold on to an evaluator check
+ * {@link #version()} before each search.
+ */
+public final class EvalWeights {
+
+    private static final int MAGIC = 0x54545457;    // "TTTW"
+    private static final int VERSION = 1;
+
+    private static final ConcurrentHashMap<Integer, float[]> installed = new ConcurrentHashMap<>();
+    private static final AtomicInteger version = new AtomicInteger();
+
+    private final int size;
+    private final int winLength;
+    private final float[] weights;
+
+    /**
+     * @param size the board size the weights were trained on, for reference
+     */
+    public EvalWeights(int size, int winLength, float[] weights) {
+        if (weights.length != PatternEvaluator.weightCount(winLength)) {
+            throw new IllegalArgumentException("Expected " + PatternEvaluator.weightCount(winLength) + " weights but got " + weights.length);
+        }
+        this.size = size;
+        this.winLength = winLength;
+        this.weights = weights;
+    }
+
+    public static void install(EvalWeights weights) {
+        installed.put(weights.winLength, weights.weights.clone());
+        version.incrementAndGet();
+    }
+
+    /**
+     * @return a number that changes every time a set is installed
+     */
+    public static int version() {
+        return version.get();
+    }
+
+    /**
+     * @return the installed weights for K in a row, or the defaults if there aren't any
+     */
+    public static float[] forWinLength(int winLength) {
+        float[] weights = installed.get(winLength);
+        return weights != null ? weights.clone() : PatternEvaluator.defaultWeights(winLength);
+    }
+
+    public static EvalWeights read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a weights file");
+        }
+        int size = in.readInt();
+        int winLength = in.readInt();
+        if (winLength < 1 || winLength > size) {
+            throw new IOException("Bad dimensions " + size + "x" + size + ", " + winLength + " in a row");
+        }
+        float[] weights = new float[PatternEvaluator.weightCount(winLength)];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = in.readFloat();
+        }
+        return new EvalWeights(size, winLength, weights);
+    }
+
+    public void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(size);
+        out.writeInt(winLength);
+        for (float weight : weights) {
+            out.writeFloat(weight);
+        }
+        out.flush();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int winLength() {
+        return winLength;
+    }
+
+    public float[] weights() {
+        return weights.clone();
+    }
+}
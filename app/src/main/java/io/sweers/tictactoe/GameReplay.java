@@ -0,0 +1,211 @@
+package io.sweers.tictactoe;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Steps back and forth through a recorded game, on a board of any size.
+ *
+ * The position is kept packed at two bits a cell, with a copy (a checkpoint) saved every
+ * {@link #CHECKPOINT_INTERVAL} plies. Short seeks just play or take back the moves in between.
+ * Long ones start from the nearest checkpoint at or before the target, play at most an interval's
+ * worth of moves on top of it, and XOR the result against the current position to find which cells
+ * changed. Either way a seek is O(interval) plus a pass over the packed words, and only reports the
+ * cells that actually changed, however long the game was.
+ *
+ * Engine evaluations of each ply are only worked out when asked for, and kept after that. Seeking
+ * should happen on one thread, but evaluations can be asked for from any. Reading one that's already
+ * done never waits, even while another ply is being searched.
+ */
+public final class GameReplay {
+
+    public static final int CHECKPOINT_INTERVAL = 16;
+
+    /** {@link #cachedEvaluation(int)} for plies that haven't been evaluated yet. */
+    public static final int NOT_EVALUATED = Integer.MIN_VALUE;
+
+    // How far ahead to look when the board is too big to search to the end
+    private static final int EVAL_DEPTH = 3;
+
+    private static final int CELLS_PER_WORD = 32;
+    private static final long LOW_BITS = 0x5555555555555555L;
+
+    private final int size;
+    private final int winLength;
+    private final byte firstPlayer;
+    private final int[] moves;
+    private final long[][] checkpoints;
+    private long[] current;
+    private long[] scratch;
+    private int ply;
+
+    private final AtomicIntegerArray evaluations;
+    // Only the search needs taking turns over
+    private final BoardSearch search = new BoardSearch();
+
+    /**
+     * @param firstPlayer who made the first move, one of {@link Board#ONE} or {@link Board#TWO}
+     * @param moves the cells played, in order
+     */
+    public GameReplay(int size, int winLength, byte firstPlayer, int[] moves) {
+        this.size = size;
+        this.winLength = winLength;
+        this.firstPlayer = firstPlayer;
+        this.moves = moves.clone();
+
+        int words = (size * size + CELLS_PER_WORD - 1) / CELLS_PER_WORD;
+        current = new long[words];
+        scratch = new long[words];
+        checkpoints = new long[moves.length / CHECKPOINT_INTERVAL + 1][];
+        for (int i = 0; i <= moves.length; i++) {
+            if (i % CHECKPOINT_INTERVAL == 0) {
+                checkpoints[i / CHECKPOINT_INTERVAL] = current.clone();
+            }
+            if (i < moves.length) {
+                set(current, moves[i], playerAt(i));
+            }
+        }
+        ply = moves.length;
+
+        evaluations = new AtomicIntegerArray(moves.length + 1);
+        for (int i = 0; i <= moves.length; i++) {
+            evaluations.set(i, NOT_EVALUATED);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int winLength() {
+        return winLength;
+    }
+
+    public int moveCount() {
+        return moves.length;
+    }
+
+    /**
+     * @return how many moves have been played in the position being shown
+     */
+    public int ply() {
+        return ply;
+    }
+
+    /**
+     * @return who's in the given cell at the current ply
+     */
+    public byte get(int cell) {
+        return (byte) ((current[cell / CELLS_PER_WORD] >>> (cell % CELLS_PER_WORD * 2)) & 3);
+    }
+
+    /**
+     * @return who played the move at the given ply
+     */
+    public byte playerAt(int ply) {
+        return ply % 2 == 0 ? firstPlayer : Board.opponent(firstPlayer);
+    }
+
+    /**
+     * Moves to the position after {@code target} moves.
+     *
+     * @param changed filled with the cells that changed, so needs room for every cell in the worst case
+     * @return how many cells changed
+     */
+    public int seek(int target, int[] changed) {
+        if (target < 0 || target > moves.length) {
+            throw new IndexOutOfBoundsException("Ply " + target + " of " + moves.length);
+        }
+        int count = 0;
+        if (Math.abs(target - ply) <= CHECKPOINT_INTERVAL) {
+            for (; ply < target; ply++) {
+                set(current, moves[ply], playerAt(ply));
+                changed[count++] = moves[ply];
+            }
+            while (ply > target) {
+                ply--;
+                set(current, moves[ply], Board.EMPTY);
+                changed[count++] = moves[ply];
+            }
+            return count;
+        }
+
+        int start = target / CHECKPOINT_INTERVAL * CHECKPOINT_INTERVAL;
+        System.arraycopy(checkpoints[target / CHECKPOINT_INTERVAL], 0, scratch, 0, scratch.length);
+        for (int i = start; i < target; i++) {
+            set(scratch, moves[i], playerAt(i));
+        }
+        for (int word = 0; word < current.length; word++) {
+            long diff = current[word] ^ scratch[word];
+            // Fold each cell's two bits into its low one, so a cell only shows up once
+            diff = (diff | (diff >>> 1)) & LOW_BITS;
+            while (diff != 0) {
+                changed[count++] = word * CELLS_PER_WORD + Long.numberOfTrailingZeros(diff) / 2;
+                diff &= diff - 1;
+            }
+        }
+        long[] swap = current;
+        current = scratch;
+        scratch = swap;
+        ply = target;
+        return count;
+    }
+
+    /**
+     * @return the position after {@code ply} moves, with its history, for searching or playing on
+     */
+    public Board boardAt(int ply) {
+        Board board = new Board(size, winLength);
+        board.setToMove(firstPlayer);
+        for (int i = 0; i < ply; i++) {
+            board.play(moves[i]);
+        }
+        return board;
+    }
+
+    /**
+     * @return the evaluation of the given ply if it's already been worked out, otherwise
+     * {@link #NOT_EVALUATED}
+     */
+    public int cachedEvaluation(int ply) {
+        return evaluations.get(ply);
+    }
+
+    /**
+     * Searches the position after {@code ply} moves the first time it's asked for, which can take a
+     * while on big boards. Boards small enough to search to the end are scored exactly.
+     *
+     * @return the score from {@link Board#ONE}'s side, in {@link BoardSearch} units. Anything beyond
+     * half of {@link BoardSearch#WIN_SCORE} either way is a forced win.
+     */
+    public int evaluate(int ply) {
+        int score = evaluations.get(ply);
+        if (score != NOT_EVALUATED) {
+            return score;
+        }
+        Board board = boardAt(ply);
+        if (board.winner() != Board.EMPTY) {
+            score = board.winner() == Board.ONE ? BoardSearch.WIN_SCORE : -BoardSearch.WIN_SCORE;
+        } else if (board.isOver()) {
+            score = 0;
+        } else {
+            synchronized (search) {
+                // Someone else may have finished it while we waited
+                score = evaluations.get(ply);
+                if (score != NOT_EVALUATED) {
+                    return score;
+                }
+                int depth = board.cellCount() <= 9 ? board.emptyCount() : EVAL_DEPTH;
+                search.bestMove(board, depth);
+                score = board.toMove() == Board.ONE ? search.lastScore() : -search.lastScore();
+            }
+        }
+        evaluations.set(ply, score);
+        return score;
+    }
+
+    private static void set(long[] packed, int cell, byte player) {
+        int word = cell / CELLS_PER_WORD;
+        int shift = cell % CELLS_PER_WORD * 2;
+        packed[word] = (packed[word] & ~(3L << shift)) | ((long) player << shift);
+    }
+}
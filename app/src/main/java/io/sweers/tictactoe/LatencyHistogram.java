@@ -0,0 +1,84 @@
+package io.sweers.tictactoe;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of nanosecond latencies. Samples land in power-of-two buckets, so percentiles
+ * are only accurate to within a factor of two, which is plenty for spotting regressions.
+ */
+public final class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(nanos | 1));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxNanos.get())) {
+            if (maxNanos.compareAndSet(max, nanos)) {
+                break;
+            }
+        }
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public long meanNanos() {
+        long count = this.count.get();
+        return count == 0 ? 0 : totalNanos.get() / count;
+    }
+
+    public long maxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * @param percentile in the range (0, 100]
+     * @return upper bound of the bucket containing the given percentile
+     */
+    public long percentileNanos(double percentile) {
+        long count = this.count.get();
+        if (count == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(count * percentile / 100d);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= threshold) {
+                return i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+            }
+        }
+        return maxNanos.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count()
+                + ", mean=" + meanNanos() / 1000 + "us"
+                + ", p50<=" + percentileNanos(50) / 1000 + "us"
+                + ", p99<=" + percentileNanos(99) / 1000 + "us"
+                + ", max=" + maxNanos() / 1000 + "us";
+    }
+}
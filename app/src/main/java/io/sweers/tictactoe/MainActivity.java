@@ -2,7 +2,9 @@ package io.sweers.tictactoe;
 
 import android.annotation.SuppressLint;
 import android.app.Dialog;
+import android.content.Intent;
 import android.content.SharedPreferences;
+import android.content.res.AssetManager;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.annotation.NonNull;
@@ -11,18 +13,32 @@ import android.support.design.widget.Snackbar;
 import android.support.v4.app.DialogFragment;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.View;
 
 import com.afollestad.materialdialogs.MaterialDialog;
 import com.trello.rxlifecycle.components.support.RxAppCompatActivity;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import butterknife.Bind;
 import butterknife.ButterKnife;
 import io.sweers.tictactoe.TicTacToeGame.GameState;
+import rx.Observable;
+import rx.Subscription;
 import rx.android.schedulers.AndroidSchedulers;
+import rx.exceptions.Exceptions;
 import rx.functions.Action0;
 import rx.functions.Action1;
+import rx.functions.Func1;
 import rx.schedulers.Schedulers;
 
 public class MainActivity extends RxAppCompatActivity {
@@ -32,20 +48,48 @@ public class MainActivity extends RxAppCompatActivity {
     private static final String EXTRA_CURRENT_PLAYER = "currentPlayer";
     private static final String EXTRA_GAME_STATE = "gameState";
     private static final String EXTRA_WINNING_INDICES = "winningIndices";
+    private static final String EXTRA_MOVE_HISTORY = "moveHistory";
+    private static final String EXTRA_HINTS = "hints";
     private static final String PREF_HUMAN_WINS = "humanWins";
     private static final String PREF_COMPUTER_WINS = "computer_wins";
     private static final String PREF_TIES = "ties";
+    private static final String PREF_DIFFICULTY = "difficulty";
+    // Indices into R.array.difficulties
+    private static final int DIFFICULTY_EASY = 0;
+    private static final int DIFFICULTY_MEDIUM = 1;
+    private static final int DIFFICULTY_HARD = 2;
+    // Sees wins and blocks coming, but not forks
+    private static final int MEDIUM_DEPTH = 2;
+    private static final String OPENING_BOOK = "opening_book.bin";
+    private static final int OPENING_BOOK_PLIES = 4;
+    private static final String EVAL_WEIGHTS = "eval_weights.bin";
+    private static final String ENDGAME_TABLE = "endgame_3x3.bin";
+
+    // Shared across activity instances so we only ever load it once
+    private static OpeningBook openingBook;
+    private static boolean evalWeightsLoaded;
+    private static EndgameTable endgameTable;
 
     @Bind(R.id.ttt_view)
     protected TicTacToeView ticTacToeView;
 
     private final TicTacToeGame game = new TicTacToeGame();
+    // Kept for the whole game so each turn's hints build on the last's
+    private final BoardSearch hintSearch = new BoardSearch();
+    private boolean hintsEnabled;
+    private Subscription hintSubscription;
+    private Subscription cpuMoveSubscription;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
         ButterKnife.bind(this);
+        game.setOpeningBook(getOpeningBook());
+        hintSearch.setEndgameTable(endgameTable);
+        setDifficulty(PreferenceManager.getDefaultSharedPreferences(this).getInt(PREF_DIFFICULTY, DIFFICULTY_HARD));
+        loadEvalWeights();
+        loadEndgameTable();
 
         ticTacToeView.setOnTileClickedListener(new TicTacToeView.OnTileClickListener() {
             @Override
@@ -62,11 +106,13 @@ public class MainActivity extends RxAppCompatActivity {
         });
 
         if (savedInstanceState != null) {
+            hintsEnabled = savedInstanceState.getBoolean(EXTRA_HINTS);
             ticTacToeView.setEnabled(false);    // So no sneaky quick taps can't happen while restoring...
             game.setGridState(savedInstanceState.getCharArray(EXTRA_GRID_STATE));
             game.setIsOver(savedInstanceState.getBoolean(EXTRA_IS_GAME_OVER));
             game.setCurrentPlayer(savedInstanceState.getChar(EXTRA_CURRENT_PLAYER));
             game.setGameState(savedInstanceState.getInt(EXTRA_GAME_STATE));
+            game.setMoveHistory(savedInstanceState.getIntArray(EXTRA_MOVE_HISTORY));
             ticTacToeView.restoreBoard(game.getGridState());
 
             if (game.isOver()) {
@@ -97,6 +143,8 @@ public class MainActivity extends RxAppCompatActivity {
         outState.putChar(EXTRA_CURRENT_PLAYER, game.currentPlayer());
         outState.putInt(EXTRA_GAME_STATE, game.getGameState());
         outState.putIntArray(EXTRA_WINNING_INDICES, game.getWinningIndices());
+        outState.putIntArray(EXTRA_MOVE_HISTORY, game.getMoveHistory());
+        outState.putBoolean(EXTRA_HINTS, hintsEnabled);
     }
 
     @Override
@@ -105,6 +153,12 @@ public class MainActivity extends RxAppCompatActivity {
         return super.onCreateOptionsMenu(menu);
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        menu.findItem(R.id.hints).setChecked(hintsEnabled);
+        return super.onPrepareOptionsMenu(menu);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         switch (item.getItemId()) {
@@ -114,6 +168,23 @@ public class MainActivity extends RxAppCompatActivity {
             case R.id.scores:
                 showScoresDialog(TicTacToeGame.CONTINUE);
                 return true;
+            case R.id.hints:
+                hintsEnabled = !hintsEnabled;
+                item.setChecked(hintsEnabled);
+                showHints();
+                return true;
+            case R.id.difficulty:
+                showDifficultyDialog();
+                return true;
+            case R.id.replay:
+                showReplay();
+                return true;
+            case R.id.peer:
+                showPeerDialog();
+                return true;
+            case R.id.ultimate:
+                startActivity(new Intent(this, UltimateActivity.class));
+                return true;
             default:
                 return super.onOptionsItemSelected(item);
         }
@@ -125,11 +196,13 @@ public class MainActivity extends RxAppCompatActivity {
             simulateCpuMove();
         } else {
             ticTacToeView.setEnabled(true);
+            showHints();
             Snackbar.make(ticTacToeView, "Your turn!", Snackbar.LENGTH_LONG).show();
         }
     }
 
     private void handleMove(int position) {
+        stopHints();
         game.makeMove(position);
         char nextPlayer = game.currentPlayer();
         ticTacToeView.setNextPlayer(nextPlayer);
@@ -137,7 +210,11 @@ public class MainActivity extends RxAppCompatActivity {
         if (!game.isOver()) {
             if (nextPlayer == TicTacToeGame.PLAYER_TWO) {
                 simulateCpuMove();
+            } else {
+                showHints();
             }
+        } else {
+            saveOpeningBook();
         }
     }
 
@@ -145,11 +222,14 @@ public class MainActivity extends RxAppCompatActivity {
      * Simulate a CPU move. This can sometimes take awhile, and we also want it to happen after a
      * delay. To do this without blocking the UI thread, RxJava is my go-to tool for threading.
      * Used in tandem with RxLifecycle, we can do this in a non-leaky and responsive way.
+     *
+     * The search itself runs on the {@link EngineExecutor}, keyed by the game, so a restart while
+     * it's still waiting to start replaces it rather than queueing up another one behind it.
      */
     private void simulateCpuMove() {
         final Snackbar snackbar = Snackbar.make(ticTacToeView, "Thinking...", Snackbar.LENGTH_INDEFINITE);
-        game.getCpuMove()
-                .subscribeOn(Schedulers.computation())
+        cpuMoveSubscription = game.getCpuMove()
+                .compose(EngineExecutor.SHARED.<Object>schedule(game))
                 .doOnSubscribe(new Action0() {
                     @Override
                     public void call() {
@@ -168,9 +248,254 @@ public class MainActivity extends RxAppCompatActivity {
                         handleMove(game.getNextCpuMove());
                         snackbar.dismiss();
                     }
+                }, new Action1<Throwable>() {
+                    @Override
+                    public void call(Throwable throwable) {
+                        if (!(throwable instanceof RejectedExecutionException)) {
+                            // A real bug, not backpressure, so don't dress it up as one
+                            throw Exceptions.propagate(throwable);
+                        }
+                        // The engine's queue is full, so let the user decide when to try again
+                        snackbar.dismiss();
+                        Snackbar.make(ticTacToeView, R.string.engine_busy, Snackbar.LENGTH_INDEFINITE)
+                                .setAction(R.string.retry, new View.OnClickListener() {
+                                    @Override
+                                    public void onClick(View v) {
+                                        simulateCpuMove();
+                                    }
+                                })
+                                .show();
+                    }
+                });
+    }
+
+    /**
+     * The opening book is loaded lazily the first time the CPU needs it. Anything it's learned from
+     * past games lives in internal storage, otherwise we fall back to the one bundled in assets.
+     */
+    private OpeningBook getOpeningBook() {
+        if (openingBook == null) {
+            final File learned = new File(getApplicationContext().getFilesDir(), OPENING_BOOK);
+            final AssetManager assets = getApplicationContext().getAssets();
+            openingBook = new OpeningBook(OPENING_BOOK_PLIES, new OpeningBook.Source() {
+                @Override
+                public InputStream open() throws IOException {
+                    try {
+                        return new FileInputStream(learned);
+                    } catch (FileNotFoundException e) {
+                        return assets.open(OPENING_BOOK);
+                    }
+                }
+            });
+            EngineCaches.register(openingBook);
+        }
+        return openingBook;
+    }
+
+    /**
+     * Installs the self-play trained evaluation weights for searches on bigger boards. Until this
+     * finishes, searches just use the defaults.
+     */
+    private void loadEvalWeights() {
+        if (evalWeightsLoaded) {
+            return;
+        }
+        evalWeightsLoaded = true;
+        final AssetManager assets = getApplicationContext().getAssets();
+        Observable.just(null)
+                .subscribeOn(Schedulers.io())
+                .subscribe(new Action1<Object>() {
+                    @Override
+                    public void call(Object o) {
+                        try {
+                            InputStream in = assets.open(EVAL_WEIGHTS);
+                            try {
+                                EvalWeights.install(EvalWeights.read(in));
+                            } finally {
+                                in.close();
+                            }
+                        } catch (IOException e) {
+                            // The defaults are fine, just not as strong
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Maps the bundled endgame table, copying it out of assets first since those can't be mapped
+     * directly. Once it's in, medium's search and the hints switch to table lookups for the last
+     * few moves of a game.
+     */
+    private void loadEndgameTable() {
+        if (endgameTable != null) {
+            return;
+        }
+        final File file = new File(getApplicationContext().getFilesDir(), ENDGAME_TABLE);
+        final AssetManager assets = getApplicationContext().getAssets();
+        Observable.just(null)
+                .map(new Func1<Object, EndgameTable>() {
+                    @Override
+                    public EndgameTable call(Object o) {
+                        try {
+                            if (!file.exists()) {
+                                copyAsset(assets, ENDGAME_TABLE, file);
+                            }
+                            return EndgameTable.map(file);
+                        } catch (IOException e) {
+                            // Most likely left over from an older version, so copy it again next time
+                            file.delete();
+                            throw Exceptions.propagate(e);
+                        }
+                    }
+                })
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .compose(this.<EndgameTable>bindToLifecycle())
+                .subscribe(new Action1<EndgameTable>() {
+                    @Override
+                    public void call(EndgameTable table) {
+                        endgameTable = table;
+                        installEndgameTable(table);
+                    }
+                }, new Action1<Throwable>() {
+                    @Override
+                    public void call(Throwable throwable) {
+                        // Searches just go all the way to the end themselves
+                    }
+                });
+    }
+
+    private void installEndgameTable(EndgameTable table) {
+        setDifficulty(PreferenceManager.getDefaultSharedPreferences(this).getInt(PREF_DIFFICULTY, DIFFICULTY_HARD));
+        // The hint search could be part way through one already, so it picks the table up between
+        // searches on the engine thread
+        Observable.just(table)
+                .compose(EngineExecutor.SHARED.<EndgameTable>schedule(this))
+                .subscribe(new Action1<EndgameTable>() {
+                    @Override
+                    public void call(EndgameTable table) {
+                        hintSearch.setEndgameTable(table);
+                    }
+                }, new Action1<Throwable>() {
+                    @Override
+                    public void call(Throwable throwable) {
+                        // Hints still work without it, just slower
+                    }
                 });
     }
 
+    private static void copyAsset(AssetManager assets, String name, File target) throws IOException {
+        // Write to the side and swap it in, so a half copied table is never mapped
+        File temp = new File(target.getPath() + ".tmp");
+        InputStream in = assets.open(name);
+        try {
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Couldn't move " + temp + " to " + target);
+        }
+    }
+
+    private void saveOpeningBook() {
+        final OpeningBook book = openingBook;
+        final File target = new File(getFilesDir(), OPENING_BOOK);
+        Observable.just(null)
+                .subscribeOn(Schedulers.io())
+                .subscribe(new Action1<Object>() {
+                    @Override
+                    public void call(Object o) {
+                        // Write to the side and swap it in, so a crash mid-write can't corrupt the book
+                        File temp = new File(target.getPath() + ".tmp");
+                        try {
+                            OutputStream out = new FileOutputStream(temp);
+                            try {
+                                book.save(out);
+                            } finally {
+                                out.close();
+                            }
+                            if (!temp.renameTo(target)) {
+                                temp.delete();
+                            }
+                        } catch (IOException e) {
+                            temp.delete();
+                        }
+                    }
+                });
+    }
+
+    private void showReplay() {
+        int[] moves = game.getMoveHistory();
+        if (moves.length == 0) {
+            Snackbar.make(ticTacToeView, R.string.replay_nothing, Snackbar.LENGTH_SHORT).show();
+            return;
+        }
+        char firstPlayer = game.getGridState()[moves[0]];
+        startActivity(ReplayActivity.createIntent(this, 3, 3, firstPlayer, moves));
+    }
+
+    /**
+     * Lets the player pick how hard the computer tries. It kicks in from the computer's next move.
+     */
+    private void showDifficultyDialog() {
+        final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
+        new MaterialDialog.Builder(this)
+                .title(R.string.difficulty)
+                .items(R.array.difficulties)
+                .itemsCallbackSingleChoice(prefs.getInt(PREF_DIFFICULTY, DIFFICULTY_HARD), new MaterialDialog.ListCallbackSingleChoice() {
+                    @Override
+                    public boolean onSelection(MaterialDialog dialog, View itemView, int which, CharSequence text) {
+                        prefs.edit().putInt(PREF_DIFFICULTY, which).apply();
+                        setDifficulty(which);
+                        return true;
+                    }
+                })
+                .show();
+    }
+
+    private void setDifficulty(int difficulty) {
+        switch (difficulty) {
+            case DIFFICULTY_EASY:
+                game.setCpuEngine(new RandomEngine(new Random()));
+                break;
+            case DIFFICULTY_MEDIUM:
+                game.setCpuEngine(new SearchEngine(MEDIUM_DEPTH, endgameTable));
+                break;
+            default:
+                // The opening book and full minimax
+                game.setCpuEngine(null);
+        }
+    }
+
+    /**
+     * Asks for a friend's address to join, where leaving it empty hosts a game instead.
+     */
+    private void showPeerDialog() {
+        new MaterialDialog.Builder(this)
+                .title(R.string.peer)
+                .content(R.string.peer_content)
+                .positiveText(R.string.peer_start)
+                .input(getString(R.string.peer_address_hint), null, true, new MaterialDialog.InputCallback() {
+                    @Override
+                    public void onInput(MaterialDialog dialog, CharSequence input) {
+                        String address = input.toString().trim();
+                        startActivity(PeerActivity.createIntent(MainActivity.this, address.isEmpty() ? null : address));
+                    }
+                })
+                .show();
+    }
+
     private void endGame(@GameState int result, @Nullable int[] winningIndices) {
         ticTacToeView.endGame(winningIndices);
         if (getSupportFragmentManager().findFragmentByTag("scores") == null) {
@@ -178,7 +503,48 @@ public class MainActivity extends RxAppCompatActivity {
         }
     }
 
+    /**
+     * Scores every open tile for the human in the background, filling in the heatmap as each one is
+     * done. Does nothing unless hints are on and it's the human's turn.
+     */
+    private void showHints() {
+        stopHints();
+        if (!hintsEnabled || game.isOver() || game.currentPlayer() != TicTacToeGame.PLAYER_ONE) {
+            return;
+        }
+        Board board = Board.fromGrid(game.getGridState(), game.currentPlayer());
+        hintSubscription = MoveHints.stream(board, hintSearch, board.emptyCount())
+                .compose(EngineExecutor.SHARED.<MoveHints.Hint>schedule(hintSearch))
+                .observeOn(AndroidSchedulers.mainThread())
+                .compose(this.<MoveHints.Hint>bindToLifecycle())
+                .subscribe(new Action1<MoveHints.Hint>() {
+                    @Override
+                    public void call(MoveHints.Hint hint) {
+                        ticTacToeView.setHint(hint.cell, hint.value());
+                    }
+                }, new Action1<Throwable>() {
+                    @Override
+                    public void call(Throwable throwable) {
+                        // Hints are nice to have, so if the engine's too busy they just don't show
+                    }
+                });
+    }
+
+    private void stopHints() {
+        if (hintSubscription != null) {
+            hintSubscription.unsubscribe();
+            hintSubscription = null;
+        }
+        ticTacToeView.clearHints();
+    }
+
     private void restart() {
+        stopHints();
+        if (cpuMoveSubscription != null) {
+            // Otherwise a move from the old game could land on the new board
+            cpuMoveSubscription.unsubscribe();
+            cpuMoveSubscription = null;
+        }
         ticTacToeView.reset();
         game.restart();
         startGame();
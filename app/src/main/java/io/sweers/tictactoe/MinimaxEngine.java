@@ -0,0 +1,53 @@
+package io.sweers.tictactoe;
+
+import java.util.Random;
+
+/**
+ * Perfect play. On 3x3 boards this reads straight out of the shared {@link PositionSolver}, picking
+ * at random between equally good moves like {@link TicTacToeGame} does; anything bigger gets an
+ * unbounded {@link BoardSearch}, so keep it to small boards.
+ */
+public final class MinimaxEngine implements MoveEngine {
+
+    private final PositionSolver solver;
+    private final BoardSearch search = new BoardSearch();
+    private final Random random;
+
+    public MinimaxEngine(PositionSolver solver, Random random) {
+        this.solver = solver;
+        this.random = random;
+    }
+
+    @Override
+    public int chooseMove(Board board) {
+        if (board.size() != 3 || board.winLength() != 3) {
+            return search.bestMove(board, board.emptyCount());
+        }
+
+        int packed = PackedBoard.pack(board);
+        int empty = PackedBoard.emptyMask(packed);
+        int bestScore = Integer.MIN_VALUE;
+        int bestMove = -1;
+        int ties = 0;
+        for (int i = 0; i < PackedBoard.CELLS; i++) {
+            if ((empty & (1 << i)) == 0) {
+                continue;
+            }
+            int score = -PositionSolver.score(solver.solve(PackedBoard.play(packed, i)));
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = i;
+                ties = 1;
+            } else if (score == bestScore && random.nextInt(++ties) == 0) {
+                // Reservoir sample so every equally good move is equally likely
+                bestMove = i;
+            }
+        }
+        return bestMove;
+    }
+
+    @Override
+    public String name() {
+        return "minimax";
+    }
+}
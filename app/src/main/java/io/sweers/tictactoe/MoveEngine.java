@@ -0,0 +1,19 @@
+package io.sweers.tictactoe;
+
+/**
+ * Something that can pick a move for whoever's turn it is on a {@link Board}. Engines may keep
+ * scratch state between calls, so each thread should get its own from a {@link Factory}.
+ */
+public interface MoveEngine {
+
+    interface Factory {
+        MoveEngine create();
+    }
+
+    /**
+     * @return the cell to play for {@link Board#toMove()}. The board must be left as it was found.
+     */
+    int chooseMove(Board board);
+
+    String name();
+}
@@ -0,0 +1,71 @@
+package io.sweers.tictactoe;
+
+import rx.Observable;
+import rx.Subscriber;
+
+/**
+ * Scores every legal move of a position for the player to move, for showing as a heatmap.
+ *
+ * Each cell is emitted as soon as it's been scored rather than all at once at the end, so on big
+ * boards the hints fill in progressively instead of nothing showing up for a while. Unsubscribing
+ * stops the search after the cell it's on.
+ */
+public final class MoveHints {
+
+    // Roughly where the evaluator's scores stop being "a bit better" and start being "a lot better"
+    private static final float SCALE = 1000f;
+
+    private MoveHints() {
+        throw new AssertionError("No instances");
+    }
+
+    public static final class Hint {
+        public final int cell;
+        public final int score;
+
+        Hint(int cell, int score) {
+            this.cell = cell;
+            this.score = score;
+        }
+
+        /**
+         * @return 1 for a forced win, -1 for a forced loss, and in between for anything short of
+         * that, with 0 being dead even
+         */
+        public float value() {
+            if (score > BoardSearch.WIN_SCORE / 2) {
+                return 1;
+            } else if (score < -BoardSearch.WIN_SCORE / 2) {
+                return -1;
+            }
+            // Stays clear of +/-1, so a good position never looks like a proven one
+            return 0.9f * score / (Math.abs(score) + SCALE);
+        }
+    }
+
+    /**
+     * Scores each empty cell of a copy of {@code position} with {@code search}, which is held for
+     * the duration so nothing else can use it at the same time. Hand in the same search every turn
+     * so that its transposition table carries over.
+     *
+     * @param maxDepth how far to look; anything covering every empty cell gives exact results
+     */
+    public static Observable<Hint> stream(Board position, final BoardSearch search, final int maxDepth) {
+        final Board board = position.copy();
+        return Observable.create(new Observable.OnSubscribe<Hint>() {
+            @Override
+            public void call(Subscriber<? super Hint> subscriber) {
+                synchronized (search) {
+                    for (int cell = 0; cell < board.cellCount() && !subscriber.isUnsubscribed(); cell++) {
+                        if (board.isLegal(cell)) {
+                            subscriber.onNext(new Hint(cell, search.scoreMove(board, cell, maxDepth)));
+                        }
+                    }
+                }
+                if (!subscriber.isUnsubscribed()) {
+                    subscriber.onCompleted();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,372 @@
+package io.sweers.tictactoe;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Move statistics for the first few plies of the game, so the CPU doesn't have to search the
+ * positions where searching is most expensive.
+ *
+ * Stats are keyed by the {@link Board#hash()} of the position a move leads to (so transpositions
+ * share them) and record how the player who made that move went on to do: 2 points for a win, 1
+ * for a tie. Finished games can be fed back in with {@link #recordGame(Board)}, which lets the book
+ * drift towards whatever actually works against the people playing it.
+ *
+ * The book is loaded lazily from its {@link Source} the first time it's needed, and is safe to
+ * use from multiple threads. Under memory pressure it can be {@link #trim(float) trimmed} back to
+ * unloaded, as long as everything it's learned since has been saved.
+ *
+ * Usage: {@code OpeningBook <size> <winLength> <maxPly> <output file>} to seed a new book from search.
+ */
+public final class OpeningBook implements TrimmableCache {
+
+    public interface Source {
+        /**
+         * @return a stream in the format written by {@link #save(OutputStream)}
+         */
+        InputStream open() throws IOException;
+    }
+
+    private static final int MAGIC = 0x5454544F;    // "TTTO"
+    private static final int VERSION = 1;
+
+    // Once a move has this many games behind it, old results get halved so new ones still count
+    private static final int MAX_GAMES = 1 << 12;
+
+    // How hard to favor moves that score well. Higher is greedier.
+    private static final int SHARPNESS = 4;
+
+    // Boards this small are cheap enough to solve outright before trusting the stats
+    private static final int MAX_SOLVED_CELLS = 9;
+
+    private final Source source;
+    private final BoardSearch search = new BoardSearch();
+    private int maxPly;
+    private boolean loaded;
+    // Whether there are recorded games that haven't been saved yet
+    private boolean dirty;
+    private long[] keys = new long[64];
+    private int[] games = new int[64];
+    private int[] points = new int[64];
+    private int count;
+
+    public OpeningBook(int maxPly) {
+        this(maxPly, null);
+    }
+
+    /**
+     * @param maxPly only used if the source is missing; otherwise the source's own depth wins
+     */
+    public OpeningBook(int maxPly, Source source) {
+        this.maxPly = maxPly;
+        this.source = source;
+        this.loaded = source == null;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("Usage: OpeningBook <size> <winLength> <maxPly> <output file>");
+            System.exit(1);
+        }
+        OpeningBook book = seed(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+        OutputStream out = new FileOutputStream(new File(args[3]));
+        try {
+            book.save(out);
+        } finally {
+            out.close();
+        }
+        System.out.println("Wrote " + book.size() + " entries");
+    }
+
+    /**
+     * Builds a book by searching every move in every position of the first {@code maxPly} plies,
+     * as if each had been played a handful of times with a perfect result.
+     */
+    public static OpeningBook seed(int size, int winLength, int maxPly) {
+        OpeningBook book = new OpeningBook(maxPly);
+        BoardSearch search = new BoardSearch();
+        Board board = new Board(size, winLength);
+        seed(book, search, board, maxPly);
+        board.setToMove(Board.TWO);
+        seed(book, search, board, maxPly);
+        return book;
+    }
+
+    private static void seed(OpeningBook book, BoardSearch search, Board board, int maxPly) {
+        if (board.moveCount() >= maxPly || board.isOver()) {
+            return;
+        }
+        for (int cell = 0; cell < board.cellCount(); cell++) {
+            if (board.get(cell) != Board.EMPTY) {
+                continue;
+            }
+            board.play(cell);
+            int index = book.slot(board.hash());
+            if (book.games[index] == 0) {
+                int score;
+                if (board.winner() != Board.EMPTY) {
+                    score = BoardSearch.WIN_SCORE;
+                } else {
+                    search.bestMove(board, board.cellCount());
+                    score = -search.lastScore();
+                }
+                book.games[index] = 4;
+                book.points[index] = score > 0 ? 8 : score == 0 ? 4 : 0;
+            }
+            seed(book, search, board, maxPly);
+            board.undo();
+        }
+    }
+
+    public synchronized int maxPly() {
+        ensureLoaded();
+        return maxPly;
+    }
+
+    public synchronized int size() {
+        ensureLoaded();
+        return count;
+    }
+
+    /**
+     * Picks a move at random, weighted towards moves that have done well in the past. On boards
+     * small enough to solve, moves that would give away the position's result are never picked,
+     * however well they've happened to do.
+     *
+     * @return the chosen cell, or -1 if this position is too deep or the book knows nothing about it
+     */
+    public synchronized int chooseMove(Board board, Random random) {
+        ensureLoaded();
+        if (board.moveCount() >= maxPly || board.isOver()) {
+            return -1;
+        }
+        int losing = losingMoves(board);
+
+        // First pass to find the total weight, second to pick
+        double total = 0;
+        boolean known = false;
+        for (int pass = 0; pass < 2; pass++) {
+            double target = pass == 0 ? 0 : random.nextDouble() * total;
+            for (int cell = 0; cell < board.cellCount(); cell++) {
+                if (board.get(cell) != Board.EMPTY || isSet(losing, cell)) {
+                    continue;
+                }
+                board.play(cell);
+                int index = find(board.hash());
+                board.undo();
+
+                // Unseen moves count as an even bet
+                double expected = index < 0
+                        ? 0.5
+                        : (points[index] + 1d) / (2d * games[index] + 2d);
+                double weight = Math.pow(expected, SHARPNESS);
+                if (pass == 0) {
+                    known |= index >= 0;
+                    total += weight;
+                } else {
+                    target -= weight;
+                    if (target <= 0) {
+                        return cell;
+                    }
+                }
+            }
+            if (!known) {
+                return -1;
+            }
+        }
+
+        // Rounding got us past the end, so take the last legal move
+        for (int cell = board.cellCount() - 1; cell >= 0; cell--) {
+            if (board.get(cell) == Board.EMPTY && !isSet(losing, cell)) {
+                return cell;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return a mask of the moves that score worse than the best one, if the board is small enough
+     * to search to the end, otherwise 0
+     */
+    private int losingMoves(Board board) {
+        if (board.cellCount() > MAX_SOLVED_CELLS) {
+            return 0;
+        }
+        int depth = board.emptyCount();
+        search.bestMove(board, depth);
+        int best = Integer.signum(search.lastScore());
+        int losing = 0;
+        for (int cell = 0; cell < board.cellCount(); cell++) {
+            if (board.get(cell) == Board.EMPTY
+                    && Integer.signum(search.scoreMove(board, cell, depth)) < best) {
+                losing |= 1 << cell;
+            }
+        }
+        return losing;
+    }
+
+    private static boolean isSet(int mask, int cell) {
+        return cell < Integer.SIZE && (mask & (1 << cell)) != 0;
+    }
+
+    /**
+     * Updates the stats for the opening moves of a finished game.
+     */
+    public synchronized void recordGame(Board finished) {
+        ensureLoaded();
+        if (finished.moveCount() == 0) {
+            return;
+        }
+        byte winner = finished.winner();
+        Board replay = new Board(finished.size(), finished.winLength());
+        replay.setToMove(finished.get(finished.moveAt(0)));
+        int plies = Math.min(maxPly, finished.moveCount());
+        for (int ply = 0; ply < plies; ply++) {
+            byte mover = replay.toMove();
+            replay.play(finished.moveAt(ply));
+            int index = slot(replay.hash());
+            if (games[index] >= MAX_GAMES) {
+                games[index] /= 2;
+                points[index] /= 2;
+            }
+            games[index]++;
+            points[index] += winner == Board.EMPTY ? 1 : winner == mover ? 2 : 0;
+        }
+        dirty = true;
+    }
+
+    public synchronized void save(OutputStream stream) throws IOException {
+        ensureLoaded();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(maxPly);
+        out.writeInt(count);
+        for (int i = 0; i < keys.length; i++) {
+            if (games[i] != 0) {
+                out.writeLong(keys[i]);
+                out.writeShort(games[i]);
+                out.writeShort(points[i]);
+            }
+        }
+        out.flush();
+        dirty = false;
+    }
+
+    @Override
+    public synchronized long byteSize() {
+        return loaded ? keys.length * (8L + 4 + 4) : 0;
+    }
+
+    /**
+     * Only lets go of anything when asked to clear, since it's small and a partial book would play
+     * worse. Books without a source, or with unsaved games, are never dropped.
+     */
+    @Override
+    public synchronized void trim(float keep) {
+        if (keep == 0 && loaded && source != null && !dirty) {
+            clear();
+            loaded = false;
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        try {
+            InputStream stream = source.open();
+            try {
+                load(stream);
+            } finally {
+                stream.close();
+            }
+        } catch (IOException e) {
+            // Start over with an empty book rather than trusting a partial one
+            clear();
+        }
+    }
+
+    private void load(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not an opening book");
+        }
+        maxPly = in.readInt();
+        int entries = in.readInt();
+        for (int i = 0; i < entries; i++) {
+            int index = slot(in.readLong());
+            games[index] = in.readUnsignedShort();
+            points[index] = in.readUnsignedShort();
+        }
+    }
+
+    private void clear() {
+        keys = new long[64];
+        games = new int[64];
+        points = new int[64];
+        count = 0;
+    }
+
+    /**
+     * @return the index for the given key, or -1 if it isn't in the book
+     */
+    private int find(long key) {
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; games[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index for the given key, claiming an empty slot for it if needed
+     */
+    private int slot(long key) {
+        if (count * 2 >= keys.length) {
+            grow();
+        }
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        for (; games[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        keys[i] = key;
+        count++;
+        return i;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldGames = games;
+        int[] oldPoints = points;
+        keys = new long[oldKeys.length * 2];
+        games = new int[oldKeys.length * 2];
+        points = new int[oldKeys.length * 2];
+        count = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldGames[i] != 0) {
+                int index = slot(oldKeys[i]);
+                games[index] = oldGames[i];
+                points[index] = oldPoints[i];
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        return (int) (key ^ (key >>> 32));
+    }
+}
@@ -0,0 +1,175 @@
+package io.sweers.tictactoe;
+
+import static io.sweers.tictactoe.TicTacToeGame.NONE;
+import static io.sweers.tictactoe.TicTacToeGame.PLAYER_ONE;
+import static io.sweers.tictactoe.TicTacToeGame.PLAYER_TWO;
+
+/**
+ * Static helpers for a 3x3 board packed into a single int, so positions can be stored, hashed and
+ * passed between threads without allocating anything.
+ *
+ * Layout: bits 0-8 are PLAYER_ONE's cells, bits 9-17 are PLAYER_TWO's cells, and bit 18 is set
+ * when PLAYER_TWO is the one to move.
+ */
+public final class PackedBoard {
+
+    public static final int CELLS = 9;
+    public static final int EMPTY = 0;
+
+    /** Number of distinct indices handed out by {@link #index(int)}. */
+    public static final int INDEX_COUNT = 19683 * 2;   // 3^9 boards, times who's moving
+
+    private static final int CELL_MASK = 0x1FF;
+    private static final int TWO_SHIFT = 9;
+    private static final int TWO_TO_MOVE = 1 << 18;
+
+    // Every way to get three in a row, as 9-bit cell masks
+    private static final int[] WIN_LINES = {
+            0x007, 0x038, 0x1C0,    // Rows
+            0x049, 0x092, 0x124,    // Columns
+            0x111, 0x054            // Diagonals
+    };
+
+    private PackedBoard() {
+        throw new AssertionError("No instances");
+    }
+
+    public static int pack(char[] grid, char toMove) {
+        int packed = toMove == PLAYER_TWO ? TWO_TO_MOVE : 0;
+        for (int i = 0; i < CELLS; i++) {
+            if (grid[i] == PLAYER_ONE) {
+                packed |= 1 << i;
+            } else if (grid[i] == PLAYER_TWO) {
+                packed |= 1 << (i + TWO_SHIFT);
+            }
+        }
+        return packed;
+    }
+
+    /**
+     * Packs a 3x3 {@link Board}.
+     */
+    public static int pack(Board board) {
+        int packed = board.toMove() == Board.TWO ? TWO_TO_MOVE : 0;
+        for (int i = 0; i < CELLS; i++) {
+            byte player = board.get(i);
+            if (player == Board.ONE) {
+                packed |= 1 << i;
+            } else if (player == Board.TWO) {
+                packed |= 1 << (i + TWO_SHIFT);
+            }
+        }
+        return packed;
+    }
+
+    public static void unpack(int packed, char[] out) {
+        for (int i = 0; i < CELLS; i++) {
+            out[i] = cellAt(packed, i);
+        }
+    }
+
+    public static char cellAt(int packed, int index) {
+        if ((ones(packed) & (1 << index)) != 0) {
+            return PLAYER_ONE;
+        } else if ((twos(packed) & (1 << index)) != 0) {
+            return PLAYER_TWO;
+        }
+        return NONE;
+    }
+
+    public static char toMove(int packed) {
+        return (packed & TWO_TO_MOVE) != 0 ? PLAYER_TWO : PLAYER_ONE;
+    }
+
+    public static int withToMove(int packed, char player) {
+        return player == PLAYER_TWO ? packed | TWO_TO_MOVE : packed & ~TWO_TO_MOVE;
+    }
+
+    public static int ones(int packed) {
+        return packed & CELL_MASK;
+    }
+
+    public static int twos(int packed) {
+        return (packed >>> TWO_SHIFT) & CELL_MASK;
+    }
+
+    public static int mask(int packed, char player) {
+        return player == PLAYER_ONE ? ones(packed) : twos(packed);
+    }
+
+    public static int emptyMask(int packed) {
+        return ~(ones(packed) | twos(packed)) & CELL_MASK;
+    }
+
+    public static int pieceCount(int packed) {
+        return Integer.bitCount(ones(packed) | twos(packed));
+    }
+
+    public static boolean isEmpty(int packed, int index) {
+        return (emptyMask(packed) & (1 << index)) != 0;
+    }
+
+    /**
+     * Places a piece for whoever is to move and hands the turn to the other player. The cell is
+     * assumed to be empty.
+     */
+    public static int play(int packed, int index) {
+        if ((packed & TWO_TO_MOVE) != 0) {
+            return (packed | (1 << (index + TWO_SHIFT))) & ~TWO_TO_MOVE;
+        } else {
+            return packed | (1 << index) | TWO_TO_MOVE;
+        }
+    }
+
+    /**
+     * @return the first winning line contained in the given 9-bit cell mask, or 0 if there isn't one
+     */
+    public static int winningLine(int cellMask) {
+        for (int line : WIN_LINES) {
+            if ((cellMask & line) == line) {
+                return line;
+            }
+        }
+        return 0;
+    }
+
+    public static boolean hasLine(int cellMask) {
+        return winningLine(cellMask) != 0;
+    }
+
+    public static char winner(int packed) {
+        if (hasLine(ones(packed))) {
+            return PLAYER_ONE;
+        } else if (hasLine(twos(packed))) {
+            return PLAYER_TWO;
+        }
+        return NONE;
+    }
+
+    @TicTacToeGame.GameState
+    public static int gameState(int packed) {
+        char winner = winner(packed);
+        if (winner == PLAYER_ONE) {
+            return TicTacToeGame.ONE_WINS;
+        } else if (winner == PLAYER_TWO) {
+            return TicTacToeGame.TWO_WINS;
+        } else if (emptyMask(packed) == 0) {
+            return TicTacToeGame.TIE;
+        }
+        return TicTacToeGame.CONTINUE;
+    }
+
+    /**
+     * Dense index of a position in [0, {@link #INDEX_COUNT}), handy for flat lookup tables.
+     */
+    public static int index(int packed) {
+        int ones = ones(packed);
+        int twos = twos(packed);
+        int rank = 0;
+        for (int i = CELLS - 1; i >= 0; i--) {
+            int bit = 1 << i;
+            rank = rank * 3 + ((ones & bit) != 0 ? 1 : (twos & bit) != 0 ? 2 : 0);
+        }
+        return rank * 2 + ((packed & TWO_TO_MOVE) != 0 ? 1 : 0);
+    }
+}
@@ -0,0 +1,297 @@
+package io.sweers.tictactoe;
+
+/**
+ * Static evaluation for {@link Board}s too big to search to the end.
+ *
+ * Every window of K cells in a row is a line someone could still win on, as long as only one player
+ * has stones in it. We keep a count of those open windows per player and per number of stones (open
+ * twos, threes, fours and so on) and score a position as a weighted sum of them, with separate
+ * weights for the player to move and their opponent since an open three is worth a lot more when
+ * it's your turn. The counts are updated incrementally as stones are added and removed, touching
+ * only the windows through the changed cell, so evaluating a leaf costs K multiplies rather than a
+ * scan of the board.
+ *
+ * It also tracks how many stones are near each cell, which is what {@link #candidates(Board, int[])}
+ * uses to prune moves to the part of the board where something is actually happening.
+ *
+ * Weights come from {@link EvalWeights#forWinLength(int)} unless they're set explicitly.
+ *
+ * Instances have to be kept in step with the board with {@link #add(int, byte)} and
+ * {@link #remove(int, byte)}, and aren't thread-safe.
+ */
+public final class PatternEvaluator {
+
+    /** How far (in rows or columns) from an existing stone a move has to be to be considered. */
+    public static final int RADIUS = 2;
+
+    // Keep well clear of anything that could be mistaken for a real win
+    private static final int MAX_SCORE = BoardSearch.WIN_SCORE / 2;
+
+    private final int size;
+    private final int winLength;
+    private final int[][] cellWindows;
+    private final byte[] oneCounts;
+    private final byte[] twoCounts;
+    // Open windows per player, indexed [(player - 1) * (winLength + 1) + stones]
+    private final int[] patterns;
+    private final int[] nearby;
+    private final float[] orderWeights;
+    private float[] weights;
+    private int stones;
+
+    public PatternEvaluator(int size, int winLength) {
+        this.size = size;
+        this.winLength = winLength;
+        int[][] windows = Board.lines(size, winLength);
+        oneCounts = new byte[windows.length];
+        twoCounts = new byte[windows.length];
+        patterns = new int[(winLength + 1) * 2];
+        nearby = new int[size * size];
+        weights = EvalWeights.forWinLength(winLength);
+        orderWeights = defaultWeights(winLength);
+
+        int[] windowsPerCell = new int[size * size];
+        for (int[] window : windows) {
+            for (int cell : window) {
+                windowsPerCell[cell]++;
+            }
+        }
+        cellWindows = new int[size * size][];
+        for (int cell = 0; cell < cellWindows.length; cell++) {
+            cellWindows[cell] = new int[windowsPerCell[cell]];
+            windowsPerCell[cell] = 0;
+        }
+        for (int w = 0; w < windows.length; w++) {
+            for (int cell : windows[w]) {
+                cellWindows[cell][windowsPerCell[cell]++] = w;
+            }
+        }
+        reset();
+    }
+
+    /**
+     * @return how many weights there are for K in a row: one per number of stones from 0 to K, for
+     * each player
+     */
+    public static int weightCount(int winLength) {
+        return (winLength + 1) * 2;
+    }
+
+    /**
+     * Each extra stone in an open window is worth roughly an order of magnitude more than the last,
+     * whoever's move it is.
+     */
+    public static float[] defaultWeights(int winLength) {
+        float[] weights = new float[weightCount(winLength)];
+        float weight = 1;
+        for (int stones = 1; stones <= winLength; stones++) {
+            weights[stones] = weight;
+            weights[winLength + 1 + stones] = -weight;
+            weight *= 10;
+        }
+        return weights;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int winLength() {
+        return winLength;
+    }
+
+    /**
+     * @param weights value of an open window holding each number of stones, from 0 to K, first for
+     * the player being evaluated and then for their opponent
+     */
+    public void setWeights(float[] weights) {
+        if (weights.length != weightCount(winLength)) {
+            throw new IllegalArgumentException("Expected " + weightCount(winLength) + " weights but got " + weights.length);
+        }
+        this.weights = weights;
+    }
+
+    public float[] weights() {
+        return weights;
+    }
+
+    /**
+     * Starts over from the given board's stones.
+     */
+    public void reset(Board board) {
+        if (board.size() != size || board.winLength() != winLength) {
+            throw new IllegalArgumentException("Evaluator is for " + size + "x" + size + ", " + winLength + " in a row");
+        }
+        reset();
+        for (int cell = 0; cell < board.cellCount(); cell++) {
+            byte player = board.get(cell);
+            if (player != Board.EMPTY) {
+                add(cell, player);
+            }
+        }
+    }
+
+    private void reset() {
+        for (int w = 0; w < oneCounts.length; w++) {
+            oneCounts[w] = 0;
+            twoCounts[w] = 0;
+        }
+        for (int i = 0; i < patterns.length; i++) {
+            patterns[i] = 0;
+        }
+        for (int i = 0; i < nearby.length; i++) {
+            nearby[i] = 0;
+        }
+        // Every window starts out open, with no stones, for both players
+        patterns[0] = oneCounts.length;
+        patterns[winLength + 1] = oneCounts.length;
+        stones = 0;
+    }
+
+    public void add(int cell, byte player) {
+        for (int w : cellWindows[cell]) {
+            uncount(w);
+            if (player == Board.ONE) {
+                oneCounts[w]++;
+            } else {
+                twoCounts[w]++;
+            }
+            count(w);
+        }
+        updateNearby(cell, 1);
+        stones++;
+    }
+
+    public void remove(int cell, byte player) {
+        for (int w : cellWindows[cell]) {
+            uncount(w);
+            if (player == Board.ONE) {
+                oneCounts[w]--;
+            } else {
+                twoCounts[w]--;
+            }
+            count(w);
+        }
+        updateNearby(cell, -1);
+        stones--;
+    }
+
+    private void count(int window) {
+        addPattern(window, 1);
+    }
+
+    private void uncount(int window) {
+        addPattern(window, -1);
+    }
+
+    private void addPattern(int window, int delta) {
+        int ones = oneCounts[window];
+        int twos = twoCounts[window];
+        if (twos == 0) {
+            patterns[ones] += delta;
+        }
+        if (ones == 0) {
+            patterns[winLength + 1 + twos] += delta;
+        }
+    }
+
+    private void updateNearby(int cell, int delta) {
+        int row = cell / size;
+        int column = cell % size;
+        int top = Math.max(0, row - RADIUS);
+        int bottom = Math.min(size - 1, row + RADIUS);
+        int left = Math.max(0, column - RADIUS);
+        int right = Math.min(size - 1, column + RADIUS);
+        for (int r = top; r <= bottom; r++) {
+            for (int c = left; c <= right; c++) {
+                nearby[r * size + c] += delta;
+            }
+        }
+    }
+
+    /**
+     * @return how many windows hold exactly {@code stones} of the player's stones and none of
+     * their opponent's
+     */
+    public int patternCount(byte player, int stones) {
+        return patterns[(player - 1) * (winLength + 1) + stones];
+    }
+
+    /**
+     * @return true if the player has a window one stone short of a win, so if it's their move
+     * they've won
+     */
+    public boolean hasOpenWin(byte player) {
+        return winLength > 1 && patternCount(player, winLength - 1) > 0;
+    }
+
+    /**
+     * Writes the evaluation's inputs into {@code out}, laid out like the weights: how many open
+     * windows the player has with each number of stones, then the same for their opponent. Empty
+     * windows are the same for both, so they're left as 0. {@link #evaluate(byte)} is the dot
+     * product of these with the weights.
+     */
+    public void features(byte player, float[] out) {
+        int mine = (player - 1) * (winLength + 1);
+        int theirs = (Board.opponent(player) - 1) * (winLength + 1);
+        out[0] = 0;
+        out[winLength + 1] = 0;
+        for (int stones = 1; stones <= winLength; stones++) {
+            out[stones] = patterns[mine + stones];
+            out[winLength + 1 + stones] = patterns[theirs + stones];
+        }
+    }
+
+    /**
+     * @return the heuristic value of the position for {@code player}, assuming it's their move
+     */
+    public int evaluate(byte player) {
+        int mine = (player - 1) * (winLength + 1);
+        int theirs = (Board.opponent(player) - 1) * (winLength + 1);
+        float score = 0;
+        for (int stones = 1; stones <= winLength; stones++) {
+            score += weights[stones] * patterns[mine + stones]
+                    + weights[winLength + 1 + stones] * patterns[theirs + stones];
+        }
+        return Math.max(-MAX_SCORE, Math.min(MAX_SCORE, Math.round(score)));
+    }
+
+    /**
+     * Cheap guess at how good a move is for ordering: how much it would extend the player's own open
+     * windows plus how much it would cut into their opponent's.
+     */
+    public float moveScore(int cell, byte player) {
+        float score = 0;
+        for (int w : cellWindows[cell]) {
+            int mine = player == Board.ONE ? oneCounts[w] : twoCounts[w];
+            int theirs = player == Board.ONE ? twoCounts[w] : oneCounts[w];
+            if (theirs == 0 && mine < winLength) {
+                score += orderWeights[mine + 1] - orderWeights[mine];
+            }
+            if (mine == 0 && theirs < winLength) {
+                score += orderWeights[theirs + 1] - orderWeights[theirs];
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Writes the empty cells within {@link #RADIUS} of an existing stone into {@code out}, or just
+     * the centre if the board is empty.
+     *
+     * @return how many were written
+     */
+    public int candidates(Board board, int[] out) {
+        if (stones == 0) {
+            out[0] = (size / 2) * size + size / 2;
+            return 1;
+        }
+        int count = 0;
+        for (int cell = 0; cell < nearby.length; cell++) {
+            if (nearby[cell] > 0 && board.get(cell) == Board.EMPTY) {
+                out[count++] = cell;
+            }
+        }
+        return count;
+    }
+}
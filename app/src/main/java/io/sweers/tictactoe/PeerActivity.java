@@ -0,0 +1,254 @@
+package io.sweers.tictactoe;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+import com.trello.rxlifecycle.components.support.RxAppCompatActivity;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.Enumeration;
+
+import butterknife.Bind;
+import butterknife.ButterKnife;
+import io.sweers.tictactoe.peer.PeerConnection;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Action1;
+import rx.subjects.PublishSubject;
+
+/**
+ * Plays against a friend on another device over a {@link PeerConnection}. One of you hosts, and
+ * the other types in the address the host shows. Moves show up as soon as they're tapped, and get
+ * taken back if the host's board says otherwise.
+ *
+ * The connection outlives rotations, so a game isn't dropped just because the phone was turned.
+ */
+public class PeerActivity extends RxAppCompatActivity {
+
+    private static final String EXTRA_ADDRESS = "address";
+
+    @Bind(R.id.ttt_view)
+    protected TicTacToeView ticTacToeView;
+
+    @Bind(R.id.status)
+    protected TextView statusView;
+
+    private final PublishSubject<Object> changes = PublishSubject.create();
+    private PeerConnection connection;
+    private String address;
+
+    // Written by the connection's thread, read on the main one
+    private volatile int board = PackedBoard.EMPTY;
+    private volatile char player = TicTacToeGame.NONE;
+    private volatile boolean confirmed = true;
+    private volatile boolean connected;
+
+    // What the view is currently showing
+    private int shownBoard = PackedBoard.EMPTY;
+    private boolean shownOver;
+
+    /**
+     * @param address the host to join, or null to host
+     */
+    public static Intent createIntent(Context context, @Nullable String address) {
+        return new Intent(context, PeerActivity.class)
+                .putExtra(EXTRA_ADDRESS, address);
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_peer);
+        ButterKnife.bind(this);
+
+        ticTacToeView.setOnTileClickedListener(new TicTacToeView.OnTileClickListener() {
+            @Override
+            public void onTileClick(int position) {
+                // The view already shows it, and the connection says so if it doesn't stick
+                ticTacToeView.setEnabled(false);
+                shownBoard = PackedBoard.play(shownBoard, position);
+                connection.play(position);
+            }
+        });
+
+        changes.observeOn(AndroidSchedulers.mainThread())
+                .compose(bindToLifecycle())
+                .subscribe(new Action1<Object>() {
+                    @Override
+                    public void call(Object o) {
+                        render();
+                    }
+                });
+
+        PeerConnection.Listener listener = new PeerConnection.Listener() {
+            @Override
+            public void onGameChanged(int board, char player, boolean confirmed) {
+                PeerActivity.this.board = board;
+                PeerActivity.this.player = player;
+                PeerActivity.this.confirmed = confirmed;
+                changes.onNext(null);
+            }
+
+            @Override
+            public void onConnectionChanged(boolean connected) {
+                PeerActivity.this.connected = connected;
+                changes.onNext(null);
+            }
+        };
+
+        String host = getIntent().getStringExtra(EXTRA_ADDRESS);
+        connection = (PeerConnection) getLastCustomNonConfigurationInstance();
+        try {
+            if (connection != null) {
+                connection.setListener(listener);
+            } else if (TextUtils.isEmpty(host)) {
+                connection = PeerConnection.host(PeerConnection.DEFAULT_PORT, listener);
+            } else {
+                connection = PeerConnection.join(
+                        InetSocketAddress.createUnresolved(host, PeerConnection.DEFAULT_PORT), listener);
+            }
+        } catch (IOException e) {
+            statusView.setText(getString(R.string.peer_failed, e.getMessage()));
+            ticTacToeView.setEnabled(false);
+            return;
+        }
+        address = connection.isHost() ? localAddress() : host;
+        render();
+    }
+
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        return connection;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (connection != null && !isChangingConfigurations()) {
+            try {
+                connection.stop();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.ultimate, menu);
+        return super.onCreateOptionsMenu(menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case R.id.restart:
+                if (connection != null) {
+                    connection.newGame();
+                }
+                return true;
+            default:
+                return super.onOptionsItemSelected(item);
+        }
+    }
+
+    /**
+     * Brings the view and status in line with the latest from the connection, only touching the
+     * tiles that changed.
+     */
+    private void render() {
+        int board = this.board;
+        char player = this.player;
+        boolean taken = (PackedBoard.ones(shownBoard) & ~PackedBoard.ones(board)) != 0
+                || (PackedBoard.twos(shownBoard) & ~PackedBoard.twos(board)) != 0;
+        if (taken) {
+            // A new game, or a move we showed early that didn't stick
+            char[] grid = new char[PackedBoard.CELLS];
+            PackedBoard.unpack(board, grid);
+            ticTacToeView.reset();
+            ticTacToeView.restoreBoard(grid);
+            shownOver = false;
+        } else {
+            for (int i = 0; i < PackedBoard.CELLS; i++) {
+                char cell = PackedBoard.cellAt(board, i);
+                if (cell != PackedBoard.cellAt(shownBoard, i)) {
+                    ticTacToeView.setTile(i, cell);
+                }
+            }
+        }
+        shownBoard = board;
+
+        int state = PackedBoard.gameState(board);
+        boolean myTurn = player != TicTacToeGame.NONE && PackedBoard.toMove(board) == player;
+        ticTacToeView.setNextPlayer(player);
+        if (state != TicTacToeGame.CONTINUE) {
+            if (!shownOver) {
+                shownOver = true;
+                ticTacToeView.endGame(winningIndices(board));
+            }
+        } else {
+            ticTacToeView.setEnabled(connected && confirmed && myTurn);
+        }
+
+        String status;
+        if (!connected) {
+            status = connection.isHost()
+                    ? getString(R.string.peer_waiting, address)
+                    : getString(R.string.peer_connecting, address);
+        } else if (state == TicTacToeGame.TIE) {
+            status = getString(R.string.peer_tie);
+        } else if (state != TicTacToeGame.CONTINUE) {
+            status = getString(PackedBoard.winner(board) == player ? R.string.peer_you_win : R.string.peer_they_win);
+        } else {
+            status = getString(myTurn ? R.string.peer_your_turn : R.string.peer_their_turn);
+        }
+        statusView.setText(status);
+    }
+
+    @Nullable
+    private static int[] winningIndices(int board) {
+        char winner = PackedBoard.winner(board);
+        if (winner == TicTacToeGame.NONE) {
+            return null;
+        }
+        int line = PackedBoard.winningLine(PackedBoard.mask(board, winner));
+        int[] indices = new int[Integer.bitCount(line)];
+        for (int i = 0, j = 0; i < PackedBoard.CELLS; i++) {
+            if ((line & (1 << i)) != 0) {
+                indices[j++] = i;
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * @return this device's address on the local network, for the friend to type in
+     */
+    private static String localAddress() {
+        try {
+            Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+            while (interfaces != null && interfaces.hasMoreElements()) {
+                Enumeration<InetAddress> addresses = interfaces.nextElement().getInetAddresses();
+                while (addresses.hasMoreElements()) {
+                    InetAddress address = addresses.nextElement();
+                    if (address instanceof Inet4Address && !address.isLoopbackAddress()) {
+                        return address.getHostAddress();
+                    }
+                }
+            }
+        } catch (SocketException e) {
+            // Fall through
+        }
+        return "?";
+    }
+}
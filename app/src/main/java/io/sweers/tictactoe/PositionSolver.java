@@ -0,0 +1,90 @@
+package io.sweers.tictactoe;
+
+/**
+ * Headless perfect-play solver for packed 3x3 positions (see {@link PackedBoard}).
+ *
+ * Unlike {@link TicTacToeGame}'s minimax, this holds no per-game state at all, so a single instance
+ * can be shared between any number of threads. Results are memoized in a {@link SolvedPositionCache}
+ * and are returned as a single int; use {@link #score(int)} and {@link #move(int)} to read them.
+ *
+ * Scores are from the perspective of the player to move and follow the same rules as minimax: a win
+ * is worth 10 minus the number of pieces on the board when it happens, so quicker wins (and slower
+ * losses) are preferred, and ties are worth 0. Equally good moves resolve to the lowest index.
+ */
+public final class PositionSolver {
+
+    public static final int NO_MOVE = 0xF;
+
+    private static final int SCORE_OFFSET = 16;
+
+    private final SolvedPositionCache cache;
+
+    public PositionSolver() {
+        this(SolvedPositionCache.SHARED);
+    }
+
+    public PositionSolver(SolvedPositionCache cache) {
+        this.cache = cache;
+    }
+
+    public static int score(int result) {
+        return (result >>> 4) - SCORE_OFFSET;
+    }
+
+    public static int move(int result) {
+        return result & 0xF;
+    }
+
+    static int result(int score, int move) {
+        return ((score + SCORE_OFFSET) << 4) | move;
+    }
+
+    /**
+     * @return the solved result for the player to move in the given position
+     */
+    public int solve(int packed) {
+        int cached = cache.get(packed);
+        if (cached != SolvedPositionCache.MISSING) {
+            return cached;
+        }
+
+        int result;
+        char justMoved = PackedBoard.toMove(packed) == TicTacToeGame.PLAYER_ONE
+                ? TicTacToeGame.PLAYER_TWO
+                : TicTacToeGame.PLAYER_ONE;
+        int empty = PackedBoard.emptyMask(packed);
+        if (PackedBoard.hasLine(PackedBoard.mask(packed, justMoved))) {
+            result = result(PackedBoard.pieceCount(packed) - 10, NO_MOVE);
+        } else if (empty == 0) {
+            result = result(0, NO_MOVE);    // Ties help no one
+        } else {
+            int bestScore = Integer.MIN_VALUE;
+            int bestMove = NO_MOVE;
+            for (int i = 0; i < PackedBoard.CELLS; i++) {
+                if ((empty & (1 << i)) != 0) {
+                    int score = -score(solve(PackedBoard.play(packed, i)));
+                    if (score > bestScore) {
+                        bestScore = score;
+                        bestMove = i;
+                    }
+                }
+            }
+            result = result(bestScore, bestMove);
+        }
+
+        cache.put(packed, result);
+        return result;
+    }
+
+    /**
+     * Solves {@code positions[from, to)} on the calling thread, writing the score and best move of
+     * each into the matching slots of {@code scores} and {@code moves}.
+     */
+    public void solveAll(int[] positions, int from, int to, int[] scores, int[] moves) {
+        for (int i = from; i < to; i++) {
+            int result = solve(positions[i]);
+            scores[i] = score(result);
+            moves[i] = move(result);
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package io.sweers.tictactoe;
+
+/**
+ * Proof-number search, for proving who wins N x N, K in a row positions that are far too big for
+ * minimax to walk exhaustively.
+ *
+ * Each search answers one yes/no question, "can the attacker force a win?", growing a tree towards
+ * whichever leaf would do the most to settle it: the one with the fewest positions left to prove
+ * (if the answer looks like yes) or disprove (if it looks like no). Draws count as a no, so
+ * {@link #solve(Board, long)} asks twice, once for each side, to tell a win, a loss and a draw
+ * apart.
+ *
+ * The tree lives in flat primitive arrays with a free list, capped at a fixed number of nodes.
+ * Once a node is solved, nothing below it can change the answer, so its subtree is collected
+ * straight away and only the result is kept, in a table keyed by {@link Board#hash()}. That table
+ * also catches transpositions: once a position is settled through one move order, any other copy
+ * of it is settled as soon as the search reaches it. If the unsolved part of the tree still
+ * outgrows the cap, the search gives up with {@link EndgameTable#UNKNOWN}.
+ *
+ * Instances keep their arrays between searches, for as long as the instance is around. Searches
+ * on the same instance take turns.
+ */
+public final class ProofNumberSearch {
+
+    // Proof and disproof numbers saturate here, meaning "can't be done"
+    private static final int INFINITY = Integer.MAX_VALUE / 2;
+    private static final int NONE = -1;
+    private static final int ROOT = 0;
+
+    private static final byte UNSOLVED = 0;
+    private static final byte PROVEN = 1;
+    private static final byte DISPROVEN = 2;
+
+    private final int capacity;
+    private int[] parents;
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    private int[] moves;
+    private int[] proofs;
+    private int[] disproofs;
+
+    // Solved positions for the current question, replaced on collision
+    private long[] solvedKeys;
+    private byte[] solvedResults;
+    private int[] candidates;
+    private int[][] lines;
+    private int linesSize;
+    private int linesWinLength;
+
+    private int used;
+    private int freeList;
+    private byte attacker;
+    private long expansions;
+    private int bestMove;
+
+    public ProofNumberSearch() {
+        this(1 << 18);
+    }
+
+    /**
+     * @param capacity most nodes the tree may hold at once
+     */
+    public ProofNumberSearch(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return how many nodes the most recent {@link #solve(Board, long)} expanded
+     */
+    public synchronized long expansions() {
+        return expansions;
+    }
+
+    /**
+     * @return a winning move after a {@link EndgameTable#WIN}, a drawing one after a
+     * {@link EndgameTable#DRAW}, otherwise -1
+     */
+    public synchronized int bestMove() {
+        return bestMove;
+    }
+
+    /**
+     * Works out the game-theoretic result of a position. The board is left as it was found.
+     *
+     * @param maxExpansions how many nodes to expand at most, across both questions
+     * @return {@link EndgameTable#WIN}, {@link EndgameTable#LOSS} or {@link EndgameTable#DRAW} for
+     * the player to move, or {@link EndgameTable#UNKNOWN} if it ran out of expansions or memory first
+     */
+    public synchronized int solve(Board board, long maxExpansions) {
+        expansions = 0;
+        bestMove = -1;
+        if (board.winner() != Board.EMPTY) {
+            return board.winner() == board.toMove() ? EndgameTable.WIN : EndgameTable.LOSS;
+        } else if (board.isOver()) {
+            return EndgameTable.DRAW;
+        }
+
+        byte player = board.toMove();
+        byte result = prove(board, player, maxExpansions);
+        if (result == PROVEN) {
+            bestMove = solvedChild(PROVEN);
+            return EndgameTable.WIN;
+        } else if (result == UNSOLVED) {
+            return EndgameTable.UNKNOWN;
+        }
+
+        result = prove(board, Board.opponent(player), maxExpansions - expansions);
+        if (result == PROVEN) {
+            return EndgameTable.LOSS;
+        } else if (result == UNSOLVED) {
+            return EndgameTable.UNKNOWN;
+        }
+        // The root was the opponent's AND node, so a disproven child is a move that holds the draw
+        bestMove = solvedChild(DISPROVEN);
+        return EndgameTable.DRAW;
+    }
+
+    /**
+     * Asks whether {@code attacker} can force a win from the given position.
+     */
+    private byte prove(Board board, byte attacker, long maxExpansions) {
+        if (parents == null) {
+            parents = new int[capacity];
+            firstChildren = new int[capacity];
+            nextSiblings = new int[capacity];
+            moves = new int[capacity];
+            proofs = new int[capacity];
+            disproofs = new int[capacity];
+            solvedKeys = new long[Integer.highestOneBit(capacity)];
+            solvedResults = new byte[solvedKeys.length];
+        }
+        if (candidates == null || candidates.length < board.cellCount()) {
+            candidates = new int[board.cellCount()];
+        }
+        if (lines == null || linesSize != board.size() || linesWinLength != board.winLength()) {
+            lines = Board.lines(board.size(), board.winLength());
+            linesSize = board.size();
+            linesWinLength = board.winLength();
+        }
+        this.attacker = attacker;
+        used = 0;
+        freeList = NONE;
+        for (int i = 0; i < solvedResults.length; i++) {
+            solvedResults[i] = UNSOLVED;
+        }
+
+        allocate(NONE, -1);
+        proofs[ROOT] = 1;
+        disproofs[ROOT] = 1;
+        long limit = expansions + maxExpansions;
+        while (proofs[ROOT] != 0 && disproofs[ROOT] != 0 && expansions < limit) {
+            // Walk down to the most proving node
+            int node = ROOT;
+            int depth = 0;
+            boolean settled = false;
+            while (firstChildren[node] != NONE) {
+                node = selectChild(node, board.toMove() == attacker);
+                board.play(moves[node]);
+                depth++;
+
+                // Another copy of this position may have been solved since this one was added
+                byte known = lookup(board.hash());
+                if (known != UNSOLVED) {
+                    freeChildren(node);
+                    proofs[node] = known == PROVEN ? 0 : INFINITY;
+                    disproofs[node] = known == PROVEN ? INFINITY : 0;
+                    settled = true;
+                    break;
+                }
+            }
+
+            boolean expanded = settled || expand(node, board);
+
+            // Walk back up, bringing each ancestor's numbers up to date
+            while (true) {
+                if (node != ROOT) {
+                    update(node, board);
+                } else if (firstChildren[ROOT] != NONE) {
+                    // Never collected, so a solved root can still say which move did it
+                    setFromChildren(ROOT, board.toMove() == attacker);
+                }
+                if (depth == 0) {
+                    break;
+                }
+                board.undo();
+                depth--;
+                node = parents[node];
+            }
+            if (!expanded) {
+                break;
+            }
+        }
+        return proofs[ROOT] == 0 ? PROVEN : disproofs[ROOT] == 0 ? DISPROVEN : UNSOLVED;
+    }
+
+    /**
+     * Adds a child for every sensible move from this leaf. A move that wins on the spot solves the
+     * leaf without keeping any children (except at the root, which needs one to report the move).
+     * Otherwise, if the opponent is threatening to win next move, only the blocks are tried, since
+     * anything else loses straight away. Children where the attacker has no lines left to win on
+     * are disproven without searching any further.
+     *
+     * @return false if the tree is full
+     */
+    private boolean expand(int node, Board board) {
+        expansions++;
+        byte mover = board.toMove();
+        byte opponent = Board.opponent(mover);
+        boolean orNode = mover == attacker;
+
+        int count = 0;
+        boolean blocking = false;
+        for (int cell = 0; cell < board.cellCount(); cell++) {
+            if (board.get(cell) != Board.EMPTY) {
+                continue;
+            }
+            if (wins(board, cell, mover)) {
+                if (node != ROOT) {
+                    proofs[node] = orNode ? 0 : INFINITY;
+                    disproofs[node] = orNode ? INFINITY : 0;
+                    return true;
+                }
+                candidates[0] = cell;
+                count = 1;
+                break;
+            }
+            if (wins(board, cell, opponent)) {
+                if (!blocking) {
+                    blocking = true;
+                    count = 0;
+                }
+                candidates[count++] = cell;
+            } else if (!blocking) {
+                candidates[count++] = cell;
+            }
+        }
+
+        int moveCount = board.emptyCount();
+        int last = NONE;
+        for (int i = 0; i < count; i++) {
+            int cell = candidates[i];
+            board.play(cell);
+            byte known = lookup(board.hash());
+            boolean won = board.winner() == mover;
+            boolean drawn = board.winner() == Board.EMPTY && board.isOver();
+            boolean hopeless = known == UNSOLVED && !won && !drawn && !hasOpenLine(board, attacker);
+            board.undo();
+
+            int child = allocate(node, cell);
+            if (child == NONE) {
+                freeChildren(node);
+                return false;
+            }
+            if (known == PROVEN || (won && orNode)) {
+                proofs[child] = 0;
+                disproofs[child] = INFINITY;
+            } else if (known == DISPROVEN || drawn || won || hopeless) {
+                proofs[child] = INFINITY;
+                disproofs[child] = 0;
+            } else {
+                // The more moves the child has, the harder it is to settle for whoever needs all of them
+                proofs[child] = orNode ? moveCount - 1 : 1;
+                disproofs[child] = orNode ? 1 : moveCount - 1;
+            }
+            if (last == NONE) {
+                firstChildren[node] = child;
+            } else {
+                nextSiblings[last] = child;
+            }
+            last = child;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if {@code player} still has a line without any of the opponent's pieces in it.
+     * Once that's gone they can't win, however the rest of the game goes.
+     */
+    private boolean hasOpenLine(Board board, byte player) {
+        byte opponent = Board.opponent(player);
+        for (int[] line : lines) {
+            boolean open = true;
+            for (int cell : line) {
+                if (board.get(cell) == opponent) {
+                    open = false;
+                    break;
+                }
+            }
+            if (open) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if {@code player} would complete a line by playing the given empty cell
+     */
+    private static boolean wins(Board board, int cell, byte player) {
+        board.set(cell, player);
+        boolean wins = board.completesLine(cell);
+        board.set(cell, Board.EMPTY);
+        return wins;
+    }
+
+    /**
+     * Recomputes a node's numbers from its children, and if that solves it, records the result and
+     * collects its subtree.
+     */
+    private void update(int node, Board board) {
+        if (firstChildren[node] == NONE) {
+            // Solved when it was expanded
+            return;
+        }
+        setFromChildren(node, board.toMove() == attacker);
+        if (proofs[node] == 0 || disproofs[node] == 0) {
+            store(board.hash(), proofs[node] == 0 ? PROVEN : DISPROVEN);
+            freeChildren(node);
+        }
+    }
+
+    /**
+     * The attacker only needs one child proven (OR), the defender needs every child proven (AND).
+     */
+    private void setFromChildren(int node, boolean orNode) {
+        int proof = orNode ? INFINITY : 0;
+        int disproof = orNode ? 0 : INFINITY;
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            if (orNode) {
+                proof = Math.min(proof, proofs[child]);
+                disproof = Math.min(INFINITY, disproof + disproofs[child]);
+            } else {
+                proof = Math.min(INFINITY, proof + proofs[child]);
+                disproof = Math.min(disproof, disproofs[child]);
+            }
+        }
+        proofs[node] = proof;
+        disproofs[node] = disproof;
+    }
+
+    private int selectChild(int node, boolean orNode) {
+        int best = firstChildren[node];
+        for (int child = best; child != NONE; child = nextSiblings[child]) {
+            if (orNode ? proofs[child] < proofs[best] : disproofs[child] < disproofs[best]) {
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the move of the root's first child with the given result, or -1
+     */
+    private int solvedChild(byte result) {
+        for (int child = firstChildren[ROOT]; child != NONE; child = nextSiblings[child]) {
+            if (result == PROVEN ? proofs[child] == 0 : disproofs[child] == 0) {
+                return moves[child];
+            }
+        }
+        return -1;
+    }
+
+    private int allocate(int parent, int move) {
+        int node;
+        if (freeList != NONE) {
+            node = freeList;
+            freeList = nextSiblings[node];
+        } else if (used < capacity) {
+            node = used++;
+        } else {
+            return NONE;
+        }
+        parents[node] = parent;
+        firstChildren[node] = NONE;
+        nextSiblings[node] = NONE;
+        moves[node] = move;
+        return node;
+    }
+
+    private void freeChildren(int node) {
+        int child = firstChildren[node];
+        firstChildren[node] = NONE;
+        while (child != NONE) {
+            int next = nextSiblings[child];
+            freeChildren(child);
+            nextSiblings[child] = freeList;
+            freeList = child;
+            child = next;
+        }
+    }
+
+    private byte lookup(long hash) {
+        int slot = slot(hash);
+        return solvedKeys[slot] == hash ? solvedResults[slot] : UNSOLVED;
+    }
+
+    private void store(long hash, byte result) {
+        int slot = slot(hash);
+        solvedKeys[slot] = hash;
+        solvedResults[slot] = result;
+    }
+
+    private int slot(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & (solvedKeys.length - 1);
+    }
+}
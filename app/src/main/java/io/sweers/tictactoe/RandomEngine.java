@@ -0,0 +1,35 @@
+package io.sweers.tictactoe;
+
+import java.util.Random;
+
+/**
+ * Plays any legal move, uniformly at random. Mostly useful as a baseline.
+ */
+public final class RandomEngine implements MoveEngine {
+
+    private final Random random;
+
+    public RandomEngine(Random random) {
+        this.random = random;
+    }
+
+    @Override
+    public int chooseMove(Board board) {
+        return randomMove(board, random);
+    }
+
+    static int randomMove(Board board, Random random) {
+        int pick = random.nextInt(board.emptyCount());
+        for (int cell = 0; cell < board.cellCount(); cell++) {
+            if (board.get(cell) == Board.EMPTY && pick-- == 0) {
+                return cell;
+            }
+        }
+        throw new IllegalStateException("No moves left on\n" + board);
+    }
+
+    @Override
+    public String name() {
+        return "random";
+    }
+}
@@ -0,0 +1,158 @@
+package io.sweers.tictactoe;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.widget.SeekBar;
+import android.widget.TextView;
+
+import com.trello.rxlifecycle.components.support.RxAppCompatActivity;
+
+import butterknife.Bind;
+import butterknife.ButterKnife;
+import rx.Observable;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Action1;
+import rx.functions.Func1;
+import rx.subjects.PublishSubject;
+
+/**
+ * Scrubs back and forth through a recorded game with a {@link SeekBar}, showing what the engine
+ * thinks of each position along the way. {@link GameReplay} does the heavy lifting, so seeking only
+ * redraws the tiles that changed and stays instant even on big boards with long games.
+ */
+public class ReplayActivity extends RxAppCompatActivity {
+
+    private static final String EXTRA_SIZE = "size";
+    private static final String EXTRA_WIN_LENGTH = "winLength";
+    private static final String EXTRA_FIRST_PLAYER = "firstPlayer";
+    private static final String EXTRA_MOVES = "moves";
+    private static final String EXTRA_PLY = "ply";
+
+    @Bind(R.id.ttt_view)
+    protected TicTacToeView ticTacToeView;
+
+    @Bind(R.id.ply)
+    protected TextView plyView;
+
+    @Bind(R.id.evaluation)
+    protected TextView evaluationView;
+
+    @Bind(R.id.seek_bar)
+    protected SeekBar seekBar;
+
+    private final PublishSubject<Integer> evaluationRequests = PublishSubject.create();
+    private GameReplay replay;
+    private int[] changed;
+
+    public static Intent createIntent(Context context, int size, int winLength, char firstPlayer, int[] moves) {
+        return new Intent(context, ReplayActivity.class)
+                .putExtra(EXTRA_SIZE, size)
+                .putExtra(EXTRA_WIN_LENGTH, winLength)
+                .putExtra(EXTRA_FIRST_PLAYER, firstPlayer)
+                .putExtra(EXTRA_MOVES, moves);
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_replay);
+        ButterKnife.bind(this);
+
+        Intent intent = getIntent();
+        replay = new GameReplay(
+                intent.getIntExtra(EXTRA_SIZE, 3),
+                intent.getIntExtra(EXTRA_WIN_LENGTH, 3),
+                Board.fromChar(intent.getCharExtra(EXTRA_FIRST_PLAYER, TicTacToeGame.PLAYER_ONE)),
+                intent.getIntArrayExtra(EXTRA_MOVES));
+        int cellCount = replay.size() * replay.size();
+        changed = new int[cellCount];
+
+        // The replay starts out at the end of the game, so draw that once and go from there
+        ticTacToeView.setGridSize(replay.size());
+        char[] grid = new char[cellCount];
+        for (int i = 0; i < cellCount; i++) {
+            grid[i] = Board.toChar(replay.get(i));
+        }
+        ticTacToeView.restoreBoard(grid);
+
+        // Only the latest ply's evaluation matters, so anything older is dropped when scrubbing
+        evaluationRequests
+                .switchMap(new Func1<Integer, Observable<Integer>>() {
+                    @Override
+                    public Observable<Integer> call(Integer ply) {
+                        return Observable.just(ply)
+                                .map(new Func1<Integer, Integer>() {
+                                    @Override
+                                    public Integer call(Integer ply) {
+                                        return replay.evaluate(ply);
+                                    }
+                                })
+                                .compose(EngineExecutor.SHARED.<Integer>schedule(replay))
+                                // If the engine's too busy, the next seek asks again
+                                .onErrorResumeNext(Observable.<Integer>empty());
+                    }
+                })
+                .observeOn(AndroidSchedulers.mainThread())
+                .compose(this.<Integer>bindToLifecycle())
+                .subscribe(new Action1<Integer>() {
+                    @Override
+                    public void call(Integer score) {
+                        evaluationView.setText(describe(score));
+                    }
+                });
+
+        int ply = replay.moveCount();
+        if (savedInstanceState != null) {
+            ply = savedInstanceState.getInt(EXTRA_PLY, ply);
+        }
+        seekBar.setMax(replay.moveCount());
+        seekBar.setProgress(ply);
+        seekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                showPly(progress);
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar) {
+            }
+
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar) {
+            }
+        });
+        showPly(ply);
+    }
+
+    @Override
+    public void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putInt(EXTRA_PLY, replay.ply());
+    }
+
+    private void showPly(int ply) {
+        int count = replay.seek(ply, changed);
+        for (int i = 0; i < count; i++) {
+            int cell = changed[i];
+            ticTacToeView.showTile(cell, Board.toChar(replay.get(cell)));
+        }
+        plyView.setText(getString(R.string.replay_ply, ply, replay.moveCount()));
+
+        int cached = replay.cachedEvaluation(ply);
+        evaluationView.setText(cached == GameReplay.NOT_EVALUATED
+                ? getString(R.string.replay_evaluating)
+                : describe(cached));
+        evaluationRequests.onNext(ply);
+    }
+
+    private String describe(int score) {
+        char leader = score > 0 ? TicTacToeGame.PLAYER_ONE : TicTacToeGame.PLAYER_TWO;
+        if (Math.abs(score) > BoardSearch.WIN_SCORE / 2) {
+            return getString(R.string.replay_forced_win, leader);
+        } else if (score == 0) {
+            return getString(R.string.replay_even);
+        }
+        return getString(R.string.replay_ahead, leader, Math.abs(score));
+    }
+}
@@ -0,0 +1,84 @@
+package io.sweers.tictactoe;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Minimax scores keyed by position, bounded by an estimate of how many bytes the entries take up.
+ * Once it's full the least recently used entries go first. Safe to use from multiple threads.
+ */
+public final class ScoreCache implements TrimmableCache {
+
+    // Per entry on top of the key's chars: the String and its char[], the map entry and its slot in
+    // the table. Scores are small enough that the boxed Integers are shared.
+    static final int ENTRY_OVERHEAD = 96;
+
+    private final LinkedHashMap<String, Integer> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxBytes;
+    private long bytes;
+
+    public ScoreCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the cached score, or null if there isn't one
+     */
+    public synchronized Integer get(String key) {
+        return entries.get(key);
+    }
+
+    public synchronized void put(String key, int score) {
+        if (entries.put(key, score) == null) {
+            bytes += entryBytes(key);
+            trimTo(maxBytes);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized long maxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Changes the limit, dropping entries right away if it went down.
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trimTo(maxBytes);
+    }
+
+    @Override
+    public synchronized long byteSize() {
+        return bytes;
+    }
+
+    /**
+     * Shrinks to a fraction of the limit. The limit itself stays, so the cache can fill back up.
+     */
+    @Override
+    public synchronized void trim(float keep) {
+        trimTo((long) (maxBytes * keep));
+    }
+
+    private void trimTo(long target) {
+        Iterator<Map.Entry<String, Integer>> iterator = entries.entrySet().iterator();
+        while (bytes > target && iterator.hasNext()) {
+            bytes -= entryBytes(iterator.next().getKey());
+            iterator.remove();
+        }
+    }
+
+    private static long entryBytes(String key) {
+        return ENTRY_OVERHEAD + 2 * key.length();
+    }
+}
@@ -0,0 +1,29 @@
+package io.sweers.tictactoe;
+
+/**
+ * {@link BoardSearch} with a fixed depth limit, optionally backed by an {@link EndgameTable}.
+ */
+public final class SearchEngine implements MoveEngine {
+
+    private final BoardSearch search = new BoardSearch();
+    private final int depth;
+
+    public SearchEngine(int depth) {
+        this(depth, null);
+    }
+
+    public SearchEngine(int depth, EndgameTable table) {
+        this.depth = depth;
+        search.setEndgameTable(table);
+    }
+
+    @Override
+    public int chooseMove(Board board) {
+        return search.bestMove(board, depth);
+    }
+
+    @Override
+    public String name() {
+        return "search(depth=" + depth + ")";
+    }
+}
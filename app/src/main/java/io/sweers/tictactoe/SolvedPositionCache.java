@@ -0,0 +1,86 @@
+package io.sweers.tictactoe;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Thread-safe table of solved 3x3 positions, indexed by {@link PackedBoard#index(int)}.
+ *
+ * The whole game only has a few thousand reachable positions, so rather than hashing we keep one
+ * int slot per possible position. Entries are written once and never change afterwards, which means
+ * readers never block and two threads racing to solve the same position just write the same value.
+ *
+ * The table isn't allocated until something is stored, and {@link #trim(float) trimming} it to
+ * nothing drops it again. A solve that was in flight at the time may land in the old table and be
+ * lost, which only costs solving that position again.
+ */
+public final class SolvedPositionCache implements TrimmableCache {
+
+    /** Process-wide cache shared by every {@link PositionSolver} that doesn't bring its own. */
+    public static final SolvedPositionCache SHARED = new SolvedPositionCache();
+
+    static final int MISSING = 0;
+
+    private volatile AtomicIntegerArray entries;
+
+    /**
+     * @return the stored solver result for this position, or {@link #MISSING}
+     */
+    int get(int packed) {
+        AtomicIntegerArray entries = this.entries;
+        return entries == null ? MISSING : entries.get(PackedBoard.index(packed));
+    }
+
+    void put(int packed, int result) {
+        AtomicIntegerArray entries = this.entries;
+        if (entries == null) {
+            entries = allocate();
+        }
+        entries.lazySet(PackedBoard.index(packed), result);
+    }
+
+    private synchronized AtomicIntegerArray allocate() {
+        if (entries == null) {
+            entries = new AtomicIntegerArray(PackedBoard.INDEX_COUNT);
+        }
+        return entries;
+    }
+
+    public int size() {
+        AtomicIntegerArray entries = this.entries;
+        if (entries == null) {
+            return 0;
+        }
+        int size = 0;
+        for (int i = 0; i < entries.length(); i++) {
+            if (entries.get(i) != MISSING) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    public void clear() {
+        AtomicIntegerArray entries = this.entries;
+        if (entries == null) {
+            return;
+        }
+        for (int i = 0; i < entries.length(); i++) {
+            entries.set(i, MISSING);
+        }
+    }
+
+    @Override
+    public long byteSize() {
+        return entries == null ? 0 : 4L * PackedBoard.INDEX_COUNT;
+    }
+
+    /**
+     * It's one flat table, so this either keeps all of it or none of it.
+     */
+    @Override
+    public synchronized void trim(float keep) {
+        if (keep == 0) {
+            entries = null;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package io.sweers.tictactoe;
+
+/**
+ * Pure {@link EndgameTable} lookups, handing off to another engine for positions the table
+ * doesn't cover.
+ */
+public final class TableEngine implements MoveEngine {
+
+    private final EndgameTable table;
+    private final MoveEngine fallback;
+
+    public TableEngine(EndgameTable table, MoveEngine fallback) {
+        this.table = table;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public int chooseMove(Board board) {
+        int move = table.bestMove(board);
+        return move != -1 ? move : fallback.chooseMove(board);
+    }
+
+    @Override
+    public String name() {
+        return "table(maxEmpty=" + table.maxEmpty() + ")";
+    }
+}
@@ -0,0 +1,52 @@
+package io.sweers.tictactoe;
+
+import android.app.ActivityManager;
+import android.app.Application;
+import android.content.Context;
+import android.support.v4.app.ActivityManagerCompat;
+
+/**
+ * Sizes the engine's caches for the device, and gives memory back to the system when it asks.
+ */
+public class TicTacToeApplication extends Application {
+
+    // Share of the app's heap the growable caches get, and a smaller one on low RAM devices
+    private static final int CACHE_DIVISOR = 16;
+    private static final int LOW_RAM_CACHE_DIVISOR = 32;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        ActivityManager activityManager = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
+        boolean lowRam = ActivityManagerCompat.isLowRamDevice(activityManager);
+        long heapBytes = activityManager.getMemoryClass() * 1024L * 1024L;
+        EngineCaches.setLimit(heapBytes / (lowRam ? LOW_RAM_CACHE_DIVISOR : CACHE_DIVISOR));
+
+        EngineCaches.register(TicTacToeGame.SCORE_CACHE);
+        EngineCaches.register(SolvedPositionCache.SHARED);
+    }
+
+    /**
+     * The further we are from being safe, the more goes. While we're in the foreground only real
+     * pressure clears everything; once we're in the background, being killed is what's at stake, so
+     * the caches go early.
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            EngineCaches.trim(0);
+        } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW) {
+            EngineCaches.trim(0.25f);
+        } else {
+            // TRIM_MEMORY_RUNNING_MODERATE, or the UI was just hidden
+            EngineCaches.trim(0.5f);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        EngineCaches.trim(0);
+    }
+}
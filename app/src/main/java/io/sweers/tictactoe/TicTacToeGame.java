@@ -1,7 +1,6 @@
 package io.sweers.tictactoe;
 
 import android.support.annotation.IntDef;
-import android.support.v4.util.ArrayMap;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -33,6 +32,9 @@ public final class TicTacToeGame {
     public static final char PLAYER_ONE = 'X';
     public static final char PLAYER_TWO = 'O';
 
+    /** {@link #getLastCpuScore()} when the last CPU move didn't come from minimax. */
+    public static final int NO_SCORE = Integer.MIN_VALUE;
+
     private static final int GRID_SIZE = 9;
 
     private char[] grid = {NONE, NONE, NONE, NONE, NONE, NONE, NONE, NONE, NONE};
@@ -40,40 +42,31 @@ public final class TicTacToeGame {
     private char currentPlayer;
     private boolean isOver = false;
     private int nextCpuMove;
+    private int lastCpuScore = NO_SCORE;
     @GameState private int gameState = CONTINUE;
     private OnGameOverListener onGameOverListener;
-    private final Random random = new Random();
-
-    // Cache of previously calculated scores
-    public static final ArrayMap<String, Integer> SCORE_CACHE = new ArrayMap<>();
-
-    // Mapping of grid indices to their x,y coordinates
-    private static final int[][] COORDINATES_MAPPING = {
-            new int[] {0, 0},
-            new int[] {1, 0},
-            new int[] {2, 0},
-            new int[] {0, 1},
-            new int[] {1, 1},
-            new int[] {2, 1},
-            new int[] {0, 2},
-            new int[] {1, 2},
-            new int[] {2, 2}
-    };
-
-    // Mapping of coordinates to indices
-    private static final int[][] INDEX_MAPPING = {
-            new int[] {0, 1, 2},
-            new int[] {3, 4, 5},
-            new int[] {6, 7, 8}
-    };
-
-    private static final boolean[] DIAGONALS = {
-            true, false, true,
-            false, true, false,
-            true, false, true
-    };
+    private final Random random;
+    private final int[] moveHistory = new int[GRID_SIZE];
+    private int moveCount;
+    private OpeningBook openingBook;
+    // Picked on the main thread, used on the engine's
+    private volatile MoveEngine cpuEngine;
+    private long nodeCount;
+    private long cacheHitCount;
+
+    // Cache of previously calculated scores, sized by EngineCaches
+    public static final ScoreCache SCORE_CACHE = new ScoreCache(EngineCaches.DEFAULT_LIMIT);
 
     public TicTacToeGame() {
+        this(new Random());
+    }
+
+    /**
+     * @param random drives every random choice the game makes (who goes first, the CPU's opening
+     * move and how it breaks ties), so a seeded one makes games reproducible
+     */
+    public TicTacToeGame(Random random) {
+        this.random = random;
         boolean playerOneGoesFirst = random.nextBoolean();
         currentPlayer = playerOneGoesFirst ? PLAYER_ONE : PLAYER_TWO;
     }
@@ -86,12 +79,28 @@ public final class TicTacToeGame {
         this.onGameOverListener = listener;
     }
 
+    public void setOpeningBook(OpeningBook book) {
+        this.openingBook = book;
+    }
+
+    /**
+     * Swaps out the opening book and built in minimax for some other engine, e.g. a weaker one for
+     * an easier game. Pass null to go back to the book and minimax.
+     */
+    public void setCpuEngine(MoveEngine engine) {
+        this.cpuEngine = engine;
+    }
+
     public void makeMove(int position) {
         grid[position] = currentPlayer;
+        moveHistory[moveCount++] = position;
 
         currentPlayer = currentPlayer == PLAYER_ONE ? PLAYER_TWO : PLAYER_ONE;
 
         if (checkForWinner(position) != CONTINUE) {
+            if (openingBook != null) {
+                openingBook.recordGame(toBoard());
+            }
             endGame();
         }
     }
@@ -100,68 +109,23 @@ public final class TicTacToeGame {
         grid[position] = player;
     }
 
+    /**
+     * Checks whether the piece at newIndex finished a line, using the same line masks as
+     * {@link PackedBoard} (and so {@link UltimateBoard}'s sub-boards).
+     */
     @GameState
     private int checkForWinner(int newIndex) {
-        boolean winnerFound = true;
-        int[] coordinates = COORDINATES_MAPPING[newIndex];
         char player = grid[newIndex];
-        int x = coordinates[0];
-        int y = coordinates[1];
-
-        // Check columns
-        for (int i = 0; i < 3; ++i) {
-            int index = INDEX_MAPPING[i][x];
-            if (grid[index] != player) {
-                winnerFound = false;
-                break;
-            }
-            winningIndices[i] = index;
-        }
-
-        // Check rows
-        if (!winnerFound) {
-            winnerFound = true;
-            for (int i = 0; i < 3; ++i) {
-                int index = INDEX_MAPPING[y][i];
-                if (grid[index] != player) {
-                    winnerFound = false;
-                    break;
+        int line = PackedBoard.winningLine(PackedBoard.mask(PackedBoard.pack(grid, player), player));
+        boolean winnerFound = line != 0;
+        if (winnerFound) {
+            for (int i = 0, found = 0; i < GRID_SIZE; ++i) {
+                if ((line & (1 << i)) != 0) {
+                    winningIndices[found++] = i;
                 }
-                winningIndices[i] = index;
             }
         }
 
-        // Check diagonals
-        if (!winnerFound && DIAGONALS[newIndex]) {
-            winnerFound = true;
-            boolean checkBoth = newIndex == 4;
-            if (checkBoth || newIndex == 0 || newIndex == 8) {
-                // Left to right
-                for (int i = 0; i < 3; ++i) {
-                    int index = INDEX_MAPPING[i][i];
-                    if (grid[index] != player) {
-                        winnerFound = false;
-                        break;
-                    }
-                    winningIndices[i] = index;
-                }
-            } else {
-                winnerFound = false;
-            }
-            if (!winnerFound && (checkBoth || newIndex == 2 || newIndex == 6)) {
-                winnerFound = true;
-                // Right to left
-                for (int i = 2; i < 7; i += 2) {
-                    if (grid[i] != player) {
-                        winnerFound = false;
-                        break;
-                    }
-                    winningIndices[(i / 2) - 1] = i;
-                }
-            }
-        }
-
-
         @GameState int result = TIE;
         if (!winnerFound) {
             // No winner yet, continue if there are any open spaces left
@@ -192,11 +156,20 @@ public final class TicTacToeGame {
                 .doOnNext(new Action1<Object>() {
                     @Override
                     public void call(Object o) {
-                        if (getAvailableStates().size() == grid.length) {
+                        lastCpuScore = NO_SCORE;
+                        MoveEngine engine = cpuEngine;
+                        if (engine != null) {
+                            nextCpuMove = engine.chooseMove(toBoard());
+                            return;
+                        }
+                        int bookMove = openingBook == null ? -1 : openingBook.chooseMove(toBoard(), random);
+                        if (bookMove != -1 && grid[bookMove] == NONE) {
+                            nextCpuMove = bookMove;
+                        } else if (getAvailableStates().size() == grid.length) {
                             // minimax will spend a lot of time calculating every permutation of this, but always ends on 0. Let's spice it up
-                            nextCpuMove = new Random().nextInt(grid.length);
+                            nextCpuMove = random.nextInt(grid.length);
                         } else {
-                            minimax(0, PLAYER_TWO, -1);
+                            lastCpuScore = minimax(0, PLAYER_TWO, -1);
                         }
                     }
                 });
@@ -211,10 +184,15 @@ public final class TicTacToeGame {
         for (int i = 0; i < GRID_SIZE; ++i) {
             grid[i] = NONE;
         }
-        boolean playerOneGoesFirst = new Random().nextBoolean();
+        moveCount = 0;
+        boolean playerOneGoesFirst = random.nextBoolean();
         currentPlayer = playerOneGoesFirst ? PLAYER_ONE : PLAYER_TWO;
     }
 
+    public static void clearScoreCache() {
+        SCORE_CACHE.clear();
+    }
+
     @Override
     public String toString() {
         return "TicTacToeGame{currentPlayer="
@@ -243,6 +221,27 @@ public final class TicTacToeGame {
         this.grid = gridState;
     }
 
+    public int[] getMoveHistory() {
+        return Arrays.copyOf(moveHistory, moveCount);
+    }
+
+    public void setMoveHistory(int[] moves) {
+        System.arraycopy(moves, 0, moveHistory, 0, moves.length);
+        moveCount = moves.length;
+    }
+
+    /**
+     * Replays this game's moves onto a {@link Board}, so the move history comes along with it.
+     */
+    private Board toBoard() {
+        Board board = new Board(3, 3);
+        board.setToMove(Board.fromChar(moveCount == 0 ? currentPlayer : grid[moveHistory[0]]));
+        for (int i = 0; i < moveCount; i++) {
+            board.play(moveHistory[i]);
+        }
+        return board;
+    }
+
     public int[] getWinningIndices() {
         return this.winningIndices;
     }
@@ -264,6 +263,32 @@ public final class TicTacToeGame {
         return nextCpuMove;
     }
 
+    /**
+     * @return what minimax thought of the last CPU move, from PLAYER_TWO's side, or {@link #NO_SCORE}
+     */
+    public int getLastCpuScore() {
+        return lastCpuScore;
+    }
+
+    /**
+     * @return how many positions minimax has visited since the last {@link #resetCounters()}
+     */
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return how many of those were answered by {@link #SCORE_CACHE}
+     */
+    public long getCacheHitCount() {
+        return cacheHitCount;
+    }
+
+    public void resetCounters() {
+        nodeCount = 0;
+        cacheHitCount = 0;
+    }
+
     public void setIsOver(boolean isOver) {
         this.isOver = isOver;
     }
@@ -293,9 +318,13 @@ public final class TicTacToeGame {
      *         or minimized score if human (PLAYER_ONE)
      */
     private int minimax(int depth, char player, int newIndex) {
+        nodeCount++;
         String stateKey = Arrays.toString(grid) + player + depth;
-        if (SCORE_CACHE.containsKey(stateKey)) {
-            return SCORE_CACHE.get(stateKey);
+        // The top level has to actually pick a move, so it can't be answered from the cache
+        Integer cached = depth != 0 ? SCORE_CACHE.get(stateKey) : null;
+        if (cached != null) {
+            cacheHitCount++;
+            return cached;
         }
         List<Integer> pointsAvailable = getAvailableStates();
         if (depth != 0) {
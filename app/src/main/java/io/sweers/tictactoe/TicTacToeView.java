@@ -1,135 +1,221 @@
 package io.sweers.tictactoe;
 
+import android.animation.ValueAnimator;
 import android.annotation.TargetApi;
 import android.content.Context;
-import android.content.res.ColorStateList;
+import android.content.res.Resources;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.PorterDuff;
-import android.graphics.drawable.Drawable;
+import android.graphics.Rect;
 import android.os.Build;
-import android.support.annotation.ColorRes;
-import android.support.annotation.DrawableRes;
+import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.v4.view.ViewCompat;
+import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
+import android.support.v4.widget.ExploreByTouchHelper;
 import android.util.AttributeSet;
-import android.widget.FrameLayout;
-import android.widget.ImageView;
+import android.view.KeyEvent;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.accessibility.AccessibilityEvent;
+import android.view.animation.AnimationUtils;
 
+import java.util.Arrays;
 import java.util.List;
 
-import butterknife.Bind;
-import butterknife.ButterKnife;
-import butterknife.OnClick;
-
-import static android.view.View.MeasureSpec.EXACTLY;
 import static android.view.View.MeasureSpec.getSize;
-import static android.view.View.MeasureSpec.makeMeasureSpec;
+import static io.sweers.tictactoe.TicTacToeGame.NONE;
 import static io.sweers.tictactoe.TicTacToeGame.PLAYER_ONE;
-import static io.sweers.tictactoe.TicTacToeGame.PLAYER_TWO;
 
 /**
- * A view representing a tic tac toe grid
+ * A view representing a tic tac toe grid.
+ *
+ * Tiles are drawn directly rather than being child views, so that marks appearing, tint changes
+ * and the winning line can all be driven off of a single animator that only invalidates the cells
+ * that are actually changing.
+ *
+ * In nested mode the view shows a 9x9 grid split into 3x3 regions for ultimate tic tac toe, with
+ * heavier lines between regions, a highlight on the region(s) in play and a large mark over any
+ * region that's been won. Tile indices are always row major over the whole grid.
+ *
+ * Empty tiles can also be tinted with a hint of how good a move there would be, from green for a
+ * winning move through amber for a draw to red for a losing one.
+ *
+ * Since there are no child views to lean on, each tile is exposed to accessibility services as a
+ * virtual view, and the D-pad moves a focused tile around the grid.
  */
-public final class TicTacToeView extends FrameLayout {
+public final class TicTacToeView extends View {
 
     public interface OnTileClickListener {
         void onTileClick(int position);
     }
 
-    private static final ButterKnife.Action<ImageView> DISABLE = new ButterKnife.Action<ImageView>() {
-        @Override
-        public void apply(ImageView tile, int index) {
-            tile.setEnabled(false);
-            if (tile.getDrawable() != null) {
-                safeTint(tile, R.color.disabled);
-            }
-        }
-    };
-    private static final ButterKnife.Action<ImageView> ENABLE_BLANKS = new ButterKnife.Action<ImageView>() {
-        @Override
-        public void apply(ImageView tile, int index) {
-            boolean hasDrawable = tile.getDrawable() != null;
-            tile.setEnabled(!hasDrawable);
-            if (hasDrawable) {
-                safeTint(tile, R.color.primary);
-            }
-        }
-    };
-    private static final ButterKnife.Action<ImageView> ENABLE_ALL = new ButterKnife.Action<ImageView>() {
-        @Override
-        public void apply(ImageView tile, int index) {
-            tile.setEnabled(true);
-            safeTint(tile, R.color.primary);
-        }
-    };
-    private static final ButterKnife.Action<ImageView> RESET_IMAGE = new ButterKnife.Action<ImageView>() {
-        @Override
-        public void apply(ImageView tile, int index) {
-            tile.setImageDrawable(null);
-        }
-    };
-
-    private final Paint paint = new Paint();
-
-    @Bind({
-            R.id.zero,
-            R.id.one,
-            R.id.two,
-            R.id.three,
-            R.id.four,
-            R.id.five,
-            R.id.six,
-            R.id.seven,
-            R.id.eight,
-    })
-    protected List<ImageView> tiles;
+    private static final long ANIMATION_DURATION = 200;
+    private static final long NOT_ANIMATING = -1;
+
+    private final Paint gridPaint = new Paint();
+    private final Paint markPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint linePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint pressedPaint = new Paint();
+    private final Paint focusedPaint = new Paint();
+    private final Paint regionPaint = new Paint();
+    private final Paint activeRegionPaint = new Paint();
+    private final Paint hintPaint = new Paint();
+    private final ValueAnimator animator = ValueAnimator.ofFloat(0f, 1f);
+
+    private int gridSize = 3;
+    private char[] cells;
+    private long[] markStarts;
+    private int[] fromColors;
+    private int[] toColors;
+    private long[] colorStarts;
+    private float[] hints;
+    @Nullable private int[] winningIndices;
+    private long lineStart = NOT_ANIMATING;
+    private boolean gameOver;
+    private int pressedCell = -1;
+    private int focusedCell = -1;
+    private boolean nested;
+    private int activeRegion = -1;
+    private final char[] regionWinners = new char[9];
+
+    private int primaryColor;
+    private int disabledColor;
+    private int accentColor;
+    private int hintWinColor;
+    private int hintDrawColor;
+    private int hintLossColor;
+    private int baseTilePadding;
+    private int baseStrokeWidth;
+    private int tilePadding;
+    private int cellSize;
 
     private char nextPlayer;
     private OnTileClickListener tileClickListener;
+    private final TileAccessibilityHelper accessibilityHelper = new TileAccessibilityHelper();
 
     public TicTacToeView(Context context) {
         super(context);
+        init();
     }
 
     public TicTacToeView(Context context, AttributeSet attrs) {
         super(context, attrs);
+        init();
     }
 
     public TicTacToeView(Context context, AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
+        init();
     }
 
     @TargetApi(Build.VERSION_CODES.LOLLIPOP)
     public TicTacToeView(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes) {
         super(context, attrs, defStyleAttr, defStyleRes);
+        init();
+    }
+
+    private void init() {
+        Resources res = getResources();
+        primaryColor = res.getColor(R.color.primary);
+        disabledColor = res.getColor(R.color.disabled);
+        accentColor = res.getColor(R.color.accent);
+        hintWinColor = res.getColor(R.color.hint_win);
+        hintDrawColor = res.getColor(R.color.hint_draw);
+        hintLossColor = res.getColor(R.color.hint_loss);
+        baseTilePadding = res.getDimensionPixelSize(R.dimen.tile_padding);
+        baseStrokeWidth = res.getDimensionPixelSize(R.dimen.stroke_width);
+
+        gridPaint.setColor(Color.BLACK);
+        markPaint.setStyle(Paint.Style.STROKE);
+        linePaint.setColor(accentColor);
+        linePaint.setStrokeWidth(baseStrokeWidth);
+        linePaint.setStrokeCap(Paint.Cap.ROUND);
+        pressedPaint.setColor(res.getColor(R.color.pressed));
+        focusedPaint.setColor(res.getColor(R.color.focused));
+        regionPaint.setColor(Color.BLACK);
+        regionPaint.setStrokeWidth(baseStrokeWidth);
+        activeRegionPaint.setColor(res.getColor(R.color.active_region));
+
+        Arrays.fill(regionWinners, NONE);
+        sizeCells();
+        Arrays.fill(markStarts, NOT_ANIMATING);
+        Arrays.fill(colorStarts, NOT_ANIMATING);
+        Arrays.fill(toColors, primaryColor);
+        Arrays.fill(hints, Float.NaN);
+
+        setClickable(true);
+        setFocusable(true);
+        ViewCompat.setAccessibilityDelegate(this, accessibilityHelper);
+        animator.setDuration(ANIMATION_DURATION);
+        animator.setRepeatCount(ValueAnimator.INFINITE);
+        animator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                onAnimationFrame();
+            }
+        });
     }
 
     /**
-     * Utility function for tinting. I opted against using the support library's tint backport
-     * because it exhibits weird race conditions on pre-lollipop when you need it to happen
-     * synchronously.
+     * Switches to an N x N grid, clearing the board.
      */
-    private static void safeTint(ImageView imageView, @ColorRes int color) {
-        int resolvedColor = imageView.getResources().getColor(color);
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            imageView.setImageTintList(ColorStateList.valueOf(resolvedColor));
-        } else {
-            Drawable drawable = imageView.getDrawable();
-            if (drawable != null) {
-                drawable.setColorFilter(resolvedColor, PorterDuff.Mode.SRC_IN);
-            }
+    public void setGridSize(int gridSize) {
+        this.gridSize = gridSize;
+        pressedCell = -1;
+        focusedCell = -1;
+        sizeCells();
+        reset();
+        requestLayout();
+    }
+
+    private void sizeCells() {
+        int cellCount = gridSize * gridSize;
+        cells = new char[cellCount];
+        markStarts = new long[cellCount];
+        fromColors = new int[cellCount];
+        toColors = new int[cellCount];
+        colorStarts = new long[cellCount];
+        hints = new float[cellCount];
+
+        // Keep strokes and padding in proportion to the tiles
+        int strokeWidth = Math.max(1, baseStrokeWidth * 3 / gridSize);
+        gridPaint.setStrokeWidth(strokeWidth);
+        markPaint.setStrokeWidth(strokeWidth);
+        tilePadding = baseTilePadding * 3 / gridSize;
+    }
+
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    /**
+     * Toggles the 9x9 ultimate layout.
+     */
+    public void setNested(boolean nested) {
+        this.nested = nested;
+        Arrays.fill(regionWinners, NONE);
+        activeRegion = -1;
+        setGridSize(nested ? 9 : 3);
+    }
+
+    /**
+     * Highlights the region the next move has to be played in, or every open region if -1.
+     */
+    public void setActiveRegion(int region) {
+        if (activeRegion != region) {
+            activeRegion = region;
+            invalidate();
         }
     }
 
-    @Override
-    protected void onFinishInflate() {
-        super.onFinishInflate();
-        setWillNotDraw(false);
-        ButterKnife.bind(this);
-        paint.setColor(Color.BLACK);
-        paint.setStrokeWidth(getResources().getDimensionPixelSize(R.dimen.stroke_width));
+    public void setRegionWinner(int region, char player) {
+        if (regionWinners[region] != player) {
+            regionWinners[region] = player;
+            invalidate();
+        }
     }
 
     @Override
@@ -141,67 +227,270 @@ public final class TicTacToeView extends FrameLayout {
         int height = originalHeight - getPaddingTop() - getPaddingBottom();
 
         int limitingFactor = Math.min(width, height);
-
-        int tileSize = limitingFactor / 3;
-
-        for (ImageView tile : tiles) {
-            tile.measure(makeMeasureSpec(tileSize, EXACTLY), makeMeasureSpec(tileSize, EXACTLY));
-        }
+        cellSize = limitingFactor / gridSize;
 
         int size = limitingFactor == width ? originalWidth : originalHeight;
         setMeasuredDimension(size, size);
     }
 
     @Override
-    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
-        int currentLeft = getPaddingLeft();
-        int currentTop = getPaddingTop();
-
-        for (int i = 0; i < tiles.size(); i++) {
-            ImageView tile = tiles.get(i);
-            int measuredWidth = tile.getMeasuredWidth();
-            int measuredHeight = tile.getMeasuredHeight();
-            tile.layout(currentLeft, currentTop, currentLeft + measuredWidth, currentTop + measuredHeight);
-            currentLeft += measuredWidth;
-
-            if ((i + 1) % 3 == 0) {
-                // Move to the next row
-                currentLeft = getPaddingLeft();
-                currentTop += measuredHeight;
-            }
-        }
+    protected void onDetachedFromWindow() {
+        animator.cancel();
+        super.onDetachedFromWindow();
     }
 
     @Override
     protected void onDraw(@NonNull Canvas canvas) {
         super.onDraw(canvas);
+        long now = AnimationUtils.currentAnimationTimeMillis();
+        int left = getPaddingLeft();
+        int top = getPaddingTop();
+        int boardSize = cellSize * gridSize;
+
+        if (nested && !gameOver) {
+            int regionSize = cellSize * 3;
+            for (int region = 0; region < 9; region++) {
+                if (isRegionActive(region)) {
+                    int regionLeft = left + (region % 3) * regionSize;
+                    int regionTop = top + (region / 3) * regionSize;
+                    canvas.drawRect(regionLeft, regionTop, regionLeft + regionSize, regionTop + regionSize, activeRegionPaint);
+                }
+            }
+        }
 
-        int size = Math.min(getWidth(), getHeight());
-        int increment = size / 3;
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] == NONE && !Float.isNaN(hints[i])) {
+                float value = hints[i];
+                hintPaint.setColor(value >= 0
+                        ? blend(hintDrawColor, hintWinColor, value)
+                        : blend(hintDrawColor, hintLossColor, -value));
+                canvas.drawRect(cellLeft(i), cellTop(i), cellLeft(i) + cellSize, cellTop(i) + cellSize, hintPaint);
+            }
+        }
 
-        // Draw horizontal lines
-        int y = increment;
-        canvas.drawLine(0, y, size , y, paint);
-        y += increment;
-        canvas.drawLine(0, y, size, y, paint);
+        // Grid lines, with heavier ones between regions when nested
+        for (int i = 1; i < gridSize; i++) {
+            int offset = i * cellSize;
+            Paint paint = nested && i % 3 == 0 ? regionPaint : gridPaint;
+            canvas.drawLine(left, top + offset, left + boardSize, top + offset, paint);
+            canvas.drawLine(left + offset, top, left + offset, top + boardSize, paint);
+        }
+
+        if (focusedCell != -1 && isFocused()) {
+            canvas.drawRect(cellLeft(focusedCell), cellTop(focusedCell),
+                    cellLeft(focusedCell) + cellSize, cellTop(focusedCell) + cellSize, focusedPaint);
+        }
+        if (pressedCell != -1) {
+            canvas.drawRect(cellLeft(pressedCell), cellTop(pressedCell),
+                    cellLeft(pressedCell) + cellSize, cellTop(pressedCell) + cellSize, pressedPaint);
+        }
+
+        // Marks
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] != NONE) {
+                drawMark(canvas, i, now);
+            }
+        }
+
+        if (nested) {
+            drawRegionWinners(canvas);
+        }
 
-        // Draw vertical lines
-        int x = increment;
-        canvas.drawLine(x, 0, x, size, paint);
-        x += increment;
-        canvas.drawLine(x, 0, x, size, paint);
+        // Winning line, swept from one end to the other
+        if (winningIndices != null && lineStart != NOT_ANIMATING) {
+            float progress = progress(lineStart, now);
+            int first = winningIndices[0];
+            int last = winningIndices[winningIndices.length - 1];
+            float startX = cellLeft(first) + cellSize / 2f;
+            float startY = cellTop(first) + cellSize / 2f;
+            float endX = cellLeft(last) + cellSize / 2f;
+            float endY = cellTop(last) + cellSize / 2f;
+            canvas.drawLine(startX, startY,
+                    startX + (endX - startX) * progress,
+                    startY + (endY - startY) * progress,
+                    linePaint);
+        }
+    }
+
+    private void drawMark(Canvas canvas, int index, long now) {
+        float scale = markStarts[index] == NOT_ANIMATING ? 1f : progress(markStarts[index], now);
+        markPaint.setColor(currentColor(index, now));
+
+        float extent = (cellSize - tilePadding * 2) / 2f * scale;
+        float centerX = cellLeft(index) + cellSize / 2f;
+        float centerY = cellTop(index) + cellSize / 2f;
+        if (cells[index] == PLAYER_ONE) {
+            // Two diagonal strokes the width of the tile, like the old X drawable
+            float arm = extent * 0.70710677f;
+            canvas.drawLine(centerX - arm, centerY - arm, centerX + arm, centerY + arm, markPaint);
+            canvas.drawLine(centerX - arm, centerY + arm, centerX + arm, centerY - arm, markPaint);
+        } else {
+            // Ring with an inner radius of a third of the tile, like the old circle drawable
+            float radius = extent * 2f / 3f + markPaint.getStrokeWidth() / 2f * scale;
+            canvas.drawCircle(centerX, centerY, radius, markPaint);
+        }
+    }
+
+    private void drawRegionWinners(Canvas canvas) {
+        int regionSize = cellSize * 3;
+        markPaint.setStrokeWidth(baseStrokeWidth);
+        markPaint.setColor(accentColor);
+        for (int region = 0; region < 9; region++) {
+            char winner = regionWinners[region];
+            if (winner == NONE) {
+                continue;
+            }
+            float centerX = getPaddingLeft() + (region % 3) * regionSize + regionSize / 2f;
+            float centerY = getPaddingTop() + (region / 3) * regionSize + regionSize / 2f;
+            float extent = regionSize / 2f - baseTilePadding;
+            if (winner == PLAYER_ONE) {
+                float arm = extent * 0.70710677f;
+                canvas.drawLine(centerX - arm, centerY - arm, centerX + arm, centerY + arm, markPaint);
+                canvas.drawLine(centerX - arm, centerY + arm, centerX + arm, centerY - arm, markPaint);
+            } else {
+                canvas.drawCircle(centerX, centerY, extent * 2f / 3f, markPaint);
+            }
+        }
+        markPaint.setStrokeWidth(gridPaint.getStrokeWidth());
+    }
+
+    @Override
+    public boolean onTouchEvent(@NonNull MotionEvent event) {
+        if (!isEnabled() || tileClickListener == null) {
+            return false;
+        }
+        int cell = cellAt(event.getX(), event.getY());
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                setPressedCell(isPlayable(cell) ? cell : -1);
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                if (cell != pressedCell) {
+                    setPressedCell(-1);
+                }
+                return true;
+            case MotionEvent.ACTION_UP:
+                int clicked = pressedCell;
+                setPressedCell(-1);
+                if (clicked != -1 && clicked == cell) {
+                    performClick();
+                    onTileClicked(clicked);
+                }
+                return true;
+            case MotionEvent.ACTION_CANCEL:
+                setPressedCell(-1);
+                return true;
+            default:
+                return super.onTouchEvent(event);
+        }
+    }
+
+    @Override
+    protected boolean dispatchHoverEvent(@NonNull MotionEvent event) {
+        return accessibilityHelper.dispatchHoverEvent(event) || super.dispatchHoverEvent(event);
+    }
+
+    @Override
+    public boolean onKeyDown(int keyCode, @NonNull KeyEvent event) {
+        switch (keyCode) {
+            case KeyEvent.KEYCODE_DPAD_UP:
+                return moveFocusedCell(-1, 0) || super.onKeyDown(keyCode, event);
+            case KeyEvent.KEYCODE_DPAD_DOWN:
+                return moveFocusedCell(1, 0) || super.onKeyDown(keyCode, event);
+            case KeyEvent.KEYCODE_DPAD_LEFT:
+                return moveFocusedCell(0, -1) || super.onKeyDown(keyCode, event);
+            case KeyEvent.KEYCODE_DPAD_RIGHT:
+                return moveFocusedCell(0, 1) || super.onKeyDown(keyCode, event);
+            case KeyEvent.KEYCODE_DPAD_CENTER:
+            case KeyEvent.KEYCODE_ENTER:
+                if (canClickTile(focusedCell)) {
+                    setPressedCell(focusedCell);
+                }
+                return true;
+            default:
+                return super.onKeyDown(keyCode, event);
+        }
+    }
+
+    @Override
+    public boolean onKeyUp(int keyCode, @NonNull KeyEvent event) {
+        switch (keyCode) {
+            case KeyEvent.KEYCODE_DPAD_CENTER:
+            case KeyEvent.KEYCODE_ENTER:
+                int clicked = pressedCell;
+                setPressedCell(-1);
+                if (clicked != -1 && clicked == focusedCell && canClickTile(clicked)) {
+                    performClick();
+                    onTileClicked(clicked);
+                }
+                return true;
+            default:
+                return super.onKeyUp(keyCode, event);
+        }
+    }
+
+    @Override
+    protected void onFocusChanged(boolean gainFocus, int direction, @Nullable Rect previouslyFocusedRect) {
+        super.onFocusChanged(gainFocus, direction, previouslyFocusedRect);
+        if (gainFocus && focusedCell == -1) {
+            // Start in the middle, which is one step from everywhere on a 3x3 board
+            focusedCell = cells.length / 2;
+        } else if (!gainFocus) {
+            setPressedCell(-1);
+        }
+        if (focusedCell != -1) {
+            invalidateCell(focusedCell);
+        }
+    }
+
+    /**
+     * @return false if that would go off the edge of the grid, so focus can leave the view instead
+     */
+    private boolean moveFocusedCell(int rows, int columns) {
+        if (focusedCell == -1) {
+            return false;
+        }
+        int row = focusedCell / gridSize + rows;
+        int column = focusedCell % gridSize + columns;
+        if (row < 0 || row >= gridSize || column < 0 || column >= gridSize) {
+            return false;
+        }
+        setPressedCell(-1);
+        invalidateCell(focusedCell);
+        focusedCell = row * gridSize + column;
+        invalidateCell(focusedCell);
+        accessibilityHelper.sendEventForVirtualView(focusedCell, AccessibilityEvent.TYPE_VIEW_FOCUSED);
+        return true;
+    }
+
+    @Override
+    public boolean performClick() {
+        return super.performClick();
+    }
+
+    private boolean canClickTile(int index) {
+        return isEnabled() && tileClickListener != null && isPlayable(index);
+    }
+
+    private void onTileClicked(int index) {
+        if (tileClickListener != null) {
+            setTile(index, nextPlayer);
+            tileClickListener.onTileClick(index);
+            accessibilityHelper.sendEventForVirtualView(index, AccessibilityEvent.TYPE_VIEW_CLICKED);
+        }
     }
 
     @Override
     public void setEnabled(boolean enabled) {
         super.setEnabled(enabled);
-
-        // We want to disable tile clicks when disabled
-        if (enabled) {
-            ButterKnife.apply(tiles, ENABLE_BLANKS);
-        } else {
-            ButterKnife.apply(tiles, DISABLE);
+        if (!enabled) {
+            setPressedCell(-1);
+        }
+        if (!gameOver) {
+            fadeMarksTo(enabled ? primaryColor : disabledColor);
         }
+        // Whether tiles can be clicked just changed
+        accessibilityHelper.invalidateRoot();
     }
 
     public void setOnTileClickedListener(OnTileClickListener listener) {
@@ -212,79 +501,300 @@ public final class TicTacToeView extends FrameLayout {
         this.nextPlayer = nextPlayer;
     }
 
-    @OnClick({
-            R.id.zero,
-            R.id.one,
-            R.id.two,
-            R.id.three,
-            R.id.four,
-            R.id.five,
-            R.id.six,
-            R.id.seven,
-            R.id.eight,
-    })
-    protected void onTileClicked(final ImageView tile) {
-        if (tileClickListener != null) {
-            setTile(tile, nextPlayer);
+    public void setTile(int index, char player) {
+        cells[index] = player;
+        if (player != NONE) {
+            markStarts[index] = AnimationUtils.currentAnimationTimeMillis();
+            colorStarts[index] = NOT_ANIMATING;
+            toColors[index] = isEnabled() && !gameOver ? primaryColor : disabledColor;
+            startAnimating();
+        }
+        invalidateCell(index);
+        accessibilityHelper.invalidateVirtualView(index);
+    }
+
+    /**
+     * Sets a tile without animating it, for jumping around a replay. Only that tile gets redrawn.
+     */
+    public void showTile(int index, char player) {
+        cells[index] = player;
+        markStarts[index] = NOT_ANIMATING;
+        colorStarts[index] = NOT_ANIMATING;
+        toColors[index] = isEnabled() && !gameOver ? primaryColor : disabledColor;
+        invalidateCell(index);
+        accessibilityHelper.invalidateVirtualView(index);
+    }
+
+    /**
+     * Tints an empty tile by how good a move there is.
+     *
+     * @param value from 1 (winning) through 0 (drawing) to -1 (losing)
+     */
+    public void setHint(int index, float value) {
+        hints[index] = value;
+        invalidateCell(index);
+    }
+
+    public void clearHints() {
+        for (int i = 0; i < hints.length; i++) {
+            if (!Float.isNaN(hints[i])) {
+                hints[i] = Float.NaN;
+                invalidateCell(i);
+            }
+        }
+    }
+
+    public void endGame(@Nullable final int[] winningIndices) {
+        gameOver = true;
+        setPressedCell(-1);
+        this.winningIndices = winningIndices;
+        long now = AnimationUtils.currentAnimationTimeMillis();
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] != NONE) {
+                fadeTo(i, isWinningIndex(i) ? accentColor : disabledColor, now);
+            }
+        }
+        if (winningIndices != null) {
+            lineStart = now;
+        }
+        startAnimating();
+        accessibilityHelper.invalidateRoot();
+    }
+
+    public void reset() {
+        gameOver = false;
+        winningIndices = null;
+        lineStart = NOT_ANIMATING;
+        Arrays.fill(cells, NONE);
+        Arrays.fill(markStarts, NOT_ANIMATING);
+        Arrays.fill(colorStarts, NOT_ANIMATING);
+        Arrays.fill(toColors, primaryColor);
+        Arrays.fill(hints, Float.NaN);
+        setEnabled(true);
+        invalidate();
+    }
 
-            // Give the tile time to settle before moving forward, to make sure tints can properly apply
-            post(new Runnable() {
-                @Override
-                public void run() {
-                    tileClickListener.onTileClick(tiles.indexOf(tile));
+    public void restoreBoard(char[] gridState) {
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = gridState[i];
+            markStarts[i] = NOT_ANIMATING;
+            colorStarts[i] = NOT_ANIMATING;
+            toColors[i] = isEnabled() && !gameOver ? primaryColor : disabledColor;
+        }
+        invalidate();
+        accessibilityHelper.invalidateRoot();
+    }
+
+    private boolean isWinningIndex(int index) {
+        if (winningIndices != null) {
+            for (int winningIndex : winningIndices) {
+                if (winningIndex == index) {
+                    return true;
                 }
-            });
+            }
         }
+        return false;
     }
 
-    public void setTile(int index, char player) {
-        setTile(tiles.get(index), player);
+    private void fadeMarksTo(int color) {
+        long now = AnimationUtils.currentAnimationTimeMillis();
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] != NONE) {
+                fadeTo(i, color, now);
+            }
+        }
+        startAnimating();
     }
 
-    private void setTile(ImageView tile, char player) {
-        @DrawableRes int resId;
-        if (player == PLAYER_ONE) {
-            resId = R.drawable.x;
-        } else if (player == PLAYER_TWO) {
-            resId = R.drawable.circle;
-        } else {
-            resId = -1;
+    private void fadeTo(int index, int color, long now) {
+        if (toColors[index] == color) {
+            return;
         }
+        fromColors[index] = currentColor(index, now);
+        toColors[index] = color;
+        colorStarts[index] = now;
+    }
 
-        if (resId != -1) {
-            tile.setEnabled(false);
-            tile.setImageResource(resId);
-        } else {
-            tile.setEnabled(true);
-            tile.setImageDrawable(null);
+    private int currentColor(int index, long now) {
+        if (colorStarts[index] == NOT_ANIMATING) {
+            return toColors[index];
         }
+        return blend(fromColors[index], toColors[index], progress(colorStarts[index], now));
     }
 
-    public void endGame(@Nullable final int[] winningIndices) {
-        ButterKnife.apply(tiles, DISABLE);
-        if (winningIndices != null) {
-            boolean[] allIndices = {false, false, false, false, false, false, false, false, false};
-            for (int i : winningIndices) {
-                allIndices[i] = true;
+    /**
+     * Invalidates just the cells (and line) that are mid-animation, and stops the animator once
+     * everything has settled.
+     */
+    private void onAnimationFrame() {
+        long now = AnimationUtils.currentAnimationTimeMillis();
+        boolean active = false;
+        for (int i = 0; i < cells.length; i++) {
+            boolean animating = false;
+            if (markStarts[i] != NOT_ANIMATING) {
+                if (now - markStarts[i] >= ANIMATION_DURATION) {
+                    markStarts[i] = NOT_ANIMATING;
+                }
+                animating = true;
+            }
+            if (colorStarts[i] != NOT_ANIMATING) {
+                if (now - colorStarts[i] >= ANIMATION_DURATION) {
+                    colorStarts[i] = NOT_ANIMATING;
+                }
+                animating = true;
             }
-            for (int i = 0; i < allIndices.length; i++) {
-                ImageView tile = tiles.get(i);
-                safeTint(tile, allIndices[i] ? R.color.accent : R.color.disabled);
-                tile.setEnabled(false);
+            if (animating) {
+                // One last invalidation after finishing, so the final state gets drawn
+                invalidateCell(i);
+                active |= markStarts[i] != NOT_ANIMATING || colorStarts[i] != NOT_ANIMATING;
             }
         }
+        if (winningIndices != null && lineStart != NOT_ANIMATING) {
+            int first = winningIndices[0];
+            int last = winningIndices[winningIndices.length - 1];
+            invalidate(Math.min(cellLeft(first), cellLeft(last)),
+                    Math.min(cellTop(first), cellTop(last)),
+                    Math.max(cellLeft(first), cellLeft(last)) + cellSize,
+                    Math.max(cellTop(first), cellTop(last)) + cellSize);
+            active |= now - lineStart < ANIMATION_DURATION;
+        }
+        if (!active) {
+            animator.cancel();
+        }
     }
 
-    public void reset() {
-        // https://github.com/JakeWharton/butterknife/issues/332
-        ButterKnife.apply(tiles, ENABLE_ALL);
-        ButterKnife.apply(tiles, RESET_IMAGE);
+    private void startAnimating() {
+        if (!animator.isStarted()) {
+            animator.start();
+        }
     }
 
-    public void restoreBoard(char[] gridState) {
-        for (int i = 0; i < tiles.size(); i++) {
-            ImageView tile = tiles.get(i);
-            setTile(tile, gridState[i]);
+    private void setPressedCell(int cell) {
+        if (cell == pressedCell) {
+            return;
+        }
+        if (pressedCell != -1) {
+            invalidateCell(pressedCell);
+        }
+        pressedCell = cell;
+        if (cell != -1) {
+            invalidateCell(cell);
+        }
+    }
+
+    private void invalidateCell(int index) {
+        int left = cellLeft(index);
+        int top = cellTop(index);
+        invalidate(left, top, left + cellSize, top + cellSize);
+    }
+
+    /**
+     * @return true if the cell is empty and, when nested, in a region that can be played in
+     */
+    private boolean isPlayable(int cell) {
+        if (cell == -1 || cells[cell] != NONE) {
+            return false;
+        }
+        return !nested || isRegionActive((cell / 27) * 3 + (cell % 9) / 3);
+    }
+
+    private boolean isRegionActive(int region) {
+        return (activeRegion == -1 && regionWinners[region] == NONE) || activeRegion == region;
+    }
+
+    private int cellAt(float x, float y) {
+        if (cellSize == 0) {
+            return -1;
+        }
+        int column = (int) ((x - getPaddingLeft()) / cellSize);
+        int row = (int) ((y - getPaddingTop()) / cellSize);
+        if (x < getPaddingLeft() || y < getPaddingTop() || column >= gridSize || row >= gridSize) {
+            return -1;
+        }
+        return row * gridSize + column;
+    }
+
+    private int cellLeft(int index) {
+        return getPaddingLeft() + (index % gridSize) * cellSize;
+    }
+
+    private int cellTop(int index) {
+        return getPaddingTop() + (index / gridSize) * cellSize;
+    }
+
+    private static float progress(long start, long now) {
+        return Math.max(0f, Math.min(1f, (now - start) / (float) ANIMATION_DURATION));
+    }
+
+    private static int blend(int from, int to, float fraction) {
+        int a = (int) (Color.alpha(from) + (Color.alpha(to) - Color.alpha(from)) * fraction);
+        int r = (int) (Color.red(from) + (Color.red(to) - Color.red(from)) * fraction);
+        int g = (int) (Color.green(from) + (Color.green(to) - Color.green(from)) * fraction);
+        int b = (int) (Color.blue(from) + (Color.blue(to) - Color.blue(from)) * fraction);
+        return Color.argb(a, r, g, b);
+    }
+
+    /**
+     * Exposes each tile as a virtual view, read out by where it is and what's in it, that can be
+     * clicked whenever touching it would play there.
+     */
+    private final class TileAccessibilityHelper extends ExploreByTouchHelper {
+
+        private final Rect bounds = new Rect();
+
+        TileAccessibilityHelper() {
+            super(TicTacToeView.this);
+        }
+
+        @Override
+        protected int getVirtualViewAt(float x, float y) {
+            int cell = cellAt(x, y);
+            return cell == -1 ? INVALID_ID : cell;
+        }
+
+        @Override
+        protected void getVisibleVirtualViews(List<Integer> virtualViewIds) {
+            for (int i = 0; i < cells.length; i++) {
+                virtualViewIds.add(i);
+            }
+        }
+
+        @Override
+        protected void onPopulateEventForVirtualView(int virtualViewId, AccessibilityEvent event) {
+            event.setContentDescription(describeTile(virtualViewId));
+        }
+
+        @Override
+        protected void onPopulateNodeForVirtualView(int virtualViewId, AccessibilityNodeInfoCompat node) {
+            node.setContentDescription(describeTile(virtualViewId));
+            int left = cellLeft(virtualViewId);
+            int top = cellTop(virtualViewId);
+            bounds.set(left, top, left + cellSize, top + cellSize);
+            node.setBoundsInParent(bounds);
+            if (canClickTile(virtualViewId)) {
+                node.setClickable(true);
+                node.addAction(AccessibilityNodeInfoCompat.ACTION_CLICK);
+            }
+        }
+
+        @Override
+        protected boolean onPerformActionForVirtualView(int virtualViewId, int action, Bundle arguments) {
+            if (action == AccessibilityNodeInfoCompat.ACTION_CLICK && canClickTile(virtualViewId)) {
+                onTileClicked(virtualViewId);
+                return true;
+            }
+            return false;
+        }
+
+        private String describeTile(int index) {
+            int state;
+            if (cells[index] == NONE) {
+                state = R.string.tile_empty;
+            } else {
+                state = cells[index] == PLAYER_ONE ? R.string.tile_x : R.string.tile_o;
+            }
+            return getResources().getString(R.string.tile_description,
+                    index / gridSize + 1, index % gridSize + 1, getResources().getString(state));
         }
     }
 }
@@ -0,0 +1,20 @@
+package io.sweers.tictactoe;
+
+/**
+ * Memory the engine holds on to for speed, but could give back if the system needs it. Anything
+ * given back is rebuilt lazily the next time it's needed. Register instances with
+ * {@link EngineCaches} so they get trimmed when memory runs low.
+ */
+public interface TrimmableCache {
+
+    /**
+     * @return roughly how many bytes this is holding on to
+     */
+    long byteSize();
+
+    /**
+     * @param keep the fraction of its usual size to keep, from 0 (let go of everything) to 1. Caches
+     * that can't shrink part way should only let go when this is 0.
+     */
+    void trim(float keep);
+}
@@ -0,0 +1,229 @@
+package io.sweers.tictactoe;
+
+import android.os.Bundle;
+import android.support.design.widget.Snackbar;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.View;
+
+import com.trello.rxlifecycle.components.support.RxAppCompatActivity;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import butterknife.Bind;
+import butterknife.ButterKnife;
+import rx.Observable;
+import rx.Subscription;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.exceptions.Exceptions;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func1;
+
+/**
+ * Ultimate tic tac toe against the computer, which plays with {@link UltimateSearch}. The human is
+ * always X and moves first.
+ */
+public class UltimateActivity extends RxAppCompatActivity {
+
+    private static final String EXTRA_MOVE_HISTORY = "moveHistory";
+    private static final int CPU_ITERATIONS = 50000;
+    private static final long CPU_TIME_LIMIT = TimeUnit.SECONDS.toNanos(1);
+
+    @Bind(R.id.ttt_view)
+    protected TicTacToeView ticTacToeView;
+
+    private final UltimateBoard board = new UltimateBoard();
+    private final UltimateSearch search = new UltimateSearch(new Random());
+    private Subscription cpuMoveSubscription;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+        ButterKnife.bind(this);
+        EngineCaches.register(search);
+        ticTacToeView.setNested(true);
+        ticTacToeView.setNextPlayer(TicTacToeGame.PLAYER_ONE);
+
+        ticTacToeView.setOnTileClickedListener(new TicTacToeView.OnTileClickListener() {
+            @Override
+            public void onTileClick(int position) {
+                int move = UltimateBoard.fromGridIndex(position);
+                if (!board.isLegal(move)) {
+                    // The view only lets open regions be pressed, but a stale one shouldn't crash us
+                    ticTacToeView.showTile(position, TicTacToeGame.NONE);
+                    return;
+                }
+                handleMove(move);
+            }
+        });
+
+        if (savedInstanceState != null) {
+            int[] history = savedInstanceState.getIntArray(EXTRA_MOVE_HISTORY);
+            if (history != null) {
+                char[] grid = new char[UltimateBoard.MOVES];
+                Arrays.fill(grid, TicTacToeGame.NONE);
+                for (int move : history) {
+                    grid[UltimateBoard.toGridIndex(move)] = Board.toChar(board.toMove());
+                    board.play(move);
+                }
+                ticTacToeView.restoreBoard(grid);
+            }
+        }
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        updateBoard();
+        if (board.isOver()) {
+            endGame();
+        } else if (board.toMove() == Board.TWO) {
+            simulateCpuMove();
+        }
+    }
+
+    @Override
+    public void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        int[] history = new int[board.moveCount()];
+        for (int i = 0; i < history.length; i++) {
+            history[i] = board.moveAt(i);
+        }
+        outState.putIntArray(EXTRA_MOVE_HISTORY, history);
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.ultimate, menu);
+        return super.onCreateOptionsMenu(menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case R.id.restart:
+                restart();
+                return true;
+            default:
+                return super.onOptionsItemSelected(item);
+        }
+    }
+
+    private void handleMove(int move) {
+        board.play(move);
+        updateBoard();
+        if (board.isOver()) {
+            endGame();
+        } else if (board.toMove() == Board.TWO) {
+            simulateCpuMove();
+        }
+    }
+
+    /**
+     * Syncs sub-board winners and the highlighted region with the board.
+     */
+    private void updateBoard() {
+        for (int sub = 0; sub < 9; sub++) {
+            ticTacToeView.setRegionWinner(sub, Board.toChar(board.subBoardWinner(sub)));
+        }
+        ticTacToeView.setActiveRegion(board.forcedBoard());
+    }
+
+    /**
+     * Same idea as the regular game, except the search is bounded by time rather than being
+     * padded out to look like it's thinking.
+     */
+    private void simulateCpuMove() {
+        final Snackbar snackbar = Snackbar.make(ticTacToeView, "Thinking...", Snackbar.LENGTH_INDEFINITE);
+        // Search a copy, so the UI's board is never touched off the main thread
+        cpuMoveSubscription = Observable.just(board.copy())
+                .map(new Func1<UltimateBoard, Integer>() {
+                    @Override
+                    public Integer call(UltimateBoard position) {
+                        // If a search from before a pause is still finishing up, this waits for it
+                        return search.bestMove(position, CPU_ITERATIONS, CPU_TIME_LIMIT);
+                    }
+                })
+                .compose(EngineExecutor.SHARED.<Integer>schedule(search))
+                .doOnSubscribe(new Action0() {
+                    @Override
+                    public void call() {
+                        ticTacToeView.setEnabled(false);
+                        snackbar.show();
+                    }
+                })
+                .observeOn(AndroidSchedulers.mainThread())
+                .doOnUnsubscribe(new Action0() {
+                    @Override
+                    public void call() {
+                        // Covers restarts too, which drop the move without ever seeing it
+                        snackbar.dismiss();
+                    }
+                })
+                .compose(this.<Integer>bindToLifecycle())  // So it stops if we leave or rotate
+                .subscribe(new Action1<Integer>() {
+                    @Override
+                    public void call(Integer move) {
+                        snackbar.dismiss();
+                        ticTacToeView.setEnabled(true);
+                        ticTacToeView.setTile(UltimateBoard.toGridIndex(move), TicTacToeGame.PLAYER_TWO);
+                        handleMove(move);
+                    }
+                }, new Action1<Throwable>() {
+                    @Override
+                    public void call(Throwable throwable) {
+                        if (!(throwable instanceof RejectedExecutionException)) {
+                            // A real bug, not backpressure, so don't dress it up as one
+                            throw Exceptions.propagate(throwable);
+                        }
+                        // The engine's queue is full, so let the user decide when to try again
+                        snackbar.dismiss();
+                        Snackbar.make(ticTacToeView, R.string.engine_busy, Snackbar.LENGTH_INDEFINITE)
+                                .setAction(R.string.retry, new View.OnClickListener() {
+                                    @Override
+                                    public void onClick(View v) {
+                                        simulateCpuMove();
+                                    }
+                                })
+                                .show();
+                    }
+                });
+    }
+
+    private void endGame() {
+        ticTacToeView.endGame(null);
+        String message;
+        if (board.winner() == Board.ONE) {
+            message = "You win!";
+        } else if (board.winner() == Board.TWO) {
+            message = "Computer wins!";
+        } else {
+            message = "It's a tie!";
+        }
+        Snackbar.make(ticTacToeView, message, Snackbar.LENGTH_INDEFINITE)
+                .setAction(R.string.restart, new View.OnClickListener() {
+                    @Override
+                    public void onClick(View v) {
+                        restart();
+                    }
+                })
+                .show();
+    }
+
+    private void restart() {
+        if (cpuMoveSubscription != null) {
+            // Otherwise its move lands on the new board, played as the wrong side
+            cpuMoveSubscription.unsubscribe();
+            cpuMoveSubscription = null;
+        }
+        board.clear();
+        ticTacToeView.setNested(true);
+        ticTacToeView.setEnabled(true);
+        updateBoard();
+    }
+}
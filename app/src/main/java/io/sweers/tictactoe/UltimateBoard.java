@@ -0,0 +1,201 @@
+package io.sweers.tictactoe;
+
+/**
+ * Board for "ultimate" tic tac toe: a 3x3 grid of 3x3 sub-boards, where winning a sub-board claims
+ * that square of the big board and the cell you play in decides which sub-board your opponent has
+ * to play in next.
+ *
+ * Each sub-board is packed into an int with the same layout as {@link PackedBoard} (minus the side
+ * to move bit), so sub-board wins use the exact same line masks as the regular game. Moves are
+ * numbered {@code subBoard * 9 + cell}; see {@link #toGridIndex(int)} for mapping them onto a
+ * plain 9x9 grid.
+ */
+public final class UltimateBoard {
+
+    public static final int MOVES = 81;
+    public static final int ANY_BOARD = -1;
+
+    private static final int CELL_MASK = 0x1FF;
+
+    private final int[] subBoards = new int[9];
+    private final int[] history = new int[MOVES];
+    private final int[] forcedHistory = new int[MOVES];
+    private int moveCount;
+    private int wonOne;
+    private int wonTwo;
+    private int closed;
+    private int forced = ANY_BOARD;
+    private byte toMove = Board.ONE;
+    private byte winner = Board.EMPTY;
+
+    /**
+     * @return the 9x9 grid index (row major) for the given move
+     */
+    public static int toGridIndex(int move) {
+        int sub = move / 9;
+        int cell = move % 9;
+        int row = (sub / 3) * 3 + cell / 3;
+        int column = (sub % 3) * 3 + cell % 3;
+        return row * 9 + column;
+    }
+
+    public static int fromGridIndex(int gridIndex) {
+        int row = gridIndex / 9;
+        int column = gridIndex % 9;
+        return ((row / 3) * 3 + column / 3) * 9 + (row % 3) * 3 + column % 3;
+    }
+
+    public byte toMove() {
+        return toMove;
+    }
+
+    public void setToMove(byte player) {
+        toMove = player;
+    }
+
+    public int moveCount() {
+        return moveCount;
+    }
+
+    public int moveAt(int ply) {
+        return history[ply];
+    }
+
+    /**
+     * @return the sub-board the next move has to be played in, or {@link #ANY_BOARD}
+     */
+    public int forcedBoard() {
+        return forced;
+    }
+
+    public byte winner() {
+        return winner;
+    }
+
+    /**
+     * @return who won the given sub-board, or {@link Board#EMPTY}
+     */
+    public byte subBoardWinner(int sub) {
+        int bit = 1 << sub;
+        return (wonOne & bit) != 0 ? Board.ONE : (wonTwo & bit) != 0 ? Board.TWO : Board.EMPTY;
+    }
+
+    public byte get(int move) {
+        int packed = subBoards[move / 9];
+        int bit = 1 << (move % 9);
+        return (PackedBoard.ones(packed) & bit) != 0
+                ? Board.ONE
+                : (PackedBoard.twos(packed) & bit) != 0 ? Board.TWO : Board.EMPTY;
+    }
+
+    public boolean isOver() {
+        return winner != Board.EMPTY || closed == CELL_MASK;
+    }
+
+    public boolean isLegal(int move) {
+        if (isOver() || move < 0 || move >= MOVES) {
+            return false;
+        }
+        int sub = move / 9;
+        return (closed & (1 << sub)) == 0
+                && (forced == ANY_BOARD || forced == sub)
+                && PackedBoard.isEmpty(subBoards[sub], move % 9);
+    }
+
+    /**
+     * Writes every legal move into {@code out}.
+     *
+     * @return how many were written
+     */
+    public int legalMoves(int[] out) {
+        if (isOver()) {
+            return 0;
+        }
+        int count = 0;
+        for (int sub = 0; sub < 9; sub++) {
+            if ((closed & (1 << sub)) != 0 || (forced != ANY_BOARD && forced != sub)) {
+                continue;
+            }
+            int empty = PackedBoard.emptyMask(subBoards[sub]);
+            while (empty != 0) {
+                int cell = Integer.numberOfTrailingZeros(empty);
+                empty &= empty - 1;
+                out[count++] = sub * 9 + cell;
+            }
+        }
+        return count;
+    }
+
+    public void play(int move) {
+        if (!isLegal(move)) {
+            throw new IllegalStateException("Illegal move " + move);
+        }
+        int sub = move / 9;
+        int cell = move % 9;
+        int bit = 1 << sub;
+        forcedHistory[moveCount] = forced;
+        history[moveCount++] = move;
+
+        int packed = subBoards[sub] | (toMove == Board.ONE ? 1 << cell : 1 << (cell + 9));
+        subBoards[sub] = packed;
+        int mine = toMove == Board.ONE ? PackedBoard.ones(packed) : PackedBoard.twos(packed);
+        if (PackedBoard.hasLine(mine)) {
+            if (toMove == Board.ONE) {
+                wonOne |= bit;
+                if (PackedBoard.hasLine(wonOne)) {
+                    winner = Board.ONE;
+                }
+            } else {
+                wonTwo |= bit;
+                if (PackedBoard.hasLine(wonTwo)) {
+                    winner = Board.TWO;
+                }
+            }
+            closed |= bit;
+        } else if (PackedBoard.emptyMask(packed) == 0) {
+            closed |= bit;
+        }
+
+        forced = (closed & (1 << cell)) != 0 ? ANY_BOARD : cell;
+        toMove = Board.opponent(toMove);
+    }
+
+    public void undo() {
+        int move = history[--moveCount];
+        int sub = move / 9;
+        int cell = move % 9;
+        int bit = 1 << sub;
+        toMove = Board.opponent(toMove);
+        subBoards[sub] &= ~(toMove == Board.ONE ? 1 << cell : 1 << (cell + 9));
+        // Only the sub-board we just played in could have changed state
+        wonOne &= ~bit;
+        wonTwo &= ~bit;
+        closed &= ~bit;
+        winner = Board.EMPTY;
+        forced = forcedHistory[moveCount];
+    }
+
+    /**
+     * @return an independent board with the same moves played, e.g. to search on another thread
+     */
+    public UltimateBoard copy() {
+        UltimateBoard copy = new UltimateBoard();
+        for (int i = 0; i < moveCount; i++) {
+            copy.play(history[i]);
+        }
+        return copy;
+    }
+
+    public void clear() {
+        for (int i = 0; i < subBoards.length; i++) {
+            subBoards[i] = 0;
+        }
+        moveCount = 0;
+        wonOne = 0;
+        wonTwo = 0;
+        closed = 0;
+        forced = ANY_BOARD;
+        toMove = Board.ONE;
+        winner = Board.EMPTY;
+    }
+}
@@ -0,0 +1,231 @@
+package io.sweers.tictactoe;
+
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Monte Carlo tree search (UCT) for {@link UltimateBoard}. With up to 81 moves per turn, exhaustive
+ * minimax is hopeless, so instead we grow a tree towards the moves that random playouts say are
+ * most promising, for as many iterations or as long as we're allowed.
+ *
+ * The tree lives in flat primitive arrays that are reused from one search to the next, so a search
+ * doesn't allocate anything. They're allocated on the first search, and {@link #trim(float)} lets
+ * go of them between searches if memory gets tight. Searches on the same instance take turns, but a
+ * trim never waits for one: if a search is running, it drops the arrays itself once it's done.
+ */
+public final class UltimateSearch implements TrimmableCache {
+
+    private static final double EXPLORATION = 1.4;
+
+    private final Random random;
+    private final int capacity;
+    // Held for a whole search, so trims only ever try it
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile boolean dropPending;
+    private volatile boolean allocated;
+    private int[] parents;
+    private int[] firstChildren;
+    private int[] childCounts;
+    private int[] moves;
+    private int[] visits;
+    // Wins (ties count as half) for the player who made the move leading to each node
+    private float[] scores;
+    private final int[] scratchMoves = new int[UltimateBoard.MOVES];
+    private int size;
+    private long iterations;
+
+    public UltimateSearch(Random random) {
+        this(random, 1 << 18);
+    }
+
+    public UltimateSearch(Random random, int capacity) {
+        this.random = random;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return how many playouts the most recent search ran
+     */
+    public long iterations() {
+        return iterations;
+    }
+
+    /**
+     * Searches until either limit is hit. The board is left as it was found.
+     *
+     * @return the most visited move, or -1 if the game is over
+     */
+    public int bestMove(UltimateBoard board, int maxIterations, long maxNanos) {
+        if (board.isOver()) {
+            return -1;
+        }
+        lock.lock();
+        try {
+            return search(board, maxIterations, maxNanos);
+        } finally {
+            lock.unlock();
+            // A trim that came in while we were busy left this for us
+            if (dropPending) {
+                dropArrays();
+            }
+        }
+    }
+
+    private int search(UltimateBoard board, int maxIterations, long maxNanos) {
+        if (parents == null) {
+            parents = new int[capacity];
+            firstChildren = new int[capacity];
+            childCounts = new int[capacity];
+            moves = new int[capacity];
+            visits = new int[capacity];
+            scores = new float[capacity];
+            allocated = true;
+        }
+        long deadline = System.nanoTime() + maxNanos;
+        size = 1;
+        parents[0] = -1;
+        childCounts[0] = 0;
+        firstChildren[0] = -1;
+        visits[0] = 0;
+        scores[0] = 0;
+        moves[0] = -1;
+
+        byte rootPlayer = board.toMove();
+        for (iterations = 0; iterations < maxIterations; iterations++) {
+            // Checking the clock every so often is plenty
+            if ((iterations & 0xFF) == 0 && System.nanoTime() > deadline) {
+                break;
+            }
+            iterate(board, rootPlayer);
+        }
+
+        int best = -1;
+        int bestVisits = -1;
+        for (int i = 0; i < childCounts[0]; i++) {
+            int child = firstChildren[0] + i;
+            if (visits[child] > bestVisits) {
+                bestVisits = visits[child];
+                best = moves[child];
+            }
+        }
+        if (best == -1) {
+            // Didn't even get to expand the root
+            best = scratchMoves[random.nextInt(board.legalMoves(scratchMoves))];
+        }
+        return best;
+    }
+
+    @Override
+    public long byteSize() {
+        return allocated ? capacity * 24L : 0;
+    }
+
+    /**
+     * The tree only matters during a search, so there's nothing to shrink: it's all or nothing.
+     * Never blocks; with a search in progress, the arrays go as soon as it finishes instead.
+     */
+    @Override
+    public void trim(float keep) {
+        if (keep == 0) {
+            // Set before trying the lock, so either we get it or the search sees this after letting go
+            dropPending = true;
+            dropArrays();
+        }
+    }
+
+    private void dropArrays() {
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            dropPending = false;
+            allocated = false;
+            parents = null;
+            firstChildren = null;
+            childCounts = null;
+            moves = null;
+            visits = null;
+            scores = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void iterate(UltimateBoard board, byte rootPlayer) {
+        int node = 0;
+        int depth = 0;
+
+        // Selection
+        while (childCounts[node] > 0) {
+            node = select(node);
+            board.play(moves[node]);
+            depth++;
+        }
+
+        // Expansion
+        if (!board.isOver() && visits[node] > 0) {
+            int count = board.legalMoves(scratchMoves);
+            if (size + count <= capacity) {
+                firstChildren[node] = size;
+                childCounts[node] = count;
+                for (int i = 0; i < count; i++) {
+                    int child = size++;
+                    parents[child] = node;
+                    firstChildren[child] = -1;
+                    childCounts[child] = 0;
+                    moves[child] = scratchMoves[i];
+                    visits[child] = 0;
+                    scores[child] = 0;
+                }
+                node = firstChildren[node] + random.nextInt(count);
+                board.play(moves[node]);
+                depth++;
+            }
+        }
+
+        // Playout
+        int playoutDepth = 0;
+        while (!board.isOver()) {
+            int count = board.legalMoves(scratchMoves);
+            board.play(scratchMoves[random.nextInt(count)]);
+            playoutDepth++;
+        }
+        byte winner = board.winner();
+        for (int i = 0; i < playoutDepth + depth; i++) {
+            board.undo();
+        }
+
+        // Backpropagation. The player who moved into a node is whoever isn't to move there, which
+        // alternates as we walk back up from the root player's perspective.
+        byte mover = (depth % 2 == 1) ? rootPlayer : Board.opponent(rootPlayer);
+        while (node != -1) {
+            visits[node]++;
+            if (winner == Board.EMPTY) {
+                scores[node] += 0.5f;
+            } else if (winner == mover) {
+                scores[node] += 1f;
+            }
+            mover = Board.opponent(mover);
+            node = parents[node];
+        }
+    }
+
+    private int select(int node) {
+        double logParent = Math.log(visits[node] + 1);
+        int best = firstChildren[node];
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < childCounts[node]; i++) {
+            int child = firstChildren[node] + i;
+            if (visits[child] == 0) {
+                return child;
+            }
+            double value = scores[child] / visits[child]
+                    + EXPLORATION * Math.sqrt(logParent / visits[child]);
+            if (value > bestValue) {
+                bestValue = value;
+                best = child;
+            }
+        }
+        return best;
+    }
+}
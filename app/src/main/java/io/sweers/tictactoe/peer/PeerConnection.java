@@ -0,0 +1,453 @@
+package io.sweers.tictactoe.peer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.sweers.tictactoe.LatencyHistogram;
+import io.sweers.tictactoe.PackedBoard;
+import io.sweers.tictactoe.TicTacToeGame;
+
+/**
+ * One end of a game between two devices. The host listens and the joiner connects to it; after
+ * that they're equals, apart from the host having the final say when they disagree (see
+ * {@link PeerGame}). Everything runs on one non-blocking selector thread, and moves go over the
+ * wire as single {@link PeerProtocol} frames.
+ *
+ * Moves show up on this end's board as soon as they're played rather than waiting for the peer.
+ * If the connection drops the joiner keeps trying to get back, and the host sends it a snapshot of
+ * the board when it does, so a flaky network costs at most the move that was in flight.
+ */
+public final class PeerConnection {
+
+    public static final int DEFAULT_PORT = 4747;
+
+    private static final int BUFFER_SIZE = PeerProtocol.FRAME_SIZE * 64;
+    private static final long RECONNECT_MILLIS = 1000;
+
+    public interface Listener {
+        /**
+         * Called on the connection's thread whenever the game changes, including right after a
+         * local move, before the peer has seen it.
+         *
+         * @param board the board as this end sees it, see {@link PackedBoard}
+         * @param player which side this end is playing, or {@link TicTacToeGame#NONE} if the joiner
+         *               hasn't heard about a game yet
+         * @param confirmed false while our last move is still waiting on the peer
+         */
+        void onGameChanged(int board, char player, boolean confirmed);
+
+        /**
+         * Called on the connection's thread when the peer connects or goes away.
+         */
+        void onConnectionChanged(boolean connected);
+    }
+
+    private final PeerGame game;
+    private final InetSocketAddress address;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+    private final ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+    private final AtomicLong framesSent = new AtomicLong();
+    private final AtomicLong framesReceived = new AtomicLong();
+    private volatile Listener listener;
+    private volatile boolean running;
+    private volatile boolean connected;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private SocketChannel channel;
+    private SelectionKey channelKey;
+    private Thread thread;
+    private long reconnectAt;
+
+    // Last state handed to the listener, so it's only told about changes
+    private int lastBoard = -1;
+    private char lastPlayer;
+    private boolean lastConfirmed;
+
+    private PeerConnection(boolean host, InetSocketAddress address, Listener listener) {
+        this.game = new PeerGame(host);
+        this.address = address;
+        this.listener = listener;
+    }
+
+    /**
+     * Listens for a peer on every interface.
+     *
+     * @param port port to listen on, or 0 to pick any free one
+     */
+    public static PeerConnection host(int port, Listener listener) throws IOException {
+        PeerConnection connection = new PeerConnection(true, new InetSocketAddress(port), listener);
+        connection.start();
+        return connection;
+    }
+
+    /**
+     * Connects to a host, retrying until it's reachable. The address can be unresolved, in which
+     * case it's looked up off the calling thread.
+     */
+    public static PeerConnection join(InetSocketAddress address, Listener listener) throws IOException {
+        PeerConnection connection = new PeerConnection(false, address, listener);
+        connection.start();
+        return connection;
+    }
+
+    private void start() throws IOException {
+        selector = Selector.open();
+        if (game.host) {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.configureBlocking(false);
+            serverChannel.socket().bind(address);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } else {
+            // Connecting (and looking up the address) happens on our thread, since this is
+            // probably being called from the main one
+            reconnectAt = System.nanoTime();
+        }
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, game.host ? "PeerConnection-host" : "PeerConnection-join");
+        thread.start();
+    }
+
+    public void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        thread.join();
+    }
+
+    /**
+     * Swaps who gets told about changes, e.g. when an activity is recreated. The new listener is
+     * brought up to date straight away.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+        post(new Runnable() {
+            @Override
+            public void run() {
+                Listener current = PeerConnection.this.listener;
+                if (current != null) {
+                    current.onConnectionChanged(connected);
+                    current.onGameChanged(game.board, game.player, game.pendingPly == PeerGame.NO_PLY);
+                }
+            }
+        });
+    }
+
+    /**
+     * Plays a move for this end. If it turns out not to be legal the listener hears about the
+     * unchanged board, so anything shown optimistically can be put back.
+     */
+    public void play(final int cell) {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                if (connected && hasRoomToSend()) {
+                    game.play(cell, out, System.nanoTime());
+                }
+                // Always report back, even if nothing changed
+                lastBoard = -1;
+            }
+        });
+    }
+
+    /**
+     * Starts a new game, or asks the host to if this end joined.
+     */
+    public void newGame() {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                if (connected && hasRoomToSend()) {
+                    game.newGame(out);
+                }
+            }
+        });
+    }
+
+    public boolean isHost() {
+        return game.host;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * @return the port the host is listening on
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * @return time from a local move being played to the peer acking it
+     */
+    public LatencyHistogram ackLatency() {
+        return game.ackLatency;
+    }
+
+    public long framesSent() {
+        return framesSent.get();
+    }
+
+    public long framesReceived() {
+        return framesReceived.get();
+    }
+
+    /**
+     * @return how many times the peers disagreed and had to be brought back in line with a snapshot
+     */
+    public long resyncs() {
+        return game.resyncs;
+    }
+
+    @Override
+    public String toString() {
+        return "PeerConnection{host=" + game.host
+                + ", connected=" + connected
+                + ", sent=" + framesSent()
+                + ", received=" + framesReceived()
+                + ", resyncs=" + resyncs()
+                + ", ackLatency={" + game.ackLatency + "}"
+                + "}";
+    }
+
+    /**
+     * Whether the outgoing buffer has room for the most any one step writes, two frames. If the
+     * peer stops reading for long enough to fill it, local moves and new games get dropped rather
+     * than overflowing it and taking the connection's thread down with them.
+     */
+    private boolean hasRoomToSend() {
+        return out.remaining() >= PeerProtocol.FRAME_SIZE * 2;
+    }
+
+    private void post(Runnable task) {
+        tasks.add(task);
+        Selector selector = this.selector;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    private void loop() {
+        try {
+            while (running) {
+                long timeout = 0;
+                if (!game.host && channel == null) {
+                    timeout = Math.max(1, TimeUnit.NANOSECONDS.toMillis(reconnectAt - System.nanoTime()));
+                }
+                selector.select(timeout);
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else if (key.isConnectable()) {
+                            finishConnect();
+                        } else {
+                            if (key.isReadable()) {
+                                read();
+                            }
+                            if (channel != null && key.isValid() && key.isWritable()) {
+                                process();
+                            }
+                        }
+                    } catch (IOException e) {
+                        disconnect();
+                    }
+                }
+
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                if (connected && out.position() > 0) {
+                    try {
+                        flush();
+                    } catch (IOException e) {
+                        disconnect();
+                    }
+                }
+                if (!game.host && channel == null && System.nanoTime() >= reconnectAt) {
+                    try {
+                        connect();
+                    } catch (IOException e) {
+                        disconnect();
+                    }
+                }
+                notifyIfChanged();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            running = false;
+        } finally {
+            closeChannel();
+            try {
+                if (serverChannel != null) {
+                    serverChannel.close();
+                }
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel accepted = serverChannel.accept();
+        if (accepted == null) {
+            return;
+        }
+        // Only one peer at a time, and a new one is most likely the old one coming back
+        closeChannel();
+        accepted.configureBlocking(false);
+        accepted.socket().setTcpNoDelay(true);
+        channel = accepted;
+        channelKey = accepted.register(selector, SelectionKey.OP_READ);
+        setConnected(true);
+        game.sendState(out);
+        flush();
+    }
+
+    private void connect() throws IOException {
+        InetSocketAddress target = address;
+        if (target.isUnresolved()) {
+            target = new InetSocketAddress(target.getHostName(), target.getPort());
+            if (target.isUnresolved()) {
+                throw new IOException("Couldn't resolve " + target.getHostName());
+            }
+        }
+        SocketChannel connecting = SocketChannel.open();
+        connecting.configureBlocking(false);
+        connecting.socket().setTcpNoDelay(true);
+        channel = connecting;
+        if (connecting.connect(target)) {
+            channelKey = connecting.register(selector, SelectionKey.OP_READ);
+            setConnected(true);
+        } else {
+            channelKey = connecting.register(selector, SelectionKey.OP_CONNECT);
+        }
+    }
+
+    private void finishConnect() throws IOException {
+        if (channel.finishConnect()) {
+            channelKey.interestOps(SelectionKey.OP_READ);
+            setConnected(true);
+        }
+    }
+
+    private void read() throws IOException {
+        if (channel.read(in) == -1) {
+            disconnect();
+            return;
+        }
+        process();
+    }
+
+    /**
+     * Handles every complete frame we have room to answer and flushes the replies. If we ran out
+     * of room, keep going once the peer has drained what we owe it.
+     */
+    private void process() throws IOException {
+        do {
+            in.flip();
+            while (in.remaining() >= PeerProtocol.FRAME_SIZE && hasRoomToSend()) {
+                game.receive(in, out, System.nanoTime());
+                framesReceived.incrementAndGet();
+            }
+            in.compact();
+        } while (flush() && in.position() >= PeerProtocol.FRAME_SIZE);
+    }
+
+    /**
+     * @return true if everything we owe the peer made it out
+     */
+    private boolean flush() throws IOException {
+        out.flip();
+        int written = channel.write(out);
+        out.compact();
+        // Frames are tiny, so partial ones are rare, but they only count once they're all the way out
+        framesSent.addAndGet(written / PeerProtocol.FRAME_SIZE);
+
+        // Stop reading until the peer drains what we owe it, which gives us natural backpressure
+        boolean drained = out.position() == 0;
+        channelKey.interestOps(drained ? SelectionKey.OP_READ : SelectionKey.OP_WRITE);
+        return drained;
+    }
+
+    private void disconnect() {
+        closeChannel();
+        if (!game.host) {
+            scheduleReconnect();
+        }
+    }
+
+    private void scheduleReconnect() {
+        reconnectAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RECONNECT_MILLIS);
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        if (channelKey != null) {
+            channelKey.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        channel = null;
+        channelKey = null;
+        in.clear();
+        out.clear();
+        setConnected(false);
+    }
+
+    private void setConnected(boolean connected) {
+        if (this.connected == connected) {
+            return;
+        }
+        this.connected = connected;
+        Listener listener = this.listener;
+        if (listener != null) {
+            listener.onConnectionChanged(connected);
+        }
+    }
+
+    private void notifyIfChanged() {
+        boolean confirmed = game.pendingPly == PeerGame.NO_PLY;
+        if (game.board == lastBoard && game.player == lastPlayer && confirmed == lastConfirmed) {
+            return;
+        }
+        lastBoard = game.board;
+        lastPlayer = game.player;
+        lastConfirmed = confirmed;
+        Listener listener = this.listener;
+        if (listener != null) {
+            listener.onGameChanged(game.board, game.player, confirmed);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package io.sweers.tictactoe.peer;
+
+import java.nio.ByteBuffer;
+
+import io.sweers.tictactoe.LatencyHistogram;
+import io.sweers.tictactoe.PackedBoard;
+import io.sweers.tictactoe.TicTacToeGame;
+
+/**
+ * One side's view of a game between two peers. Local moves go straight onto the board and out to
+ * the peer, and stay pending until the peer acks them.
+ *
+ * The host's board is the source of truth. If the joiner gets a move that doesn't fit its board
+ * it asks for a resync, and the host answers with the game and a snapshot of its board, which
+ * replaces whatever the joiner had, pending move and all. The host doesn't ask, it just sends the
+ * snapshot. Only the host starts games; the joiner can ask it to.
+ *
+ * Not thread safe, {@link PeerConnection} only touches it from its own thread. Callers make sure
+ * there's room for two frames in the output buffer before each call.
+ */
+final class PeerGame {
+
+    static final int NO_PLY = -1;
+
+    final boolean host;
+    // From a move being played here to the peer's ack arriving
+    final LatencyHistogram ackLatency = new LatencyHistogram();
+    // Only ever written from the connection's thread
+    volatile long resyncs;
+
+    int gameId;
+    // Which side we're playing, or NONE if the joiner hasn't heard about a game yet
+    char player;
+    int board = PackedBoard.EMPTY;
+    int pendingPly = NO_PLY;
+    private long pendingSince;
+
+    PeerGame(boolean host) {
+        this.host = host;
+        if (host) {
+            gameId = 1;
+            player = TicTacToeGame.PLAYER_ONE;
+        } else {
+            player = TicTacToeGame.NONE;
+        }
+    }
+
+    boolean isMyTurn() {
+        return player != TicTacToeGame.NONE
+                && PackedBoard.toMove(board) == player
+                && PackedBoard.gameState(board) == TicTacToeGame.CONTINUE;
+    }
+
+    /**
+     * Plays a local move and sends it off.
+     *
+     * @return false if it isn't a legal move for us right now
+     */
+    boolean play(int cell, ByteBuffer out, long now) {
+        if (!isMyTurn() || cell < 0 || cell >= PackedBoard.CELLS || !PackedBoard.isEmpty(board, cell)) {
+            return false;
+        }
+        int ply = PackedBoard.pieceCount(board);
+        board = PackedBoard.play(board, cell);
+        pendingPly = ply;
+        pendingSince = now;
+        PeerProtocol.write(out, gameId, PeerProtocol.TYPE_MOVE, ply, cell);
+        return true;
+    }
+
+    /**
+     * Starts a new game if we're the host, swapping who goes first, or asks the host to otherwise.
+     */
+    void newGame(ByteBuffer out) {
+        if (!host) {
+            PeerProtocol.write(out, gameId, PeerProtocol.TYPE_NEW_GAME, 0, 0);
+            return;
+        }
+        gameId++;
+        player = player == TicTacToeGame.PLAYER_ONE ? TicTacToeGame.PLAYER_TWO : TicTacToeGame.PLAYER_ONE;
+        board = PackedBoard.EMPTY;
+        pendingPly = NO_PLY;
+        PeerProtocol.write(out, gameId, PeerProtocol.TYPE_NEW_GAME, 0, hostFirst());
+    }
+
+    /**
+     * Host only, brings the joiner up to date with the current game, e.g. after it (re)connects.
+     */
+    void sendState(ByteBuffer out) {
+        // Anything we had in flight is part of the truth now, whether or not they saw it
+        pendingPly = NO_PLY;
+        PeerProtocol.write(out, gameId, PeerProtocol.TYPE_NEW_GAME, 0, hostFirst());
+        PeerProtocol.writeSnapshot(out, gameId, board);
+    }
+
+    /**
+     * Handles one frame from the peer, replying to it if need be.
+     */
+    void receive(ByteBuffer in, ByteBuffer out, long now) {
+        int id = in.getInt();
+        byte type = in.get();
+        if (type == PeerProtocol.TYPE_SNAPSHOT) {
+            int snapshot = PeerProtocol.readSnapshot(in);
+            if (!host && id == gameId) {
+                board = snapshot;
+                pendingPly = NO_PLY;
+                resyncs++;
+            }
+            return;
+        }
+        int ply = in.get();
+        int cell = in.get();
+        in.get();
+
+        switch (type) {
+            case PeerProtocol.TYPE_NEW_GAME:
+                if (host) {
+                    newGame(out);
+                } else {
+                    gameId = id;
+                    player = cell == 1 ? TicTacToeGame.PLAYER_TWO : TicTacToeGame.PLAYER_ONE;
+                    board = PackedBoard.EMPTY;
+                    pendingPly = NO_PLY;
+                }
+                break;
+            case PeerProtocol.TYPE_MOVE:
+                if (id == gameId && fits(ply, cell)) {
+                    board = PackedBoard.play(board, cell);
+                    PeerProtocol.write(out, gameId, PeerProtocol.TYPE_ACK, ply, cell);
+                } else if (!host) {
+                    PeerProtocol.write(out, gameId, PeerProtocol.TYPE_RESYNC, PackedBoard.pieceCount(board), 0);
+                } else if (id == gameId) {
+                    resyncs++;
+                    sendState(out);
+                }
+                // Otherwise it's left over from a game the host has moved on from, and the joiner
+                // will hear about the new one
+                break;
+            case PeerProtocol.TYPE_ACK:
+                if (id == gameId && ply == pendingPly) {
+                    pendingPly = NO_PLY;
+                    ackLatency.record(now - pendingSince);
+                }
+                break;
+            case PeerProtocol.TYPE_RESYNC:
+                if (host) {
+                    resyncs++;
+                    sendState(out);
+                }
+                break;
+            default:
+                // Nothing we understand, and there's nothing useful to say back
+                break;
+        }
+    }
+
+    /**
+     * @return true if the peer playing {@code cell} on ply {@code ply} is legal on our board
+     */
+    private boolean fits(int ply, int cell) {
+        return player != TicTacToeGame.NONE
+                && ply == PackedBoard.pieceCount(board)
+                && PackedBoard.toMove(board) != player
+                && PackedBoard.gameState(board) == TicTacToeGame.CONTINUE
+                && cell >= 0 && cell < PackedBoard.CELLS
+                && PackedBoard.isEmpty(board, cell);
+    }
+
+    private int hostFirst() {
+        return player == TicTacToeGame.PLAYER_ONE ? 1 : 0;
+    }
+}
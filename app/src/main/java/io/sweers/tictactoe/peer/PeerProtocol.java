@@ -0,0 +1,56 @@
+package io.sweers.tictactoe.peer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Wire format spoken between two {@link PeerConnection}s. Like the server's
+ * {@link io.sweers.tictactoe.server.Protocol}, every frame is a fixed 8 bytes, so a move costs the
+ * same handful of bytes no matter what state the game is in.
+ *
+ * <pre>
+ * move/ack/resync/new game: [game id: int][type: byte][ply: byte][cell: byte][reserved: byte]
+ * snapshot:                 [game id: int][type: byte][packed board: 3 bytes]
+ * </pre>
+ *
+ * A snapshot carries the whole board (see {@link io.sweers.tictactoe.PackedBoard}), which only
+ * needs 19 bits. For {@link #TYPE_NEW_GAME} the cell byte is 1 if the host moves first.
+ */
+public final class PeerProtocol {
+
+    public static final int FRAME_SIZE = 8;
+
+    /** Host to joiner: a new game is starting. Joiner to host: please start one. */
+    public static final byte TYPE_NEW_GAME = 0;
+    public static final byte TYPE_MOVE = 1;
+    public static final byte TYPE_ACK = 2;
+    /** Joiner to host: we disagree about the board, send me yours. */
+    public static final byte TYPE_RESYNC = 3;
+    public static final byte TYPE_SNAPSHOT = 4;
+
+    private PeerProtocol() {
+        throw new AssertionError("No instances");
+    }
+
+    public static void write(ByteBuffer buffer, int gameId, byte type, int ply, int cell) {
+        buffer.putInt(gameId)
+                .put(type)
+                .put((byte) ply)
+                .put((byte) cell)
+                .put((byte) 0);
+    }
+
+    public static void writeSnapshot(ByteBuffer buffer, int gameId, int packedBoard) {
+        buffer.putInt(gameId)
+                .put(TYPE_SNAPSHOT)
+                .put((byte) (packedBoard >>> 16))
+                .put((byte) (packedBoard >>> 8))
+                .put((byte) packedBoard);
+    }
+
+    /**
+     * Reads the board back out of the last three bytes of a snapshot.
+     */
+    public static int readSnapshot(ByteBuffer buffer) {
+        return (buffer.get() & 0xFF) << 16 | (buffer.get() & 0xFF) << 8 | (buffer.get() & 0xFF);
+    }
+}
@@ -0,0 +1,239 @@
+package io.sweers.tictactoe.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Small non-blocking server that lets clients play against the CPU through a
+ * {@link GameSessionManager}. A single selector thread handles every connection; CPU replies come
+ * out of the shared solved-position cache, so they're cheap enough to answer inline.
+ *
+ * See {@link Protocol} for the wire format.
+ */
+public final class GameServer {
+
+    // Enough room to pipeline a few hundred games per connection
+    private static final int BUFFER_SIZE = Protocol.FRAME_SIZE * 512;
+
+    private final GameSessionManager sessions;
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final long evictionIntervalMillis;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread thread;
+    private volatile boolean running;
+
+    public GameServer(GameSessionManager sessions, long evictionInterval, TimeUnit unit) {
+        this.sessions = sessions;
+        this.evictionIntervalMillis = Math.max(1, unit.toMillis(evictionInterval));
+    }
+
+    /**
+     * Binds to the loopback interface and starts serving on a background thread.
+     *
+     * @param port port to listen on, or 0 to pick any free one
+     */
+    public synchronized void start(int port) throws IOException {
+        if (running) {
+            throw new IllegalStateException("Already running");
+        }
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.socket().bind(new InetSocketAddress(InetAddress.getByName(null), port));
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        metrics.reset();
+
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "GameServer");
+        thread.start();
+    }
+
+    public synchronized void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        thread.join();
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    public GameSessionManager getSessions() {
+        return sessions;
+    }
+
+    private void loop() {
+        long nextEviction = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(evictionIntervalMillis);
+        try {
+            while (running) {
+                selector.select(evictionIntervalMillis);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            if (key.isReadable()) {
+                                read(key);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                process(key);
+                            }
+                        }
+                    } catch (IOException e) {
+                        close(key);
+                    }
+                }
+
+                long now = System.nanoTime();
+                if (now >= nextEviction) {
+                    metrics.evictions.addAndGet(sessions.evictIdle(now));
+                    nextEviction = now + TimeUnit.MILLISECONDS.toNanos(evictionIntervalMillis);
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            running = false;
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                close(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(selector, SelectionKey.OP_READ, new Connection());
+        metrics.connections.incrementAndGet();
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        if (((SocketChannel) key.channel()).read(connection.in) == -1) {
+            close(key);
+            return;
+        }
+        process(key);
+    }
+
+    /**
+     * Answers every complete frame we have room for and flushes the responses. If we ran out of
+     * room, keep going once the client has drained what we owe it.
+     */
+    private void process(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        ByteBuffer in = connection.in;
+        ByteBuffer out = connection.out;
+        do {
+            in.flip();
+            while (in.remaining() >= Protocol.FRAME_SIZE && out.remaining() >= Protocol.FRAME_SIZE) {
+                long start = System.nanoTime();
+                handle(in, out, start);
+                metrics.latency.record(System.nanoTime() - start);
+            }
+            in.compact();
+        } while (flush(key) && in.position() >= Protocol.FRAME_SIZE);
+    }
+
+    private void handle(ByteBuffer in, ByteBuffer out, long now) {
+        int gameId = in.getInt();
+        byte op = in.get();
+        byte cell = in.get();
+        in.getShort();
+        metrics.requests.incrementAndGet();
+
+        long reply;
+        switch (op) {
+            case Protocol.OP_NEW:
+                reply = sessions.newGame(cell == 1, now);
+                break;
+            case Protocol.OP_MOVE:
+                reply = sessions.play(gameId, cell, now);
+                break;
+            case Protocol.OP_CLOSE:
+                Protocol.writeResponse(out,
+                        gameId,
+                        sessions.close(gameId) ? Protocol.STATUS_OK : Protocol.STATUS_UNKNOWN_GAME,
+                        Protocol.NO_CELL,
+                        0);
+                return;
+            default:
+                metrics.errors.incrementAndGet();
+                Protocol.writeResponse(out, gameId, Protocol.STATUS_BAD_REQUEST, Protocol.NO_CELL, 0);
+                return;
+        }
+
+        byte status = GameSessionManager.status(reply);
+        if (status != Protocol.STATUS_OK) {
+            metrics.errors.incrementAndGet();
+        }
+        Protocol.writeResponse(out,
+                GameSessionManager.gameId(reply),
+                status,
+                GameSessionManager.cpuCell(reply),
+                GameSessionManager.gameState(reply));
+    }
+
+    /**
+     * @return true if every pending response made it out
+     */
+    private boolean flush(SelectionKey key) throws IOException {
+        ByteBuffer out = ((Connection) key.attachment()).out;
+        out.flip();
+        ((SocketChannel) key.channel()).write(out);
+        out.compact();
+
+        // Stop reading until the client drains what we owe it, which gives us natural backpressure
+        boolean drained = out.position() == 0;
+        key.interestOps(drained ? SelectionKey.OP_READ : SelectionKey.OP_WRITE);
+        return drained;
+    }
+
+    private static void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static final class Connection {
+        final ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+        final ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+}
@@ -0,0 +1,18 @@
+package io.sweers.tictactoe.server;
+
+/**
+ * A single game hosted by {@link GameSessionManager}. The whole board lives in one packed int
+ * (see {@link io.sweers.tictactoe.PackedBoard}), so thousands of these are cheap to keep around.
+ */
+final class GameSession {
+
+    final int id;
+    int board;
+    volatile long lastAccessNanos;
+
+    GameSession(int id, int board, long now) {
+        this.id = id;
+        this.board = board;
+        this.lastAccessNanos = now;
+    }
+}
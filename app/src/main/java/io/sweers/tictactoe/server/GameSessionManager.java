@@ -0,0 +1,187 @@
+package io.sweers.tictactoe.server;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.sweers.tictactoe.BatchEvaluator;
+import io.sweers.tictactoe.PackedBoard;
+import io.sweers.tictactoe.PositionSolver;
+import io.sweers.tictactoe.TicTacToeGame;
+
+import static io.sweers.tictactoe.TicTacToeGame.PLAYER_ONE;
+import static io.sweers.tictactoe.TicTacToeGame.PLAYER_TWO;
+
+/**
+ * Headless host for many concurrent games against the CPU. Clients always play PLAYER_ONE and the
+ * CPU answers every move immediately as PLAYER_TWO, using a shared {@link PositionSolver}.
+ *
+ * Everything here is safe to call from multiple threads. Replies are packed into a long to keep the
+ * request path allocation free; read them back with {@link #gameId(long)}, {@link #status(long)},
+ * {@link #cpuCell(long)} and {@link #gameState(long)}.
+ */
+public final class GameSessionManager {
+
+    private final ConcurrentHashMap<Integer, GameSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final Random random = new Random();
+    private final PositionSolver solver;
+    private final long idleTimeoutNanos;
+
+    public GameSessionManager(PositionSolver solver, long idleTimeout, TimeUnit unit) {
+        this.solver = solver;
+        this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+    }
+
+    public static int gameId(long reply) {
+        return (int) (reply >>> 32);
+    }
+
+    public static byte status(long reply) {
+        return (byte) (reply >>> 16);
+    }
+
+    public static byte cpuCell(long reply) {
+        return (byte) reply;
+    }
+
+    @TicTacToeGame.GameState
+    public static int gameState(long reply) {
+        return (byte) (reply >>> 8);
+    }
+
+    private static long reply(int gameId, byte status, int cpuCell, int gameState) {
+        return ((long) gameId << 32)
+                | ((status & 0xFFL) << 16)
+                | ((gameState & 0xFFL) << 8)
+                | (cpuCell & 0xFFL);
+    }
+
+    public long newGame(boolean cpuFirst, long nowNanos) {
+        int id = nextId.getAndIncrement();
+        int board = PackedBoard.withToMove(PackedBoard.EMPTY, cpuFirst ? PLAYER_TWO : PLAYER_ONE);
+        int cpuCell = Protocol.NO_CELL;
+        if (cpuFirst) {
+            // Every opening solves to a tie, so just pick one at random like the app does
+            cpuCell = random.nextInt(PackedBoard.CELLS);
+            board = PackedBoard.play(board, cpuCell);
+        }
+        sessions.put(id, new GameSession(id, board, nowNanos));
+        return reply(id, Protocol.STATUS_OK, cpuCell, TicTacToeGame.CONTINUE);
+    }
+
+    public long play(int gameId, int cell, long nowNanos) {
+        GameSession session = sessions.get(gameId);
+        if (session == null) {
+            return reply(gameId, Protocol.STATUS_UNKNOWN_GAME, Protocol.NO_CELL, TicTacToeGame.CONTINUE);
+        }
+
+        synchronized (session) {
+            session.lastAccessNanos = nowNanos;
+            int board = session.board;
+            int state = PackedBoard.gameState(board);
+            if (state != TicTacToeGame.CONTINUE) {
+                return reply(gameId, Protocol.STATUS_GAME_OVER, Protocol.NO_CELL, state);
+            }
+            if (cell < 0
+                    || cell >= PackedBoard.CELLS
+                    || !PackedBoard.isEmpty(board, cell)
+                    || PackedBoard.toMove(board) != PLAYER_ONE) {
+                return reply(gameId, Protocol.STATUS_ILLEGAL_MOVE, Protocol.NO_CELL, state);
+            }
+
+            board = PackedBoard.play(board, cell);
+            state = PackedBoard.gameState(board);
+            int cpuCell = Protocol.NO_CELL;
+            if (state == TicTacToeGame.CONTINUE) {
+                cpuCell = PositionSolver.move(solver.solve(board));
+                board = PackedBoard.play(board, cpuCell);
+                state = PackedBoard.gameState(board);
+            }
+            session.board = board;
+            return reply(gameId, Protocol.STATUS_OK, cpuCell, state);
+        }
+    }
+
+    /**
+     * Solves every position the CPU could be asked to answer up front, spread over
+     * {@code parallelism} threads, so the first games served don't pay for it.
+     *
+     * @return how many positions were solved
+     */
+    public int warmUp(int parallelism) throws InterruptedException {
+        int[] positions = new int[PackedBoard.INDEX_COUNT];
+        boolean[] seen = new boolean[PackedBoard.INDEX_COUNT];
+        int count = collectCpuPositions(PackedBoard.withToMove(PackedBoard.EMPTY, PLAYER_ONE), seen, positions, 0);
+        count = collectCpuPositions(PackedBoard.withToMove(PackedBoard.EMPTY, PLAYER_TWO), seen, positions, count);
+        positions = Arrays.copyOf(positions, count);
+
+        BatchEvaluator evaluator = new BatchEvaluator(solver, parallelism);
+        try {
+            evaluator.evaluate(positions, new int[count], new int[count]);
+        } finally {
+            evaluator.shutdown();
+        }
+        return count;
+    }
+
+    private static int collectCpuPositions(int board, boolean[] seen, int[] out, int count) {
+        int index = PackedBoard.index(board);
+        if (seen[index] || PackedBoard.gameState(board) != TicTacToeGame.CONTINUE) {
+            return count;
+        }
+        seen[index] = true;
+        if (PackedBoard.toMove(board) == PLAYER_TWO) {
+            out[count++] = board;
+        }
+        int empty = PackedBoard.emptyMask(board);
+        for (int i = 0; i < PackedBoard.CELLS; i++) {
+            if ((empty & (1 << i)) != 0) {
+                count = collectCpuPositions(PackedBoard.play(board, i), seen, out, count);
+            }
+        }
+        return count;
+    }
+
+    public boolean close(int gameId) {
+        return sessions.remove(gameId) != null;
+    }
+
+    /**
+     * @return the packed board for the given game, or {@link PackedBoard#EMPTY} if it doesn't exist
+     */
+    public int board(int gameId) {
+        GameSession session = sessions.get(gameId);
+        if (session == null) {
+            return PackedBoard.EMPTY;
+        }
+        synchronized (session) {
+            return session.board;
+        }
+    }
+
+    /**
+     * Drops every game that hasn't seen a request within the idle timeout.
+     *
+     * @return the number of games evicted
+     */
+    public int evictIdle(long nowNanos) {
+        int evicted = 0;
+        Iterator<GameSession> iterator = sessions.values().iterator();
+        while (iterator.hasNext()) {
+            GameSession session = iterator.next();
+            if (nowNanos - session.lastAccessNanos > idleTimeoutNanos) {
+                iterator.remove();
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+}
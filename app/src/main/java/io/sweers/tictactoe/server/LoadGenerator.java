@@ -0,0 +1,223 @@
+package io.sweers.tictactoe.server;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.sweers.tictactoe.LatencyHistogram;
+import io.sweers.tictactoe.PackedBoard;
+import io.sweers.tictactoe.PositionSolver;
+import io.sweers.tictactoe.TicTacToeGame;
+
+/**
+ * Loopback load generator for {@link GameServer}. Each client thread keeps a batch of games open on
+ * a single connection and plays random legal moves in all of them at once, pipelining one frame
+ * per game and timing the round trip of every batch.
+ *
+ * Usage: {@code LoadGenerator [clients] [gamesPerClient] [seconds]}
+ */
+public final class LoadGenerator {
+
+    private final int port;
+    private final int clients;
+    private final int gamesPerClient;
+    private final LatencyHistogram roundTrips = new LatencyHistogram();
+    private final AtomicLong moves = new AtomicLong();
+    private final AtomicLong gamesFinished = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public LoadGenerator(int port, int clients, int gamesPerClient) {
+        this.port = port;
+        this.clients = clients;
+        this.gamesPerClient = gamesPerClient;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int gamesPerClient = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        GameSessionManager sessions = new GameSessionManager(new PositionSolver(), 30, TimeUnit.SECONDS);
+        long start = System.nanoTime();
+        int warmed = sessions.warmUp(Runtime.getRuntime().availableProcessors());
+        System.out.println("Warmed up " + warmed + " positions in "
+                + (System.nanoTime() - start) / 1000000 + "ms");
+        GameServer server = new GameServer(sessions, 1, TimeUnit.SECONDS);
+        server.start(0);
+        try {
+            LoadGenerator generator = new LoadGenerator(server.getPort(), clients, gamesPerClient);
+            generator.run(seconds, TimeUnit.SECONDS);
+            System.out.println(generator);
+            System.out.println(server.getMetrics());
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Hammers the server until the given duration has passed, blocking until every client is done.
+     */
+    public void run(long duration, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(duration);
+        final CountDownLatch done = new CountDownLatch(clients);
+        for (int i = 0; i < clients; i++) {
+            final long seed = i;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        drive(deadline, new Random(seed));
+                    } catch (IOException e) {
+                        failures.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "LoadGenerator-" + i).start();
+        }
+        done.await();
+    }
+
+    private void drive(long deadline, Random random) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(InetAddress.getByName(null), port));
+        try {
+            channel.socket().setTcpNoDelay(true);
+            // Restarting a game takes two frames (close + new)
+            ByteBuffer out = ByteBuffer.allocate(Protocol.FRAME_SIZE * gamesPerClient * 2);
+            ByteBuffer in = ByteBuffer.allocate(Protocol.FRAME_SIZE * gamesPerClient * 2);
+            int[] gameIds = new int[gamesPerClient];
+            int[] boards = new int[gamesPerClient];
+
+            // Open the first batch of games, letting the CPU go first in half of them
+            for (int i = 0; i < gamesPerClient; i++) {
+                Protocol.writeRequest(out, 0, Protocol.OP_NEW, i % 2);
+            }
+            exchange(channel, out, in);
+            for (int i = 0; i < gamesPerClient; i++) {
+                gameIds[i] = in.getInt();
+                in.get();
+                byte cpuCell = in.get();
+                in.getShort();
+                boards[i] = PackedBoard.EMPTY;
+                if (cpuCell != Protocol.NO_CELL) {
+                    boards[i] = PackedBoard.play(PackedBoard.withToMove(boards[i], TicTacToeGame.PLAYER_TWO), cpuCell);
+                }
+            }
+
+            while (System.nanoTime() < deadline) {
+                out.clear();
+                for (int i = 0; i < gamesPerClient; i++) {
+                    int move = randomMove(boards[i], random);
+                    boards[i] = PackedBoard.play(boards[i], move);
+                    Protocol.writeRequest(out, gameIds[i], Protocol.OP_MOVE, move);
+                }
+                exchange(channel, out, in);
+
+                // Finished games get replaced, so we need a second round trip for those
+                out.clear();
+                int restarts = 0;
+                for (int i = 0; i < gamesPerClient; i++) {
+                    in.getInt();
+                    byte status = in.get();
+                    byte cpuCell = in.get();
+                    byte state = in.get();
+                    in.get();
+                    moves.incrementAndGet();
+                    if (status != Protocol.STATUS_OK) {
+                        failures.incrementAndGet();
+                    }
+                    if (cpuCell != Protocol.NO_CELL) {
+                        boards[i] = PackedBoard.play(boards[i], cpuCell);
+                    }
+                    if (status != Protocol.STATUS_OK || state != TicTacToeGame.CONTINUE) {
+                        gamesFinished.incrementAndGet();
+                        Protocol.writeRequest(out, gameIds[i], Protocol.OP_CLOSE, 0);
+                        Protocol.writeRequest(out, 0, Protocol.OP_NEW, 0);
+                        gameIds[i] = -1 - i;   // Placeholder until the new id comes back
+                        restarts++;
+                    }
+                }
+                if (restarts > 0) {
+                    exchange(channel, out, in);
+                    for (int i = 0; i < gamesPerClient; i++) {
+                        if (gameIds[i] == -1 - i) {
+                            in.position(in.position() + Protocol.FRAME_SIZE);  // Close ack
+                            gameIds[i] = in.getInt();
+                            in.position(in.position() + Protocol.FRAME_SIZE - 4);
+                            boards[i] = PackedBoard.EMPTY;
+                        }
+                    }
+                }
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Sends everything in {@code out} and blocks until the same number of response frames are in
+     * {@code in}, which is left flipped and ready to read.
+     */
+    private void exchange(SocketChannel channel, ByteBuffer out, ByteBuffer in) throws IOException {
+        long start = System.nanoTime();
+        out.flip();
+        int expected = out.remaining();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        in.clear();
+        in.limit(expected);
+        while (in.hasRemaining()) {
+            if (channel.read(in) == -1) {
+                throw new EOFException("Server closed the connection");
+            }
+        }
+        in.flip();
+        roundTrips.record(System.nanoTime() - start);
+    }
+
+    private static int randomMove(int board, Random random) {
+        int empty = PackedBoard.emptyMask(board);
+        int pick = random.nextInt(Integer.bitCount(empty));
+        for (int i = 0; i < PackedBoard.CELLS; i++) {
+            if ((empty & (1 << i)) != 0 && pick-- == 0) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("No moves left in " + board);
+    }
+
+    public long moves() {
+        return moves.get();
+    }
+
+    public long gamesFinished() {
+        return gamesFinished.get();
+    }
+
+    public long failures() {
+        return failures.get();
+    }
+
+    public LatencyHistogram roundTrips() {
+        return roundTrips;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadGenerator{clients=" + clients
+                + ", concurrentGames=" + clients * gamesPerClient
+                + ", moves=" + moves()
+                + ", gamesFinished=" + gamesFinished()
+                + ", failures=" + failures()
+                + ", batchRoundTrips={" + roundTrips + "}"
+                + "}";
+    }
+}
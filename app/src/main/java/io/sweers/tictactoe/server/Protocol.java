@@ -0,0 +1,52 @@
+package io.sweers.tictactoe.server;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Wire format spoken by {@link GameServer}. Every request and every response is a fixed 8 byte
+ * frame, so there's no length prefix to parse and a connection can pipeline as many as it likes.
+ *
+ * <pre>
+ * request:  [game id: int][op: byte][cell: byte][reserved: short]
+ * response: [game id: int][status: byte][cpu cell: byte][game state: byte][reserved: byte]
+ * </pre>
+ *
+ * For {@link #OP_NEW} the game id is ignored and the cell byte is 1 if the CPU should go first.
+ * Responses to it carry the newly assigned id.
+ */
+public final class Protocol {
+
+    public static final int FRAME_SIZE = 8;
+
+    public static final byte OP_NEW = 0;
+    public static final byte OP_MOVE = 1;
+    public static final byte OP_CLOSE = 2;
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_UNKNOWN_GAME = 1;
+    public static final byte STATUS_ILLEGAL_MOVE = 2;
+    public static final byte STATUS_GAME_OVER = 3;
+    public static final byte STATUS_BAD_REQUEST = 4;
+
+    /** Sent in the cpu cell slot when the CPU didn't move. */
+    public static final byte NO_CELL = -1;
+
+    private Protocol() {
+        throw new AssertionError("No instances");
+    }
+
+    public static void writeRequest(ByteBuffer buffer, int gameId, byte op, int cell) {
+        buffer.putInt(gameId)
+                .put(op)
+                .put((byte) cell)
+                .putShort((short) 0);
+    }
+
+    public static void writeResponse(ByteBuffer buffer, int gameId, byte status, int cpuCell, int gameState) {
+        buffer.putInt(gameId)
+                .put(status)
+                .put((byte) cpuCell)
+                .put((byte) gameState)
+                .put((byte) 0);
+    }
+}
@@ -0,0 +1,63 @@
+package io.sweers.tictactoe.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.sweers.tictactoe.LatencyHistogram;
+
+/**
+ * Counters exposed by {@link GameServer}. Latency here is the time between a request frame being
+ * fully read and its response being queued, i.e. time spent inside the server.
+ */
+public final class ServerMetrics {
+
+    final LatencyHistogram latency = new LatencyHistogram();
+    final AtomicLong requests = new AtomicLong();
+    final AtomicLong errors = new AtomicLong();
+    final AtomicLong connections = new AtomicLong();
+    final AtomicLong evictions = new AtomicLong();
+    private volatile long startNanos = System.nanoTime();
+
+    public LatencyHistogram latency() {
+        return latency;
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    public long errors() {
+        return errors.get();
+    }
+
+    public long connections() {
+        return connections.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    public double requestsPerSecond() {
+        long elapsed = System.nanoTime() - startNanos;
+        return elapsed <= 0 ? 0 : requests.get() * 1e9 / elapsed;
+    }
+
+    public void reset() {
+        latency.reset();
+        requests.set(0);
+        errors.set(0);
+        evictions.set(0);
+        startNanos = System.nanoTime();
+    }
+
+    @Override
+    public String toString() {
+        return "ServerMetrics{requests=" + requests()
+                + ", errors=" + errors()
+                + ", connections=" + connections()
+                + ", evictions=" + evictions()
+                + ", throughput=" + (long) requestsPerSecond() + "/s"
+                + ", latency={" + latency + "}"
+                + "}";
+    }
+}
@@ -0,0 +1,73 @@
+package io.sweers.tictactoe;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class BatchEvaluatorTest {
+
+    @Test
+    public void matchesSolvingOneByOne() throws InterruptedException {
+        int[] reachable = new int[PackedBoard.INDEX_COUNT];
+        boolean[] seen = new boolean[PackedBoard.INDEX_COUNT];
+        int count = collect(PackedBoard.withToMove(PackedBoard.EMPTY, TicTacToeGame.PLAYER_ONE), seen, reachable, 0);
+        count = collect(PackedBoard.withToMove(PackedBoard.EMPTY, TicTacToeGame.PLAYER_TWO), seen, reachable, count);
+
+        // Repeats and a shuffle, so chunks race each other to the same positions
+        Random random = new Random(0);
+        int[] positions = new int[count * 3];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = reachable[random.nextInt(count)];
+        }
+        int[] scores = new int[positions.length];
+        int[] moves = new int[positions.length];
+        Arrays.fill(moves, -1);
+
+        BatchEvaluator evaluator = new BatchEvaluator(new PositionSolver(new SolvedPositionCache()), 4);
+        try {
+            evaluator.evaluate(positions, scores, moves);
+        } finally {
+            evaluator.shutdown();
+        }
+
+        PositionSolver solver = new PositionSolver(new SolvedPositionCache());
+        for (int i = 0; i < positions.length; i++) {
+            int result = solver.solve(positions[i]);
+            assertEquals("Score of " + positions[i], PositionSolver.score(result), scores[i]);
+            assertEquals("Move for " + positions[i], PositionSolver.move(result), moves[i]);
+        }
+    }
+
+    @Test
+    public void smallBatchesRunOnTheCallingThread() throws InterruptedException {
+        int[] positions = {PackedBoard.EMPTY, PackedBoard.play(PackedBoard.EMPTY, 4)};
+        int[] scores = new int[2];
+        int[] moves = new int[2];
+        BatchEvaluator evaluator = new BatchEvaluator(new PositionSolver(new SolvedPositionCache()), 2);
+        evaluator.evaluate(positions, scores, moves);
+        evaluator.shutdown();
+        assertEquals(0, scores[0]);
+        assertEquals(0, scores[1]);
+    }
+
+    private static int collect(int board, boolean[] seen, int[] out, int count) {
+        int index = PackedBoard.index(board);
+        if (seen[index]) {
+            return count;
+        }
+        seen[index] = true;
+        out[count++] = board;
+        if (PackedBoard.gameState(board) == TicTacToeGame.CONTINUE) {
+            int empty = PackedBoard.emptyMask(board);
+            for (int i = 0; i < PackedBoard.CELLS; i++) {
+                if ((empty & (1 << i)) != 0) {
+                    count = collect(PackedBoard.play(board, i), seen, out, count);
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,120 @@
+package io.sweers.tictactoe;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EndgameTableTest {
+
+    @Test
+    public void agreesWithExhaustiveSearch() {
+        Random random = new Random(0);
+        BoardSearch search = new BoardSearch();
+        // Anything deeper on 4x4 takes seconds just to build
+        int[][] variants = {{3, 3, 9}, {4, 4, 2}};
+        for (int[] variant : variants) {
+            EndgameTable table = EndgameTable.build(variant[0], variant[1], variant[2]);
+            int checked = 0;
+            for (int i = 0; i < 200; i++) {
+                Board board = new Board(variant[0], variant[1]);
+                int plies = board.cellCount() - variant[2] + random.nextInt(variant[2]);
+                for (int ply = 0; ply < plies && !board.isOver(); ply++) {
+                    board.play(RandomEngine.randomMove(board, random));
+                }
+                if (board.isOver() || !table.covers(board)) {
+                    continue;
+                }
+                checked++;
+                search.bestMove(board, board.cellCount());
+                int score = search.lastScore();
+                int expected = score > 0 ? EndgameTable.WIN : score < 0 ? EndgameTable.LOSS : EndgameTable.DRAW;
+                assertEquals("Value of\n" + board, expected, table.value(board));
+
+                // The table's move has to keep the result
+                int move = table.bestMove(board);
+                board.play(move);
+                int after;
+                if (board.isOver()) {
+                    after = board.winner() != Board.EMPTY ? 1 : 0;
+                } else {
+                    search.bestMove(board, board.cellCount());
+                    after = -search.lastScore();
+                }
+                board.undo();
+                assertEquals("After " + move + " on\n" + board, Integer.signum(score), Integer.signum(after));
+            }
+            assertTrue(checked > 20);
+        }
+    }
+
+    @Test
+    public void onlyCoversMatchingBoardsWithFewEnoughEmptyCells() {
+        EndgameTable table = EndgameTable.build(3, 3, 5);
+        Board board = new Board(3, 3);
+        assertEquals(EndgameTable.UNKNOWN, table.value(board));
+        assertEquals(-1, table.bestMove(board));
+        for (int cell : new int[]{4, 0, 8, 2}) {
+            board.play(cell);
+        }
+        assertTrue(table.covers(board));
+        // X has to block at 1, after which O has to block at 7
+        assertEquals(EndgameTable.DRAW, table.value(board));
+        assertEquals(1, table.bestMove(board));
+        assertTrue(!table.covers(new Board(4, 3)));
+    }
+
+    @Test
+    public void mappedTablesMatchTheOneThatWasWritten() throws IOException {
+        EndgameTable built = EndgameTable.build(3, 3, 6);
+        File file = File.createTempFile("endgame", ".bin");
+        try {
+            built.write(file);
+            EndgameTable mapped = EndgameTable.map(file);
+            assertEquals(3, mapped.size());
+            assertEquals(3, mapped.winLength());
+            assertEquals(6, mapped.maxEmpty());
+            assertEquals(built.positionCount(), mapped.positionCount());
+
+            Random random = new Random(1);
+            for (int i = 0; i < 200; i++) {
+                Board board = new Board(3, 3);
+                int plies = 3 + random.nextInt(7);
+                for (int ply = 0; ply < plies && !board.isOver(); ply++) {
+                    board.play(RandomEngine.randomMove(board, random));
+                }
+                assertEquals(board.toString(), built.value(board), mapped.value(board));
+                assertEquals(board.toString(), built.bestMove(board), mapped.bestMove(board));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void mappingSomethingElseFails() throws IOException {
+        File file = File.createTempFile("endgame", ".bin");
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                out.write(new byte[64]);
+            } finally {
+                out.close();
+            }
+            try {
+                EndgameTable.map(file);
+                fail("Mapped a file of zeroes");
+            } catch (IOException expected) {
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package io.sweers.tictactoe;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.observers.TestSubscriber;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EngineExecutorTest {
+
+    @Test
+    public void newerRequestsReplaceWaitingOnes() throws InterruptedException {
+        EngineExecutor executor = new EngineExecutor(4, Executors.defaultThreadFactory());
+        CountDownLatch release = occupy(executor);
+        AtomicInteger runs = new AtomicInteger();
+
+        TestSubscriber<Integer> first = submit(executor, "game", 1, runs);
+        TestSubscriber<Integer> second = submit(executor, "game", 2, runs);
+        TestSubscriber<Integer> other = submit(executor, "other game", 3, runs);
+        TestSubscriber<Integer> third = submit(executor, "game", 4, runs);
+        assertEquals(2, executor.queueDepth());
+        release.countDown();
+
+        // Replaced ones finish straight away without emitting
+        assertEquals(1, first.getOnCompletedEvents().size());
+        assertEquals(1, second.getOnCompletedEvents().size());
+        assertTrue(first.getOnNextEvents().isEmpty());
+        assertTrue(second.getOnNextEvents().isEmpty());
+
+        third.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        other.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList(4), third.getOnNextEvents());
+        assertEquals(Arrays.asList(3), other.getOnNextEvents());
+        assertEquals(2, runs.get());
+        assertEquals(2, executor.coalesced());
+        assertEquals(5, executor.submitted());
+        assertEquals(0, executor.queueDepth());
+        assertEquals(3, executor.waitTimes().count());
+    }
+
+    @Test
+    public void fullQueueRejects() throws InterruptedException {
+        EngineExecutor executor = new EngineExecutor(2, Executors.defaultThreadFactory());
+        CountDownLatch release = occupy(executor);
+        AtomicInteger runs = new AtomicInteger();
+
+        submit(executor, "a", 1, runs);
+        submit(executor, "b", 2, runs);
+        TestSubscriber<Integer> rejected = submit(executor, "c", 3, runs);
+        assertEquals(1, rejected.getOnErrorEvents().size());
+        assertTrue(rejected.getOnErrorEvents().get(0) instanceof RejectedExecutionException);
+        assertEquals(1, executor.rejected());
+
+        // Replacing a waiting request doesn't need any more room
+        TestSubscriber<Integer> replacement = submit(executor, "a", 4, runs);
+        assertTrue(replacement.getOnErrorEvents().isEmpty());
+        assertEquals(2, executor.maxQueueDepth());
+        release.countDown();
+        replacement.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        replacement.assertNoErrors();
+        assertEquals(Arrays.asList(4), replacement.getOnNextEvents());
+    }
+
+    @Test
+    public void unsubscribingTakesRequestsOutOfTheQueue() throws InterruptedException {
+        EngineExecutor executor = new EngineExecutor(4, Executors.defaultThreadFactory());
+        CountDownLatch release = occupy(executor);
+        AtomicInteger runs = new AtomicInteger();
+
+        TestSubscriber<Integer> cancelled = submit(executor, "a", 1, runs);
+        TestSubscriber<Integer> kept = submit(executor, "b", 2, runs);
+        cancelled.unsubscribe();
+        assertEquals(1, executor.queueDepth());
+        release.countDown();
+
+        kept.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        assertEquals(1, runs.get());
+        assertTrue(cancelled.getOnNextEvents().isEmpty());
+    }
+
+    @Test
+    public void survivesRequestsThatBlowUp() throws InterruptedException {
+        EngineExecutor executor = new EngineExecutor(4, Executors.defaultThreadFactory());
+        CountDownLatch release = occupy(executor);
+        AtomicInteger runs = new AtomicInteger();
+
+        // Fails, and then so does the subscriber that's told about it
+        Observable.create(new Observable.OnSubscribe<Integer>() {
+            @Override
+            public void call(Subscriber<? super Integer> subscriber) {
+                throw new AssertionError("Search bug");
+            }
+        }).compose(executor.<Integer>schedule("broken")).subscribe(new TestSubscriber<Integer>() {
+            @Override
+            public void onError(Throwable e) {
+                throw new IllegalStateException("Error handler bug", e);
+            }
+        });
+        TestSubscriber<Integer> after = submit(executor, "fine", 1, runs);
+        release.countDown();
+
+        after.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        after.assertNoErrors();
+        assertEquals(Arrays.asList(1), after.getOnNextEvents());
+        assertEquals(1, executor.failures());
+
+        // And it keeps going after that
+        TestSubscriber<Integer> later = submit(executor, "fine", 2, runs);
+        later.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList(2), later.getOnNextEvents());
+    }
+
+    /**
+     * Ties up the executor's thread until the returned latch is counted down, so that requests
+     * pile up behind it.
+     */
+    private static CountDownLatch occupy(EngineExecutor executor) throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Observable.create(new Observable.OnSubscribe<Object>() {
+            @Override
+            public void call(Subscriber<? super Object> subscriber) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                subscriber.onCompleted();
+            }
+        }).compose(executor.schedule("blocker")).subscribe(new TestSubscriber<Object>());
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private static TestSubscriber<Integer> submit(EngineExecutor executor, Object key, final int value,
+            final AtomicInteger runs) {
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        Observable.create(new Observable.OnSubscribe<Integer>() {
+            @Override
+            public void call(Subscriber<? super Integer> subscriber) {
+                runs.incrementAndGet();
+                subscriber.onNext(value);
+                subscriber.onCompleted();
+            }
+        }).compose(executor.<Integer>schedule(key)).subscribe(subscriber);
+        return subscriber;
+    }
+}
@@ -0,0 +1,200 @@
+package io.sweers.tictactoe;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import rx.functions.Action1;
+
+/**
+ * Replays recorded positions through {@link TicTacToeGame}'s CPU and records what it did: the move
+ * and minimax score it picked, how many positions it visited, how many of those came out of the
+ * score cache and how long it took. {@link EngineTraceTest} checks the engine against a golden trace
+ * of these in {@code src/test/resources}, so both correctness and performance regressions show up.
+ *
+ * Each position is a move sequence, replayed from an empty board so that it's the CPU's turn. Runs
+ * are reproducible: every position gets its own seeded {@link Random}, and the score cache is
+ * cleared before each one.
+ *
+ * Run {@link #main(String[])} to record a new golden trace after an intentional engine change.
+ */
+public final class EngineTrace {
+
+    public static final String GOLDEN = "engine_trace.golden";
+
+    // Best of a few runs, so a stray GC pause doesn't end up in the baseline
+    private static final int REPEATS = 3;
+
+    private EngineTrace() {
+        throw new AssertionError("No instances");
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: EngineTrace <output file> [positions]");
+            System.exit(1);
+        }
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        List<Entry> entries = runAll(corpus(count, 0));
+        Writer out = new FileWriter(new File(args[0]));
+        try {
+            write(entries, out);
+        } finally {
+            out.close();
+        }
+        System.out.println("Recorded " + entries.size() + " positions");
+    }
+
+    /**
+     * Collects distinct positions with the CPU to move from seeded random games.
+     */
+    public static List<int[]> corpus(int count, long seed) {
+        Random random = new Random(seed);
+        List<int[]> corpus = new ArrayList<>();
+        List<String> seen = new ArrayList<>();
+        int attempts = 0;
+        while (corpus.size() < count && attempts++ < count * 100) {
+            // CPU to move means an odd number of moves if the human went first, even otherwise
+            boolean humanFirst = random.nextBoolean();
+            int length = random.nextInt(3) * 2 + (humanFirst ? 1 : 2);
+            int[] moves = new int[length];
+            Board board = new Board(3, 3);
+            for (int i = 0; i < length && !board.isOver(); i++) {
+                moves[i] = RandomEngine.randomMove(board, random);
+                board.play(moves[i]);
+            }
+            String key = board.toString() + length % 2;
+            if (!board.isOver() && !seen.contains(key)) {
+                seen.add(key);
+                corpus.add(moves);
+            }
+        }
+        return corpus;
+    }
+
+    /**
+     * Runs every position, seeding position i with i. The whole corpus is run once beforehand to
+     * warm up the JIT, otherwise the first few positions would be timing the interpreter.
+     */
+    public static List<Entry> runAll(List<int[]> corpus) {
+        for (int i = 0; i < corpus.size(); i++) {
+            run(corpus.get(i), i);
+        }
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < corpus.size(); i++) {
+            entries.add(run(corpus.get(i), i));
+        }
+        return entries;
+    }
+
+    /**
+     * Asks a fresh game seeded with {@code seed} for its move after the given sequence.
+     */
+    public static Entry run(int[] moves, long seed) {
+        Entry entry = null;
+        for (int i = 0; i < REPEATS; i++) {
+            TicTacToeGame game = new TicTacToeGame(new Random(seed));
+            game.setCurrentPlayer(moves.length % 2 == 1 ? TicTacToeGame.PLAYER_ONE : TicTacToeGame.PLAYER_TWO);
+            for (int move : moves) {
+                game.makeMove(move);
+            }
+            TicTacToeGame.clearScoreCache();
+            game.resetCounters();
+
+            long start = System.nanoTime();
+            game.getCpuMove().subscribe(new Action1<Object>() {
+                @Override
+                public void call(Object o) {
+                }
+            });
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+
+            if (entry == null || micros < entry.micros) {
+                entry = new Entry(moves, game.getLastCpuScore(), game.getNextCpuMove(),
+                        game.getNodeCount(), game.getCacheHitCount(), micros);
+            }
+        }
+        return entry;
+    }
+
+    public static List<Entry> read(InputStream stream) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+        List<Entry> entries = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] columns = line.split("\t");
+            if (columns.length != 6) {
+                throw new IOException("Bad trace line: " + line);
+            }
+            String[] cells = columns[0].split(",");
+            int[] moves = new int[cells.length];
+            for (int i = 0; i < cells.length; i++) {
+                moves[i] = Integer.parseInt(cells[i]);
+            }
+            entries.add(new Entry(moves,
+                    Integer.parseInt(columns[1]),
+                    Integer.parseInt(columns[2]),
+                    Long.parseLong(columns[3]),
+                    Long.parseLong(columns[4]),
+                    Long.parseLong(columns[5])));
+        }
+        return entries;
+    }
+
+    public static void write(List<Entry> entries, Writer writer) {
+        PrintWriter out = new PrintWriter(writer);
+        out.println("# Recorded by EngineTrace. Position i is replayed with new Random(i).");
+        out.println("# moves\tscore\tmove\tnodes\tcache hits\tmicros");
+        for (Entry entry : entries) {
+            StringBuilder moves = new StringBuilder();
+            for (int i = 0; i < entry.moves.length; i++) {
+                if (i > 0) {
+                    moves.append(',');
+                }
+                moves.append(entry.moves[i]);
+            }
+            out.println(moves + "\t" + entry.score + "\t" + entry.move + "\t" + entry.nodes
+                    + "\t" + entry.cacheHits + "\t" + entry.micros);
+        }
+        out.flush();
+    }
+
+    public static final class Entry {
+        final int[] moves;
+        final int score;
+        final int move;
+        final long nodes;
+        final long cacheHits;
+        final long micros;
+
+        Entry(int[] moves, int score, int move, long nodes, long cacheHits, long micros) {
+            this.moves = moves;
+            this.score = score;
+            this.move = move;
+            this.nodes = nodes;
+            this.cacheHits = cacheHits;
+            this.micros = micros;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder("[");
+            for (int i = 0; i < moves.length; i++) {
+                builder.append(i > 0 ? "," : "").append(moves[i]);
+            }
+            return builder.append("]").toString();
+        }
+    }
+}
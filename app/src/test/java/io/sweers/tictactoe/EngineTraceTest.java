@@ -0,0 +1,58 @@
+package io.sweers.tictactoe;
+
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays the golden {@link EngineTrace}. Moves and scores have to match exactly. Node counts may
+ * not grow, and cache hits may not shrink, by more than {@code -DengineTrace.countTolerance}
+ * (default 0, as a fraction). Total wall time may not grow by more than
+ * {@code -DengineTrace.timeTolerance} (default 2, so up to 3x, since machines vary).
+ */
+public class EngineTraceTest {
+    @Test
+    public void matchesGoldenTrace() throws Exception {
+        double countTolerance = Double.parseDouble(System.getProperty("engineTrace.countTolerance", "0"));
+        double timeTolerance = Double.parseDouble(System.getProperty("engineTrace.timeTolerance", "2"));
+
+        InputStream stream = getClass().getClassLoader().getResourceAsStream(EngineTrace.GOLDEN);
+        assertNotNull("Missing " + EngineTrace.GOLDEN, stream);
+        List<EngineTrace.Entry> golden;
+        try {
+            golden = EngineTrace.read(stream);
+        } finally {
+            stream.close();
+        }
+        assertTrue(!golden.isEmpty());
+
+        List<int[]> corpus = new ArrayList<>();
+        for (EngineTrace.Entry entry : golden) {
+            corpus.add(entry.moves);
+        }
+        List<EngineTrace.Entry> trace = EngineTrace.runAll(corpus);
+
+        long expectedMicros = 0;
+        long actualMicros = 0;
+        for (int i = 0; i < golden.size(); i++) {
+            EngineTrace.Entry expected = golden.get(i);
+            EngineTrace.Entry actual = trace.get(i);
+            assertEquals("Score after " + expected, expected.score, actual.score);
+            assertEquals("Move after " + expected, expected.move, actual.move);
+            assertTrue("Nodes after " + expected + ": " + actual.nodes + " vs " + expected.nodes,
+                    actual.nodes <= expected.nodes * (1 + countTolerance));
+            assertTrue("Cache hits after " + expected + ": " + actual.cacheHits + " vs " + expected.cacheHits,
+                    actual.cacheHits >= expected.cacheHits * (1 - countTolerance));
+            expectedMicros += expected.micros;
+            actualMicros += actual.micros;
+        }
+        assertTrue("Took " + actualMicros + "us vs " + expectedMicros + "us",
+                actualMicros <= expectedMicros * (1 + timeTolerance));
+    }
+}
@@ -0,0 +1,105 @@
+package io.sweers.tictactoe;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GameReplayTest {
+
+    @Test
+    public void seeksMatchReplayingFromScratch() {
+        Random random = new Random(0);
+        int[] moves = randomGame(15, 15, random);
+        assertTrue(moves.length > GameReplay.CHECKPOINT_INTERVAL * 4);
+        GameReplay replay = new GameReplay(15, 15, Board.ONE, moves);
+        int cellCount = 15 * 15;
+        int[] changed = new int[cellCount];
+        byte[] before = new byte[cellCount];
+
+        for (int i = 0; i < 500; i++) {
+            // Mix short hops with long jumps, so both ways of seeking get covered
+            int target = random.nextBoolean()
+                    ? random.nextInt(moves.length + 1)
+                    : Math.max(0, Math.min(moves.length, replay.ply() + random.nextInt(9) - 4));
+            for (int cell = 0; cell < cellCount; cell++) {
+                before[cell] = replay.get(cell);
+            }
+            int count = replay.seek(target, changed);
+            assertEquals(target, replay.ply());
+
+            Board expected = replay.boardAt(target);
+            boolean[] reported = new boolean[cellCount];
+            for (int j = 0; j < count; j++) {
+                reported[changed[j]] = true;
+            }
+            int differences = 0;
+            for (int cell = 0; cell < cellCount; cell++) {
+                assertEquals("Cell " + cell + " at ply " + target, expected.get(cell), replay.get(cell));
+                boolean different = before[cell] != expected.get(cell);
+                assertEquals("Cell " + cell + " reported at ply " + target, different, reported[cell]);
+                if (different) {
+                    differences++;
+                }
+            }
+            assertEquals(differences, count);
+        }
+    }
+
+    @Test
+    public void evaluationsAreCachedAndExactOnSmallBoards() {
+        // X takes the top row while O plays elsewhere
+        GameReplay replay = new GameReplay(3, 3, Board.ONE, new int[]{0, 4, 1, 8, 2});
+        assertEquals(GameReplay.NOT_EVALUATED, replay.cachedEvaluation(5));
+        assertEquals(BoardSearch.WIN_SCORE, replay.evaluate(5));
+        assertEquals(BoardSearch.WIN_SCORE, replay.cachedEvaluation(5));
+
+        // The empty board is a draw, and after O's 8 X has a forced win
+        assertEquals(0, replay.evaluate(0));
+        assertTrue(replay.evaluate(4) > BoardSearch.WIN_SCORE / 2);
+        assertEquals(GameReplay.NOT_EVALUATED, replay.cachedEvaluation(3));
+    }
+
+    @Test
+    public void evaluationsFromSeveralThreadsAgree() throws InterruptedException {
+        Random random = new Random(1);
+        int[] moves = randomGame(3, 3, random);
+        GameReplay expected = new GameReplay(3, 3, Board.ONE, moves);
+        final GameReplay replay = new GameReplay(3, 3, Board.ONE, moves);
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    int plies = replay.moveCount() + 1;
+                    for (int i = 0; i < plies; i++) {
+                        replay.evaluate((i + offset) % plies);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int ply = 0; ply <= moves.length; ply++) {
+            assertEquals("Ply " + ply, expected.evaluate(ply), replay.cachedEvaluation(ply));
+        }
+    }
+
+    private static int[] randomGame(int size, int winLength, Random random) {
+        Board board = new Board(size, winLength);
+        while (!board.isOver()) {
+            board.play(RandomEngine.randomMove(board, random));
+        }
+        int[] moves = new int[board.moveCount()];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = board.moveAt(i);
+        }
+        return moves;
+    }
+}
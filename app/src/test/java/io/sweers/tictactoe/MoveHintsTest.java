@@ -0,0 +1,56 @@
+package io.sweers.tictactoe;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MoveHintsTest {
+
+    @Test
+    public void hintsMatchSearchingEachMoveFromScratch() {
+        Random random = new Random(0);
+        // Shared between positions, like it is across turns in a game
+        BoardSearch search = new BoardSearch();
+        for (int i = 0; i < 40; i++) {
+            Board board = new Board(3, 3);
+            int plies = random.nextInt(6);
+            for (int ply = 0; ply < plies && !board.isOver(); ply++) {
+                board.play(RandomEngine.randomMove(board, random));
+            }
+            if (board.isOver()) {
+                continue;
+            }
+            String before = board.toString();
+
+            List<MoveHints.Hint> hints = MoveHints.stream(board, search, board.cellCount())
+                    .toList()
+                    .toBlocking()
+                    .single();
+            assertEquals(board.emptyCount(), hints.size());
+            assertEquals(before, board.toString());
+
+            for (MoveHints.Hint hint : hints) {
+                assertTrue(board.isLegal(hint.cell));
+                assertEquals("Cell " + hint.cell + " on\n" + board, expectedScore(board, hint.cell), hint.score);
+                assertTrue(hint.value() >= -1 && hint.value() <= 1);
+            }
+        }
+    }
+
+    private static int expectedScore(Board board, int cell) {
+        Board after = board.copy();
+        after.play(cell);
+        if (after.isOver()) {
+            return after.winner() != Board.EMPTY ? BoardSearch.WIN_SCORE - 1 : 0;
+        }
+        BoardSearch fresh = new BoardSearch();
+        fresh.bestMove(after, after.cellCount());
+        // Mates are a ply further away when counted from before the move
+        int score = -fresh.lastScore();
+        return score > BoardSearch.WIN_SCORE / 2 ? score - 1 : score < -BoardSearch.WIN_SCORE / 2 ? score + 1 : score;
+    }
+}
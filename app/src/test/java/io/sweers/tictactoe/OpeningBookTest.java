@@ -0,0 +1,167 @@
+package io.sweers.tictactoe;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OpeningBookTest {
+
+    // X takes the top row, and X opens in the centre and loses the top row to O
+    private static final int[] CORNER_WIN = {0, 3, 1, 4, 2};
+    private static final int[] CENTRE_LOSS = {4, 0, 8, 1, 5, 2};
+
+    @Test
+    public void looksUpKnownPositionsOnly() {
+        OpeningBook book = OpeningBook.seed(3, 3, 2);
+        assertEquals(2, book.maxPly());
+        Random random = new Random(0);
+
+        Board board = new Board(3, 3);
+        int move = book.chooseMove(board, random);
+        assertTrue(move >= 0 && move < 9);
+        assertEquals(0, board.moveCount());
+
+        board.play(4);
+        move = book.chooseMove(board, random);
+        assertTrue(move >= 0 && move < 9 && move != 4);
+
+        // Past the book's depth, or a book that's never seen anything
+        board.play(move);
+        assertEquals(-1, book.chooseMove(board, random));
+        assertEquals(-1, new OpeningBook(4).chooseMove(new Board(3, 3), random));
+    }
+
+    @Test
+    public void learnsFromRecordedGames() {
+        OpeningBook book = new OpeningBook(4);
+        for (int i = 0; i < 20; i++) {
+            book.recordGame(game(CORNER_WIN));
+            book.recordGame(game(CENTRE_LOSS));
+        }
+        assertTrue(book.size() > 0);
+
+        int[] picks = new int[9];
+        Random random = new Random(0);
+        for (int i = 0; i < 1000; i++) {
+            picks[book.chooseMove(new Board(3, 3), random)]++;
+        }
+        assertTrue(Arrays.toString(picks), picks[0] > 500);
+        assertTrue(Arrays.toString(picks), picks[4] < 20);
+    }
+
+    @Test
+    public void loadsLazilyAndSavesWhatItLoaded() throws IOException {
+        OpeningBook original = OpeningBook.seed(3, 3, 3);
+        original.recordGame(game(CORNER_WIN));
+        final byte[] saved = save(original);
+
+        final AtomicInteger opens = new AtomicInteger();
+        OpeningBook book = new OpeningBook(1, new OpeningBook.Source() {
+            @Override
+            public InputStream open() {
+                opens.incrementAndGet();
+                return new ByteArrayInputStream(saved);
+            }
+        });
+        assertEquals(0, opens.get());
+        assertEquals(0, book.byteSize());
+
+        assertEquals(3, book.maxPly());
+        assertEquals(1, opens.get());
+        assertEquals(original.size(), book.size());
+        assertTrue(Arrays.equals(saved, save(book)));
+        for (int ply = 0; ply < 3; ply++) {
+            Board board = game(Arrays.copyOf(CORNER_WIN, ply));
+            assertEquals(original.chooseMove(board, new Random(ply)), book.chooseMove(board, new Random(ply)));
+        }
+
+        // Clean books can be dropped and loaded again, ones with unsaved games can't
+        book.trim(0);
+        assertEquals(0, book.byteSize());
+        assertEquals(original.size(), book.size());
+        assertEquals(2, opens.get());
+        book.recordGame(game(CENTRE_LOSS));
+        book.trim(0);
+        assertTrue(book.byteSize() > 0);
+        assertEquals(2, opens.get());
+    }
+
+    @Test
+    public void unreadableSourceMeansAnEmptyBook() {
+        OpeningBook book = new OpeningBook(4, new OpeningBook.Source() {
+            @Override
+            public InputStream open() {
+                return new ByteArrayInputStream(new byte[]{1, 2, 3});
+            }
+        });
+        assertEquals(0, book.size());
+        assertEquals(-1, book.chooseMove(new Board(3, 3), new Random(0)));
+    }
+
+    @Test
+    public void neverGivesAwayADraw() {
+        OpeningBook book = OpeningBook.seed(3, 3, 4);
+        // Random games teach it all sorts of nonsense, including wins for moves that should lose
+        Random random = new Random(0);
+        for (int i = 0; i < 2000; i++) {
+            Board board = new Board(3, 3);
+            board.setToMove(random.nextBoolean() ? Board.ONE : Board.TWO);
+            while (!board.isOver()) {
+                board.play(RandomEngine.randomMove(board, random));
+            }
+            book.recordGame(board);
+        }
+
+        Board board = new Board(3, 3);
+        checkDrawsHold(book, board, new BoardSearch(), random);
+        board.setToMove(Board.TWO);
+        checkDrawsHold(book, board, new BoardSearch(), random);
+    }
+
+    private static void checkDrawsHold(OpeningBook book, Board board, BoardSearch search, Random random) {
+        if (board.isOver() || board.moveCount() >= book.maxPly()) {
+            return;
+        }
+        search.bestMove(board, board.emptyCount());
+        if (search.lastScore() == 0) {
+            for (int i = 0; i < 20; i++) {
+                int move = book.chooseMove(board, random);
+                if (move == -1) {
+                    break;
+                }
+                assertTrue("Move " + move + " doesn't hold the draw in\n" + board,
+                        search.scoreMove(board, move, board.emptyCount()) >= 0);
+            }
+        }
+        for (int cell = 0; cell < board.cellCount(); cell++) {
+            if (board.get(cell) == Board.EMPTY) {
+                board.play(cell);
+                checkDrawsHold(book, board, search, random);
+                board.undo();
+            }
+        }
+    }
+
+    private static Board game(int[] moves) {
+        Board board = new Board(3, 3);
+        for (int move : moves) {
+            board.play(move);
+        }
+        return board;
+    }
+
+    private static byte[] save(OpeningBook book) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        book.save(out);
+        return out.toByteArray();
+    }
+}
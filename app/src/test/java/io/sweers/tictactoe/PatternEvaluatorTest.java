@@ -0,0 +1,115 @@
+package io.sweers.tictactoe;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PatternEvaluatorTest {
+
+    @Test
+    public void incrementalCountsMatchARescan() {
+        Random random = new Random(0);
+        int[][] variants = {{3, 3}, {7, 4}, {9, 5}, {15, 5}};
+        for (int[] variant : variants) {
+            Board board = new Board(variant[0], variant[1]);
+            PatternEvaluator incremental = new PatternEvaluator(variant[0], variant[1]);
+            PatternEvaluator rescanned = new PatternEvaluator(variant[0], variant[1]);
+            for (int step = 0; step < 2000; step++) {
+                boolean takeBack = board.moveCount() > 0 && (board.isOver() || random.nextInt(3) == 0);
+                if (takeBack) {
+                    int cell = board.lastMove();
+                    byte player = board.get(cell);
+                    board.undo();
+                    incremental.remove(cell, player);
+                } else {
+                    byte player = board.toMove();
+                    int cell = RandomEngine.randomMove(board, random);
+                    board.play(cell);
+                    incremental.add(cell, player);
+                }
+
+                rescanned.reset(board);
+                String where = variant[0] + "x" + variant[0] + " step " + step + "\n" + board;
+                for (byte player = Board.ONE; player <= Board.TWO; player++) {
+                    for (int stones = 0; stones <= variant[1]; stones++) {
+                        assertEquals(where, rescanned.patternCount(player, stones), incremental.patternCount(player, stones));
+                    }
+                    assertEquals(where, rescanned.evaluate(player), incremental.evaluate(player));
+                    assertEquals(where, rescanned.hasOpenWin(player), incremental.hasOpenWin(player));
+                }
+                assertArrayEquals(where, candidates(rescanned, board), candidates(incremental, board));
+            }
+        }
+    }
+
+    @Test
+    public void prunedSearchFindsForcedWins() {
+        // X has an open two on row 4 with room either side, and O is off in the corners. Playing
+        // next to it makes an open three, which O can only block from one end
+        Board board = new Board(9, 4);
+        play(board, 4 * 9 + 3, 0, 4 * 9 + 4, 80);
+        BoardSearch search = new BoardSearch();
+        int move = search.bestMove(board, 4);
+        assertTrue(board.emptyCount() > 4);
+        assertTrue("Score " + search.lastScore(), search.lastScore() > BoardSearch.WIN_SCORE / 2);
+
+        board.play(move);
+        search.bestMove(board, 3);
+        assertTrue("After " + move + ", score " + search.lastScore(), search.lastScore() < -BoardSearch.WIN_SCORE / 2);
+    }
+
+    @Test
+    public void prunedSearchBlocks() {
+        // X has three in a row on row 4, shut off on the left, so O has to take the right end
+        Board board = new Board(9, 4);
+        play(board, 4 * 9 + 2, 4 * 9 + 1, 4 * 9 + 3, 0, 4 * 9 + 4);
+        BoardSearch search = new BoardSearch();
+        assertEquals(4 * 9 + 5, search.bestMove(board, 3));
+
+        // Same again on a bigger board, with the threat running down a diagonal
+        board = new Board(15, 5);
+        play(board, 16 * 3, 16 * 2, 16 * 4, 14, 16 * 5, 15 * 14, 16 * 6);
+        assertEquals(16 * 7, search.bestMove(board, 3));
+    }
+
+    @Test
+    public void searchPicksUpNewlyInstalledWeights() {
+        Board board = new Board(9, 4);
+        play(board, 40, 41, 31);
+        BoardSearch search = new BoardSearch();
+        search.bestMove(board, 1);
+        int before = search.lastScore();
+        assertTrue(before != 0);
+
+        float[] doubled = PatternEvaluator.defaultWeights(4);
+        for (int i = 0; i < doubled.length; i++) {
+            doubled[i] *= 2;
+        }
+        EvalWeights.install(new EvalWeights(9, 4, doubled));
+        try {
+            search.bestMove(board, 1);
+            assertEquals(before * 2, search.lastScore());
+        } finally {
+            EvalWeights.install(new EvalWeights(9, 4, PatternEvaluator.defaultWeights(4)));
+        }
+    }
+
+    private static void play(Board board, int... cells) {
+        for (int cell : cells) {
+            board.play(cell);
+        }
+    }
+
+    private static int[] candidates(PatternEvaluator evaluator, Board board) {
+        int[] out = new int[board.cellCount()];
+        int count = evaluator.candidates(board, out);
+        int[] sorted = Arrays.copyOf(out, count);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+}
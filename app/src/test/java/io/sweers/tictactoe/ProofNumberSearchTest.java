@@ -0,0 +1,77 @@
+package io.sweers.tictactoe;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProofNumberSearchTest {
+
+    private static final long MAX_EXPANSIONS = 10000000;
+
+    @Test
+    public void agreesWithExhaustiveSearch() {
+        Random random = new Random(0);
+        ProofNumberSearch proofSearch = new ProofNumberSearch();
+        BoardSearch search = new BoardSearch();
+        int[][] variants = {{3, 3}, {4, 3}, {4, 4}};
+        for (int[] variant : variants) {
+            for (int i = 0; i < 30; i++) {
+                Board board = new Board(variant[0], variant[1]);
+                int plies = random.nextInt(variant[0] * variant[0] - 4) + 4;
+                for (int ply = 0; ply < plies && !board.isOver(); ply++) {
+                    board.play(RandomEngine.randomMove(board, random));
+                }
+                if (board.isOver()) {
+                    continue;
+                }
+                String before = board.toString();
+
+                int result = proofSearch.solve(board, MAX_EXPANSIONS);
+                search.bestMove(board, board.cellCount());
+                int score = search.lastScore();
+                int expected = score > 0 ? EndgameTable.WIN : score < 0 ? EndgameTable.LOSS : EndgameTable.DRAW;
+                assertEquals("Result for\n" + board, expected, result);
+                assertEquals(before, board.toString());
+                assertTrue(proofSearch.expansions() > 0);
+
+                if (result != EndgameTable.LOSS) {
+                    // The reported move has to keep the result
+                    board.play(proofSearch.bestMove());
+                    int after;
+                    if (board.isOver()) {
+                        after = board.winner() != Board.EMPTY ? 1 : 0;
+                    } else {
+                        search.bestMove(board, board.cellCount());
+                        after = -search.lastScore();
+                    }
+                    board.undo();
+                    assertEquals("After " + proofSearch.bestMove() + " on\n" + board,
+                            Integer.signum(score), Integer.signum(after));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void provesKnownResults() {
+        ProofNumberSearch search = new ProofNumberSearch();
+        assertEquals(EndgameTable.DRAW, search.solve(new Board(3, 3), MAX_EXPANSIONS));
+        assertEquals(EndgameTable.WIN, search.solve(new Board(4, 3), MAX_EXPANSIONS));
+        assertEquals(EndgameTable.WIN, search.solve(new Board(5, 3), MAX_EXPANSIONS));
+        assertEquals(EndgameTable.WIN, search.solve(new Board(6, 3), MAX_EXPANSIONS));
+    }
+
+    @Test
+    public void givesUpWhenOutOfRoom() {
+        ProofNumberSearch search = new ProofNumberSearch(64);
+        assertEquals(EndgameTable.UNKNOWN, search.solve(new Board(4, 4), MAX_EXPANSIONS));
+        assertEquals(-1, search.bestMove());
+
+        search = new ProofNumberSearch();
+        assertEquals(EndgameTable.UNKNOWN, search.solve(new Board(4, 4), 10));
+        assertTrue(search.expansions() <= 10);
+    }
+}
@@ -0,0 +1,65 @@
+package io.sweers.tictactoe;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ScoreCacheTest {
+
+    private static final String KEY = "[X, -, O, -, -, -, -, -, -]O";   // Plus a depth
+    private static final long ENTRY_BYTES = ScoreCache.ENTRY_OVERHEAD + 2 * (KEY.length() + 1);
+
+    @Test
+    public void staysUnderLimitDroppingLeastRecentlyUsed() {
+        ScoreCache cache = new ScoreCache(ENTRY_BYTES * 3);
+        cache.put(KEY + 1, 1);
+        cache.put(KEY + 2, 2);
+        cache.put(KEY + 3, 3);
+        assertNotNull(cache.get(KEY + 1));    // Now 2 is the oldest
+        cache.put(KEY + 4, 4);
+
+        assertEquals(3, cache.size());
+        assertNull(cache.get(KEY + 2));
+        assertEquals(1, (int) cache.get(KEY + 1));
+        assertEquals(4, (int) cache.get(KEY + 4));
+        assertTrue(cache.byteSize() <= cache.maxBytes());
+    }
+
+    @Test
+    public void trimsInTiersAndRefills() {
+        ScoreCache cache = new ScoreCache(ENTRY_BYTES * 8);
+        for (int i = 0; i < 8; i++) {
+            cache.put(KEY + i, i);
+        }
+        assertEquals(ENTRY_BYTES * 8, cache.byteSize());
+
+        cache.trim(0.5f);
+        assertEquals(4, cache.size());
+        assertNotNull(cache.get(KEY + 7));
+        cache.trim(0.25f);
+        assertEquals(2, cache.size());
+        cache.trim(0);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.byteSize());
+
+        // The limit is untouched, so it fills back up
+        for (int i = 0; i < 8; i++) {
+            cache.put(KEY + i, i);
+        }
+        assertEquals(8, cache.size());
+    }
+
+    @Test
+    public void loweringLimitEvictsRightAway() {
+        ScoreCache cache = new ScoreCache(ENTRY_BYTES * 4);
+        for (int i = 0; i < 4; i++) {
+            cache.put(KEY + i, i);
+        }
+        cache.setMaxBytes(ENTRY_BYTES);
+        assertEquals(1, cache.size());
+        assertEquals(3, (int) cache.get(KEY + 3));
+    }
+}
@@ -0,0 +1,254 @@
+package io.sweers.tictactoe;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Learns {@link PatternEvaluator} weights by TD(0) over self-play, for shipping as an
+ * {@link EvalWeights} asset.
+ *
+ * Each game is played by the evaluator itself, one ply deep with a bit of random exploration, and
+ * after every move the value of the previous position is nudged towards the negated value of the
+ * new one (or the final result). Values are {@code tanh} of the weighted features, from the point
+ * of view of the player to move, which is how search uses them too.
+ *
+ * Workers play on their own boards with their own copy of the weights and fold their updates into
+ * the shared set every so often, so the only thing shared between threads is a short synchronized
+ * merge, and nothing is allocated per game. How the merges interleave depends on scheduling, so
+ * training on more than one thread isn't repeatable.
+ *
+ * Run {@link #main(String[])} to train and write out a weights file.
+ */
+public final class SelfPlayTrainer {
+
+    // Learned values are squashed to (-1, 1), search scores are ints, so scale them up on export
+    private static final float EXPORT_SCALE = 1000;
+    private static final int SYNC_INTERVAL = 64;
+
+    private final int size;
+    private final int winLength;
+    private final float[] weights;
+    private final AtomicLong seeds;
+    private final AtomicLong gamesPlayed = new AtomicLong();
+    private float learningRate = 0.05f;
+    private float exploration = 0.1f;
+
+    public SelfPlayTrainer(int size, int winLength, long seed) {
+        this.size = size;
+        this.winLength = winLength;
+        this.seeds = new AtomicLong(seed);
+
+        // Start from the hand-tuned weights so early games aren't completely random
+        this.weights = PatternEvaluator.defaultWeights(winLength);
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] /= EXPORT_SCALE;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length != 5) {
+            System.err.println("Usage: SelfPlayTrainer <size> <winLength> <games> <threads> <output file>");
+            System.exit(1);
+        }
+        SelfPlayTrainer trainer = new SelfPlayTrainer(Integer.parseInt(args[0]), Integer.parseInt(args[1]), 0);
+        long start = System.nanoTime();
+        trainer.train(Long.parseLong(args[2]), Integer.parseInt(args[3]));
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        EvalWeights weights = trainer.export();
+        OutputStream out = new FileOutputStream(new File(args[4]));
+        try {
+            weights.write(out);
+        } finally {
+            out.close();
+        }
+        System.out.println(String.format(Locale.US, "%d games in %dms (%.0f/s), weights %s",
+                trainer.gamesPlayed(), millis, trainer.gamesPlayed() * 1000d / Math.max(1, millis),
+                Arrays.toString(weights.weights())));
+    }
+
+    public void setLearningRate(float learningRate) {
+        this.learningRate = learningRate;
+    }
+
+    /**
+     * @param exploration chance of playing a random candidate move instead of the best one
+     */
+    public void setExploration(float exploration) {
+        this.exploration = exploration;
+    }
+
+    public long gamesPlayed() {
+        return gamesPlayed.get();
+    }
+
+    public void train(long games, int threads) throws InterruptedException {
+        final AtomicLong remaining = new AtomicLong(games);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            executor.execute(new Worker(remaining, new Random(seeds.incrementAndGet())));
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+
+    /**
+     * @return the learned weights, scaled for search. Full windows only happen in finished games,
+     * which search never evaluates, but they're filled in to keep the weights increasing.
+     */
+    public EvalWeights export() {
+        float[] scaled = new float[PatternEvaluator.weightCount(winLength)];
+        synchronized (weights) {
+            for (int i = 0; i < scaled.length; i++) {
+                scaled[i] = weights[i] * EXPORT_SCALE;
+            }
+        }
+        int theirs = winLength + 1;
+        scaled[winLength] = Math.max(scaled[winLength - 1], 1) * 10;
+        scaled[theirs + winLength] = Math.min(scaled[theirs + winLength - 1], -1) * 10;
+        return new EvalWeights(size, winLength, scaled);
+    }
+
+    private static float dot(float[] features, float[] weights) {
+        float sum = 0;
+        for (int i = 0; i < features.length; i++) {
+            sum += features[i] * weights[i];
+        }
+        return sum;
+    }
+
+    private final class Worker implements Runnable {
+        private final AtomicLong remaining;
+        private final Random random;
+        private final Board board = new Board(size, winLength);
+        private final PatternEvaluator evaluator = new PatternEvaluator(size, winLength);
+        private final float[] local = new float[PatternEvaluator.weightCount(winLength)];
+        private final float[] delta = new float[PatternEvaluator.weightCount(winLength)];
+        private float[] features = new float[PatternEvaluator.weightCount(winLength)];
+        private float[] previous = new float[PatternEvaluator.weightCount(winLength)];
+        private final int[] moves = new int[size * size];
+
+        Worker(AtomicLong remaining, Random random) {
+            this.remaining = remaining;
+            this.random = random;
+        }
+
+        @Override
+        public void run() {
+            sync();
+            int sinceSync = 0;
+            while (remaining.getAndDecrement() > 0) {
+                playGame();
+                gamesPlayed.incrementAndGet();
+                if (++sinceSync == SYNC_INTERVAL) {
+                    sync();
+                    sinceSync = 0;
+                }
+            }
+            sync();
+        }
+
+        private void playGame() {
+            board.clear();
+            evaluator.reset(board);
+            boolean hasPrevious = false;
+            float previousValue = 0;
+            while (!board.isOver()) {
+                byte player = board.toMove();
+                int move = chooseMove(player);
+                board.play(move);
+                evaluator.add(move, player);
+                if (board.isOver()) {
+                    break;
+                }
+
+                // Each position is scored for whoever's move it is, so the previous one should have
+                // been worth the opposite of what this one is worth
+                evaluator.features(Board.opponent(player), features);
+                float value = (float) Math.tanh(dot(features, local));
+                if (hasPrevious) {
+                    learn(previous, previousValue, -value);
+                }
+                float[] swap = previous;
+                previous = features;
+                features = swap;
+                previousValue = value;
+                hasPrevious = true;
+            }
+
+            if (hasPrevious) {
+                // Either the game was drawn, or whoever's move it was in the previous position won
+                learn(previous, previousValue, board.winner() == Board.EMPTY ? 0 : 1);
+            }
+        }
+
+        private int chooseMove(byte player) {
+            int count = evaluator.candidates(board, moves);
+            if (random.nextFloat() < exploration) {
+                return moves[random.nextInt(count)];
+            }
+
+            byte opponent = Board.opponent(player);
+            int best = moves[0];
+            float bestScore = Float.NEGATIVE_INFINITY;
+            for (int i = 0; i < count; i++) {
+                int move = moves[i];
+                board.play(move);
+                evaluator.add(move, player);
+                boolean won = board.winner() == player;
+                float score;
+                if (evaluator.hasOpenWin(opponent)) {
+                    // They'll just win on the next move
+                    score = -Float.MAX_VALUE;
+                } else {
+                    evaluator.features(opponent, features);
+                    score = -dot(features, local);
+                }
+                board.undo();
+                evaluator.remove(move, player);
+                if (won) {
+                    return move;
+                }
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = move;
+                }
+            }
+            return best;
+        }
+
+        private void learn(float[] x, float value, float target) {
+            // Gradient of tanh(w . x) with respect to w is (1 - value^2) x. Dividing by |x|^2 keeps
+            // busy positions (lots of open windows) from taking huge steps.
+            float norm = 1;
+            for (float feature : x) {
+                norm += feature * feature;
+            }
+            float step = learningRate * (target - value) * (1 - value * value) / norm;
+            for (int i = 0; i < x.length; i++) {
+                float change = step * x[i];
+                local[i] += change;
+                delta[i] += change;
+            }
+        }
+
+        private void sync() {
+            synchronized (weights) {
+                for (int i = 0; i < weights.length; i++) {
+                    weights[i] += delta[i];
+                    delta[i] = 0;
+                    local[i] = weights[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package io.sweers.tictactoe;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SelfPlayTrainerTest {
+    @Test
+    public void learnsSensibleWeights() throws Exception {
+        SelfPlayTrainer trainer = new SelfPlayTrainer(9, 5, 1);
+        // One worker, so the games (and the weights they learn) are the same every run
+        trainer.train(2000, 1);
+        assertEquals(2000, trainer.gamesPlayed());
+
+        float[] weights = trainer.export().weights();
+        for (int stones = 1; stones < 5; stones++) {
+            // More stones in your own window is better, more in theirs is worse
+            assertTrue(weights[stones + 1] > weights[stones]);
+            assertTrue(weights[6 + stones + 1] < weights[6 + stones]);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        trainer.export().write(out);
+        EvalWeights read = EvalWeights.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(9, read.size());
+        assertEquals(5, read.winLength());
+        assertArrayEquals(weights, read.weights(), 0);
+    }
+}
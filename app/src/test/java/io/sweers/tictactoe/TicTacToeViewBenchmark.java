@@ -0,0 +1,182 @@
+package io.sweers.tictactoe;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.view.LayoutInflater;
+import android.view.View;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Times {@link TicTacToeView} from inflation through drawing, plus the state changes the activity
+ * puts it through, on every board size from 3x3 to 15x15. Alongside time it records how much each
+ * draw allocates, which is what causes GC hitches mid-animation.
+ *
+ * This runs on Robolectric, so the canvas is a stand-in and absolute numbers say nothing about a
+ * real device. What they're good for is comparing sizes, and comparing before and after a change.
+ *
+ * It takes a while and only prints a report, so it's ignored in normal test runs. Take the
+ * {@link Ignore} off locally to run it.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class TicTacToeViewBenchmark {
+
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 100;
+    private static final int VIEW_SIZE = 1080;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private TicTacToeView view;
+    private Canvas canvas;
+
+    @Ignore("Benchmark, run by hand")
+    @Test
+    public void benchmarkBoardSizes() {
+        canvas = new Canvas(Bitmap.createBitmap(VIEW_SIZE, VIEW_SIZE, Bitmap.Config.ARGB_8888));
+
+        StringBuilder report = new StringBuilder(String.format(Locale.US,
+                "%-6s %9s %9s %9s %9s %9s %9s %9s %9s %11s%n",
+                "grid", "inflate", "measure", "layout", "draw", "fullDraw", "enabled", "endGame",
+                "restore", "bytes/draw"));
+        for (int size = 3; size <= 15; size += 2) {
+            final int gridSize = size;
+            final int cells = size * size;
+            final char[] fullGrid = new char[cells];
+            for (int i = 0; i < cells; i++) {
+                fullGrid[i] = i % 2 == 0 ? TicTacToeGame.PLAYER_ONE : TicTacToeGame.PLAYER_TWO;
+            }
+            final int[] winningIndices = new int[size];
+            for (int i = 0; i < size; i++) {
+                winningIndices[i] = i;
+            }
+
+            long inflate = time(new Runnable() {
+                @Override
+                public void run() {
+                    inflate(gridSize);
+                }
+            });
+
+            inflate(gridSize);
+            long measure = time(new Runnable() {
+                @Override
+                public void run() {
+                    view.measure(exactly(VIEW_SIZE), exactly(VIEW_SIZE));
+                }
+            });
+            long layout = time(new Runnable() {
+                @Override
+                public void run() {
+                    view.layout(0, 0, VIEW_SIZE, VIEW_SIZE);
+                }
+            });
+            long draw = time(new Runnable() {
+                @Override
+                public void run() {
+                    view.draw(canvas);
+                }
+            });
+
+            view.restoreBoard(fullGrid);
+            long fullDraw = time(new Runnable() {
+                @Override
+                public void run() {
+                    view.draw(canvas);
+                }
+            });
+            long bytesPerDraw = allocatedBytesPerDraw();
+
+            long enabled = time(new Runnable() {
+                boolean enabled;
+
+                @Override
+                public void run() {
+                    enabled = !enabled;
+                    view.setEnabled(enabled);
+                    view.draw(canvas);
+                }
+            });
+            long endGame = time(new Runnable() {
+                @Override
+                public void run() {
+                    view.reset();
+                    view.restoreBoard(fullGrid);
+                    view.endGame(winningIndices);
+                    view.draw(canvas);
+                }
+            });
+            long restore = time(new Runnable() {
+                @Override
+                public void run() {
+                    view.reset();
+                    view.restoreBoard(fullGrid);
+                    view.draw(canvas);
+                }
+            });
+
+            assertEquals(size, view.getGridSize());
+            assertTrue(draw > 0 && fullDraw > 0);
+            report.append(String.format(Locale.US, "%-6s %9d %9d %9d %9d %9d %9d %9d %9d %11d%n",
+                    size + "x" + size, inflate / 1000, measure / 1000, layout / 1000, draw / 1000,
+                    fullDraw / 1000, enabled / 1000, endGame / 1000, restore / 1000, bytesPerDraw));
+        }
+        System.out.println("TicTacToeView, mean microseconds per pass");
+        System.out.print(report);
+    }
+
+    private void inflate(int gridSize) {
+        view = (TicTacToeView) LayoutInflater.from(RuntimeEnvironment.application).inflate(R.layout.tic_tac_toe, null);
+        view.setGridSize(gridSize);
+    }
+
+    /**
+     * @return mean nanos per run, after some unmeasured warmup runs
+     */
+    private static long time(Runnable runnable) {
+        for (int i = 0; i < WARMUP; i++) {
+            runnable.run();
+        }
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            runnable.run();
+            histogram.record(System.nanoTime() - start);
+        }
+        return histogram.meanNanos();
+    }
+
+    /**
+     * @return bytes allocated per draw of the current board, or -1 if the JVM can't tell us
+     */
+    private long allocatedBytesPerDraw() {
+        if (!(threads instanceof com.sun.management.ThreadMXBean)
+                || !((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        long thread = Thread.currentThread().getId();
+        long before = allocations.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < ITERATIONS; i++) {
+            view.draw(canvas);
+        }
+        return (allocations.getThreadAllocatedBytes(thread) - before) / ITERATIONS;
+    }
+
+    private static int exactly(int size) {
+        return View.MeasureSpec.makeMeasureSpec(size, View.MeasureSpec.EXACTLY);
+    }
+}
@@ -0,0 +1,275 @@
+package io.sweers.tictactoe;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Round-robin harness for {@link MoveEngine}s. Every engine plays every other one, from both sides
+ * of the board, across a pool of threads. Alongside results and an Elo estimate it records how long
+ * each move took and how much it allocated, so engine configurations can be picked on data.
+ *
+ * This lives with the JVM tests because it leans on HotSpot's per-thread allocation counters,
+ * which Android doesn't have. Run {@link #main(String[])} for the default 3x3 lineup.
+ */
+public final class Tournament {
+
+    private final int size;
+    private final int winLength;
+    private final List<Entry> entries = new ArrayList<>();
+    private AtomicLongArray pairings = new AtomicLongArray(0);
+
+    public Tournament(int size, int winLength) {
+        this.size = size;
+        this.winLength = winLength;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int gamesPerPair = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        final EndgameTable table = EndgameTable.build(3, 3, 9);
+        final AtomicLong seeds = new AtomicLong();
+        Tournament tournament = new Tournament(3, 3)
+                .add(new MoveEngine.Factory() {
+                    @Override
+                    public MoveEngine create() {
+                        return new MinimaxEngine(new PositionSolver(), new Random(seeds.incrementAndGet()));
+                    }
+                })
+                .add(new MoveEngine.Factory() {
+                    @Override
+                    public MoveEngine create() {
+                        return new SearchEngine(2);
+                    }
+                })
+                .add(new MoveEngine.Factory() {
+                    @Override
+                    public MoveEngine create() {
+                        return new TableEngine(table, new RandomEngine(new Random(seeds.incrementAndGet())));
+                    }
+                })
+                .add(new MoveEngine.Factory() {
+                    @Override
+                    public MoveEngine create() {
+                        return new RandomEngine(new Random(seeds.incrementAndGet()));
+                    }
+                });
+        tournament.play(gamesPerPair, threads);
+        System.out.println(tournament.report());
+    }
+
+    public Tournament add(MoveEngine.Factory factory) {
+        entries.add(new Entry(factory));
+        return this;
+    }
+
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    /**
+     * Plays {@code gamesPerPair} games between every ordered pair of engines, so each pairing gets
+     * that many games with each engine going first.
+     */
+    public void play(final int gamesPerPair, int threads) throws InterruptedException {
+        final int n = entries.size();
+        pairings = new AtomicLongArray(n * n);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < entries.size(); i++) {
+            for (int j = 0; j < entries.size(); j++) {
+                if (i == j) {
+                    continue;
+                }
+                final Entry first = entries.get(i);
+                final Entry second = entries.get(j);
+                final int pairing = i * n + j;
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        Match match = new Match(first, second);
+                        for (int game = 0; game < gamesPerPair; game++) {
+                            match.play();
+                            pairings.incrementAndGet(pairing);
+                        }
+                    }
+                });
+            }
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+
+    /**
+     * Fits Bradley-Terry style ratings to the results, anchored so the average rating is 1500.
+     */
+    public double[] eloRatings() {
+        int n = entries.size();
+        double[] ratings = new double[n];
+        for (int iteration = 0; iteration < 1000; iteration++) {
+            double[] next = new double[n];
+            for (int i = 0; i < n; i++) {
+                Entry entry = entries.get(i);
+                double expected = 0;
+                long played = 0;
+                for (int j = 0; j < n; j++) {
+                    long games = pairings.get(i * n + j) + pairings.get(j * n + i);
+                    if (i != j && games > 0) {
+                        expected += games / (1 + Math.pow(10, (ratings[j] - ratings[i]) / 400));
+                        played += games;
+                    }
+                }
+                double actual = entry.wins.get() + entry.draws.get() / 2d;
+                // Nudge towards the rating that would explain the actual score, capped so that
+                // perfect (or perfectly awful) records don't run off to infinity
+                next[i] = played == 0 ? ratings[i] : ratings[i] + Math.max(-50, Math.min(50, 32 * (actual - expected) / Math.sqrt(played)));
+            }
+            double mean = 0;
+            for (double rating : next) {
+                mean += rating / n;
+            }
+            for (int i = 0; i < n; i++) {
+                ratings[i] = Math.max(0, Math.min(3000, next[i] - mean + 1500));
+            }
+        }
+        return ratings;
+    }
+
+    public String report() {
+        double[] elo = eloRatings();
+        StringBuilder builder = new StringBuilder(String.format(Locale.US,
+                "%-22s %6s %6s %6s %7s %6s %9s %9s %9s %10s%n",
+                "engine", "wins", "draws", "losses", "score", "elo", "p50(us)", "p99(us)", "max(us)", "bytes/move"));
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            long games = entry.wins.get() + entry.draws.get() + entry.losses.get();
+            LatencyHistogram latency = entry.latency;
+            builder.append(String.format(Locale.US, "%-22s %6d %6d %6d %6.1f%% %6.0f %9d %9d %9d %10d%n",
+                    entry.name,
+                    entry.wins.get(),
+                    entry.draws.get(),
+                    entry.losses.get(),
+                    games == 0 ? 0 : 100d * (entry.wins.get() + entry.draws.get() / 2d) / games,
+                    elo[i],
+                    latency.percentileNanos(50) / 1000,
+                    latency.percentileNanos(99) / 1000,
+                    latency.maxNanos() / 1000,
+                    entry.bytesPerMove()));
+        }
+        return builder.toString();
+    }
+
+    public final class Entry {
+        final MoveEngine.Factory factory;
+        final String name;
+        final AtomicLong wins = new AtomicLong();
+        final AtomicLong draws = new AtomicLong();
+        final AtomicLong losses = new AtomicLong();
+        final AtomicLong allocatedBytes = new AtomicLong();
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        Entry(MoveEngine.Factory factory) {
+            this.factory = factory;
+            this.name = factory.create().name();
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public long wins() {
+            return wins.get();
+        }
+
+        public long draws() {
+            return draws.get();
+        }
+
+        public long losses() {
+            return losses.get();
+        }
+
+        public LatencyHistogram latency() {
+            return latency;
+        }
+
+        /**
+         * @return average bytes allocated per move, or -1 if the JVM can't tell us
+         */
+        public long bytesPerMove() {
+            long moves = latency.count();
+            long bytes = allocatedBytes.get();
+            return moves == 0 || bytes < 0 ? -1 : bytes / moves;
+        }
+    }
+
+    /**
+     * A series of games between two engines on one thread, with {@code first} always moving first.
+     */
+    private final class Match {
+        private final Entry first;
+        private final Entry second;
+        private final MoveEngine firstEngine;
+        private final MoveEngine secondEngine;
+        private final Board board = new Board(size, winLength);
+        private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        private final boolean measureAllocations;
+
+        Match(Entry first, Entry second) {
+            this.first = first;
+            this.second = second;
+            this.firstEngine = first.factory.create();
+            this.secondEngine = second.factory.create();
+            this.measureAllocations = threads instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported();
+        }
+
+        void play() {
+            board.clear();
+            while (!board.isOver()) {
+                boolean firstToMove = board.toMove() == Board.ONE;
+                Entry entry = firstToMove ? first : second;
+                MoveEngine engine = firstToMove ? firstEngine : secondEngine;
+
+                long allocatedBefore = allocatedBytes();
+                long start = System.nanoTime();
+                int move = engine.chooseMove(board);
+                entry.latency.record(System.nanoTime() - start);
+                long allocatedAfter = allocatedBytes();
+                if (allocatedBefore >= 0) {
+                    entry.allocatedBytes.addAndGet(allocatedAfter - allocatedBefore);
+                } else {
+                    entry.allocatedBytes.set(-1);
+                }
+
+                board.play(move);
+            }
+
+            if (board.winner() == Board.ONE) {
+                first.wins.incrementAndGet();
+                second.losses.incrementAndGet();
+            } else if (board.winner() == Board.TWO) {
+                first.losses.incrementAndGet();
+                second.wins.incrementAndGet();
+            } else {
+                first.draws.incrementAndGet();
+                second.draws.incrementAndGet();
+            }
+        }
+
+        private long allocatedBytes() {
+            if (!measureAllocations) {
+                return -1;
+            }
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+    }
+}
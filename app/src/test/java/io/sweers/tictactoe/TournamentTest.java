@@ -0,0 +1,38 @@
+package io.sweers.tictactoe;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TournamentTest {
+    @Test
+    public void perfectPlayNeverLoses() throws Exception {
+        Tournament tournament = new Tournament(3, 3)
+                .add(new MoveEngine.Factory() {
+                    @Override
+                    public MoveEngine create() {
+                        return new MinimaxEngine(new PositionSolver(), new Random(1));
+                    }
+                })
+                .add(new MoveEngine.Factory() {
+                    @Override
+                    public MoveEngine create() {
+                        return new RandomEngine(new Random(2));
+                    }
+                });
+        tournament.play(50, 2);
+
+        Tournament.Entry minimax = tournament.entries().get(0);
+        Tournament.Entry random = tournament.entries().get(1);
+        assertEquals(0, minimax.losses());
+        assertEquals(100, minimax.wins() + minimax.draws());
+        assertEquals(minimax.wins(), random.losses());
+        assertTrue(minimax.latency().count() > 0);
+
+        double[] elo = tournament.eloRatings();
+        assertTrue(elo[0] > elo[1]);
+    }
+}
@@ -0,0 +1,190 @@
+package io.sweers.tictactoe;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UltimateBoardTest {
+
+    @Test
+    public void nextMoveIsForcedIntoTheBoardMatchingTheCell() {
+        UltimateBoard board = new UltimateBoard();
+        assertEquals(UltimateBoard.ANY_BOARD, board.forcedBoard());
+        board.play(move(0, 4));
+        assertEquals(4, board.forcedBoard());
+
+        for (int sub = 0; sub < 9; sub++) {
+            assertEquals(sub == 4, board.isLegal(move(sub, 0)));
+        }
+        int[] moves = new int[UltimateBoard.MOVES];
+        int count = board.legalMoves(moves);
+        assertEquals(9, count);
+        for (int i = 0; i < count; i++) {
+            assertEquals(4, moves[i] / 9);
+        }
+
+        try {
+            board.play(move(1, 0));
+            fail("Played outside the forced board");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(1, board.moveCount());
+    }
+
+    @Test
+    public void wonBoardsCloseAndFreeUpTheForcedBoard() {
+        UltimateBoard board = new UltimateBoard();
+        // O takes the middle row of board 0, with X being sent back there each time
+        int[] moves = {move(0, 0), move(0, 3), move(3, 0), move(0, 4), move(4, 0), move(0, 5)};
+        for (int move : moves) {
+            board.play(move);
+        }
+        assertEquals(Board.TWO, board.subBoardWinner(0));
+        assertEquals(Board.EMPTY, board.subBoardWinner(3));
+        assertEquals(5, board.forcedBoard());
+
+        // Being sent to a closed board means playing anywhere else that's open
+        board.play(move(5, 0));
+        assertEquals(UltimateBoard.ANY_BOARD, board.forcedBoard());
+        assertFalse(board.isLegal(move(0, 8)));
+        assertTrue(board.isLegal(move(1, 0)));
+        assertTrue(board.isLegal(move(8, 8)));
+        assertFalse(board.isOver());
+
+        // Undoing the winning move reopens the board
+        board.undo();
+        board.undo();
+        assertEquals(Board.EMPTY, board.subBoardWinner(0));
+        assertEquals(0, board.forcedBoard());
+        assertTrue(board.isLegal(move(0, 8)));
+    }
+
+    @Test
+    public void playAndUndoRoundTrip() {
+        Random random = new Random(0);
+        int[] moves = new int[UltimateBoard.MOVES];
+        for (int game = 0; game < 50; game++) {
+            UltimateBoard board = new UltimateBoard();
+            while (!board.isOver()) {
+                String before = describe(board);
+                int count = board.legalMoves(moves);
+                assertTrue(count > 0);
+                for (int i = 0; i < count; i++) {
+                    assertTrue(board.isLegal(moves[i]));
+                    board.play(moves[i]);
+                    board.undo();
+                    assertEquals(before, describe(board));
+                }
+                board.play(moves[random.nextInt(count)]);
+            }
+            assertEquals(0, board.legalMoves(moves));
+
+            int played = board.moveCount();
+            UltimateBoard copy = board.copy();
+            assertEquals(describe(board), describe(copy));
+            for (int i = 0; i < played; i++) {
+                copy.undo();
+            }
+            assertEquals(describe(new UltimateBoard()), describe(copy));
+        }
+    }
+
+    @Test
+    public void overallWinnerHasALineOfSubBoards() {
+        Random random = new Random(1);
+        int[] moves = new int[UltimateBoard.MOVES];
+        int[] wins = new int[3];
+        for (int game = 0; game < 200; game++) {
+            UltimateBoard board = new UltimateBoard();
+            while (!board.isOver()) {
+                board.play(moves[random.nextInt(board.legalMoves(moves))]);
+            }
+            int ones = 0;
+            int twos = 0;
+            for (int sub = 0; sub < 9; sub++) {
+                if (board.subBoardWinner(sub) == Board.ONE) {
+                    ones |= 1 << sub;
+                } else if (board.subBoardWinner(sub) == Board.TWO) {
+                    twos |= 1 << sub;
+                }
+            }
+            byte winner = board.winner();
+            wins[winner]++;
+            assertEquals(winner == Board.ONE, PackedBoard.hasLine(ones));
+            assertEquals(winner == Board.TWO, PackedBoard.hasLine(twos));
+        }
+        assertTrue(wins[Board.ONE] > 0);
+        assertTrue(wins[Board.TWO] > 0);
+    }
+
+    @Test
+    public void searchReturnsLegalMovesAndLeavesTheBoardAlone() {
+        Random random = new Random(2);
+        UltimateSearch search = new UltimateSearch(new Random(3));
+        int[] moves = new int[UltimateBoard.MOVES];
+        for (int i = 0; i < 20; i++) {
+            UltimateBoard board = new UltimateBoard();
+            int plies = random.nextInt(40);
+            for (int ply = 0; ply < plies && !board.isOver(); ply++) {
+                board.play(moves[random.nextInt(board.legalMoves(moves))]);
+            }
+            if (board.isOver()) {
+                continue;
+            }
+            String before = describe(board);
+            int move = search.bestMove(board, 2000, Long.MAX_VALUE);
+            assertTrue("Move " + move + " on\n" + before, board.isLegal(move));
+            assertEquals(before, describe(board));
+        }
+    }
+
+    @Test
+    public void trimDuringASearchDropsTheTreeOnceItsDone() throws InterruptedException {
+        final UltimateSearch search = new UltimateSearch(new Random(4));
+        final UltimateBoard board = new UltimateBoard();
+        Thread searching = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                search.bestMove(board, Integer.MAX_VALUE, 300000000L);
+            }
+        });
+        searching.start();
+        while (search.byteSize() == 0) {
+            Thread.yield();
+        }
+
+        long start = System.nanoTime();
+        search.trim(0);
+        assertTrue("Trim waited for the search", System.nanoTime() - start < 100000000L);
+        assertTrue(search.byteSize() > 0);
+
+        searching.join();
+        assertEquals(0, search.byteSize());
+        assertTrue(new UltimateBoard().isLegal(search.bestMove(new UltimateBoard(), 100, Long.MAX_VALUE)));
+    }
+
+    private static String describe(UltimateBoard board) {
+        StringBuilder builder = new StringBuilder();
+        for (int move = 0; move < UltimateBoard.MOVES; move++) {
+            builder.append(Board.toChar(board.get(move)));
+        }
+        for (int sub = 0; sub < 9; sub++) {
+            builder.append(Board.toChar(board.subBoardWinner(sub)));
+        }
+        return builder.append(' ').append(board.forcedBoard())
+                .append(' ').append(board.toMove())
+                .append(' ').append(board.winner())
+                .append(' ').append(board.isOver())
+                .append(' ').append(board.moveCount())
+                .toString();
+    }
+
+    static int move(int sub, int cell) {
+        return sub * 9 + cell;
+    }
+}
@@ -0,0 +1,170 @@
+package io.sweers.tictactoe.peer;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.sweers.tictactoe.PackedBoard;
+import io.sweers.tictactoe.TicTacToeGame;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PeerConnectionTest {
+
+    private static final int GAMES = 500;
+
+    @Test
+    public void playsGamesOverLoopback() throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicInteger games = new AtomicInteger();
+        final AtomicInteger moves = new AtomicInteger();
+        AutoPlayer hostPlayer = new AutoPlayer(new Random(0), moves) {
+            @Override
+            void onGameOver() {
+                if (games.incrementAndGet() < GAMES) {
+                    connection.newGame();
+                } else {
+                    done.countDown();
+                }
+            }
+        };
+        AutoPlayer joinPlayer = new AutoPlayer(new Random(1), moves);
+
+        PeerConnection host = PeerConnection.host(0, hostPlayer);
+        hostPlayer.connection = host;
+        PeerConnection joiner = join(host, joinPlayer);
+        joinPlayer.connection = joiner;
+        try {
+            assertTrue("Timed out after " + games.get() + " games", done.await(60, TimeUnit.SECONDS));
+
+            // The host can see the last game end before its ack makes it back to the joiner
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (host.ackLatency().count() + joiner.ackLatency().count() < moves.get()
+                    && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+
+            // Every move made it across and got acked
+            assertEquals(GAMES, games.get());
+            assertEquals(moves.get(), host.ackLatency().count() + joiner.ackLatency().count());
+            assertEquals(host.framesSent(), joiner.framesReceived());
+            assertEquals(hostPlayer.board, joinPlayer.board);
+        } finally {
+            joiner.stop();
+            host.stop();
+        }
+    }
+
+    @Test
+    public void rejoiningPeerIsResyncedFromSnapshot() throws Exception {
+        Recorder hostRecorder = new Recorder();
+        PeerConnection host = PeerConnection.host(0, hostRecorder);
+        Recorder first = new Recorder();
+        PeerConnection joiner = join(host, first);
+        try {
+            first.awaitPlayer(TicTacToeGame.PLAYER_TWO);
+            host.play(4);
+            first.awaitBoard(PackedBoard.play(PackedBoard.EMPTY, 4));
+            joiner.play(0);
+            hostRecorder.awaitBoard(PackedBoard.play(PackedBoard.play(PackedBoard.EMPTY, 4), 0));
+        } finally {
+            joiner.stop();
+        }
+
+        // A fresh joiner knows nothing about the game, so all of it has to come from the snapshot
+        Recorder second = new Recorder();
+        PeerConnection rejoiner = join(host, second);
+        try {
+            second.awaitBoard(hostRecorder.board);
+            assertEquals(TicTacToeGame.PLAYER_TWO, second.player);
+            assertEquals(1, rejoiner.resyncs());
+        } finally {
+            rejoiner.stop();
+            host.stop();
+        }
+    }
+
+    private static PeerConnection join(PeerConnection host, PeerConnection.Listener listener) throws IOException {
+        return PeerConnection.join(new InetSocketAddress(InetAddress.getByName(null), host.getPort()), listener);
+    }
+
+    /**
+     * Plays random legal moves whenever it's its turn.
+     */
+    private static class AutoPlayer implements PeerConnection.Listener {
+        private final Random random;
+        private final AtomicInteger moves;
+        volatile PeerConnection connection;
+        volatile int board;
+
+        AutoPlayer(Random random, AtomicInteger moves) {
+            this.random = random;
+            this.moves = moves;
+        }
+
+        @Override
+        public void onGameChanged(int board, char player, boolean confirmed) {
+            this.board = board;
+            if (!confirmed || player == TicTacToeGame.NONE) {
+                return;
+            }
+            if (PackedBoard.gameState(board) != TicTacToeGame.CONTINUE) {
+                onGameOver();
+            } else if (PackedBoard.toMove(board) == player) {
+                int empty = PackedBoard.emptyMask(board);
+                int cell;
+                do {
+                    cell = random.nextInt(PackedBoard.CELLS);
+                } while ((empty & (1 << cell)) == 0);
+                moves.incrementAndGet();
+                connection.play(cell);
+            }
+        }
+
+        @Override
+        public void onConnectionChanged(boolean connected) {
+        }
+
+        void onGameOver() {
+        }
+    }
+
+    private static final class Recorder implements PeerConnection.Listener {
+        volatile int board = -1;
+        volatile char player;
+
+        @Override
+        public synchronized void onGameChanged(int board, char player, boolean confirmed) {
+            this.board = board;
+            this.player = player;
+            notifyAll();
+        }
+
+        @Override
+        public void onConnectionChanged(boolean connected) {
+        }
+
+        synchronized void awaitBoard(int expected) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (board != expected && System.nanoTime() < deadline) {
+                wait(100);
+            }
+            assertEquals(expected, board);
+        }
+
+        synchronized void awaitPlayer(char expected) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (player != expected && System.nanoTime() < deadline) {
+                wait(100);
+            }
+            assertEquals(expected, player);
+        }
+    }
+}
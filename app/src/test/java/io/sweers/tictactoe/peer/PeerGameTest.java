@@ -0,0 +1,98 @@
+package io.sweers.tictactoe.peer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import io.sweers.tictactoe.PackedBoard;
+import io.sweers.tictactoe.TicTacToeGame;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PeerGameTest {
+
+    private final PeerGame host = new PeerGame(true);
+    private final PeerGame joiner = new PeerGame(false);
+    private final ByteBuffer toJoiner = ByteBuffer.allocate(PeerProtocol.FRAME_SIZE * 8);
+    private final ByteBuffer toHost = ByteBuffer.allocate(PeerProtocol.FRAME_SIZE * 8);
+    private int totalFrameBytes;
+
+    @Test
+    public void movesAreOptimisticUntilAcked() {
+        host.sendState(toJoiner);
+        deliver();
+        assertEquals(TicTacToeGame.PLAYER_TWO, joiner.player);
+
+        assertTrue(host.play(4, toJoiner, 0));
+        assertEquals(PackedBoard.play(PackedBoard.EMPTY, 4), host.board);
+        assertEquals(0, host.pendingPly);
+        // Can't go twice in a row, even before the peer has answered
+        assertFalse(host.play(0, toJoiner, 0));
+
+        deliver();
+        assertEquals(host.board, joiner.board);
+        assertEquals(PeerGame.NO_PLY, host.pendingPly);
+        assertEquals(1, host.ackLatency.count());
+        assertEquals(PeerProtocol.FRAME_SIZE * 4, totalFrameBytes);
+    }
+
+    @Test
+    public void staleMoveIsRolledBackByNewGame() {
+        host.sendState(toJoiner);
+        deliver();
+        host.play(4, toJoiner, 0);
+        deliver();
+
+        // The joiner moves while the host starts over, so they cross on the wire
+        assertTrue(joiner.play(0, toHost, 0));
+        host.newGame(toJoiner);
+        deliver();
+
+        assertEquals(PackedBoard.EMPTY, joiner.board);
+        assertEquals(PeerGame.NO_PLY, joiner.pendingPly);
+        assertEquals(host.gameId, joiner.gameId);
+        // Whoever went second last time goes first now
+        assertEquals(TicTacToeGame.PLAYER_ONE, joiner.player);
+        assertEquals(TicTacToeGame.PLAYER_TWO, host.player);
+    }
+
+    @Test
+    public void disagreementsAreSettledByTheHost() {
+        host.sendState(toJoiner);
+        deliver();
+        // Knock the joiner out of step, as if it had missed a frame
+        joiner.board = PackedBoard.play(PackedBoard.EMPTY, 8);
+        host.play(4, toJoiner, 0);
+        deliver();
+
+        assertEquals(host.board, joiner.board);
+        assertEquals(PackedBoard.play(PackedBoard.EMPTY, 4), joiner.board);
+        assertEquals(1, host.resyncs);
+        assertEquals(2, joiner.resyncs);
+        assertTrue(joiner.isMyTurn());
+    }
+
+    /**
+     * Passes frames back and forth until neither side has anything more to say.
+     */
+    private void deliver() {
+        while (toJoiner.position() > 0 || toHost.position() > 0) {
+            pass(toJoiner, joiner, toHost);
+            pass(toHost, host, toJoiner);
+        }
+    }
+
+    private void pass(ByteBuffer frames, PeerGame receiver, ByteBuffer replies) {
+        frames.flip();
+        totalFrameBytes += frames.remaining();
+        ByteBuffer pending = ByteBuffer.allocate(frames.remaining());
+        pending.put(frames);
+        frames.clear();
+        pending.flip();
+        while (pending.remaining() >= PeerProtocol.FRAME_SIZE) {
+            receiver.receive(pending, replies, System.nanoTime());
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package io.sweers.tictactoe.server;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.sweers.tictactoe.PackedBoard;
+import io.sweers.tictactoe.PositionSolver;
+import io.sweers.tictactoe.SolvedPositionCache;
+import io.sweers.tictactoe.TicTacToeGame;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GameServerTest {
+
+    private static final int CLIENTS = 4;
+    private static final int GAMES_PER_CLIENT = 25;
+
+    @Test
+    public void concurrentSessionsPlayToTheEndAndCleanUp() throws Exception {
+        final GameSessionManager sessions = new GameSessionManager(
+                new PositionSolver(new SolvedPositionCache()), 1, TimeUnit.MINUTES);
+        assertTrue(sessions.warmUp(2) > 0);
+        final GameServer server = new GameServer(sessions, 1, TimeUnit.SECONDS);
+        server.start(0);
+        try {
+            final CountDownLatch done = new CountDownLatch(CLIENTS);
+            final AtomicReference<Throwable> failure = new AtomicReference<>();
+            for (int i = 0; i < CLIENTS; i++) {
+                final long seed = i;
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            playGames(server.getPort(), sessions, new Random(seed));
+                        } catch (Throwable t) {
+                            failure.compareAndSet(null, t);
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }).start();
+            }
+            assertTrue("Timed out", done.await(30, TimeUnit.SECONDS));
+            if (failure.get() != null) {
+                throw new AssertionError(failure.get());
+            }
+
+            assertEquals(0, sessions.size());
+            assertEquals(CLIENTS, server.getMetrics().connections());
+            // Just the one move each client tries after every game is over
+            assertEquals(CLIENTS * GAMES_PER_CLIENT, server.getMetrics().errors());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void badRequestsGetErrorsBack() throws Exception {
+        GameSessionManager sessions = new GameSessionManager(new PositionSolver(), 1, TimeUnit.MINUTES);
+        GameServer server = new GameServer(sessions, 1, TimeUnit.SECONDS);
+        server.start(0);
+        SocketChannel channel = connect(server.getPort());
+        try {
+            ByteBuffer reply = request(channel, 0, Protocol.OP_NEW, 0);
+            int gameId = reply.getInt();
+            assertEquals(Protocol.STATUS_OK, reply.get());
+
+            request(channel, gameId, Protocol.OP_MOVE, 4);
+            assertEquals(Protocol.STATUS_ILLEGAL_MOVE, request(channel, gameId, Protocol.OP_MOVE, 4).get(4));
+            assertEquals(Protocol.STATUS_ILLEGAL_MOVE, request(channel, gameId, Protocol.OP_MOVE, 9).get(4));
+            assertEquals(Protocol.STATUS_UNKNOWN_GAME, request(channel, gameId + 1, Protocol.OP_MOVE, 0).get(4));
+            assertEquals(Protocol.STATUS_BAD_REQUEST, request(channel, gameId, (byte) 42, 0).get(4));
+
+            assertEquals(Protocol.STATUS_OK, request(channel, gameId, Protocol.OP_CLOSE, 0).get(4));
+            assertEquals(Protocol.STATUS_UNKNOWN_GAME, request(channel, gameId, Protocol.OP_CLOSE, 0).get(4));
+            assertEquals(0, sessions.size());
+            assertEquals(4, server.getMetrics().errors());
+        } finally {
+            channel.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void idleSessionsAreEvicted() throws Exception {
+        GameSessionManager sessions = new GameSessionManager(new PositionSolver(), 50, TimeUnit.MILLISECONDS);
+        GameServer server = new GameServer(sessions, 10, TimeUnit.MILLISECONDS);
+        server.start(0);
+        SocketChannel channel = connect(server.getPort());
+        try {
+            int gameId = request(channel, 0, Protocol.OP_NEW, 0).getInt();
+            assertEquals(1, sessions.size());
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (sessions.size() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, sessions.size());
+            assertEquals(1, server.getMetrics().evictions());
+            assertEquals(Protocol.STATUS_UNKNOWN_GAME, request(channel, gameId, Protocol.OP_MOVE, 0).get(4));
+        } finally {
+            channel.close();
+            server.stop();
+        }
+    }
+
+    /**
+     * Plays random moves against the CPU, checking every reply against the server's own board.
+     * The CPU plays perfectly, so the client should never win.
+     */
+    private static void playGames(int port, GameSessionManager sessions, Random random) throws IOException {
+        SocketChannel channel = connect(port);
+        try {
+            for (int game = 0; game < GAMES_PER_CLIENT; game++) {
+                boolean cpuFirst = game % 2 == 1;
+                ByteBuffer reply = request(channel, 0, Protocol.OP_NEW, cpuFirst ? 1 : 0);
+                int gameId = reply.getInt();
+                assertEquals(Protocol.STATUS_OK, reply.get());
+                int board = PackedBoard.withToMove(PackedBoard.EMPTY,
+                        cpuFirst ? TicTacToeGame.PLAYER_TWO : TicTacToeGame.PLAYER_ONE);
+                byte cpuCell = reply.get();
+                assertEquals(cpuFirst, cpuCell != Protocol.NO_CELL);
+                if (cpuFirst) {
+                    board = PackedBoard.play(board, cpuCell);
+                }
+
+                int state = TicTacToeGame.CONTINUE;
+                while (state == TicTacToeGame.CONTINUE) {
+                    int move = randomMove(board, random);
+                    board = PackedBoard.play(board, move);
+                    reply = request(channel, gameId, Protocol.OP_MOVE, move);
+                    assertEquals(gameId, reply.getInt());
+                    assertEquals(Protocol.STATUS_OK, reply.get());
+                    cpuCell = reply.get();
+                    state = reply.get();
+                    if (cpuCell != Protocol.NO_CELL) {
+                        board = PackedBoard.play(board, cpuCell);
+                    }
+                    assertEquals(PackedBoard.gameState(board), state);
+                    assertEquals(board, sessions.board(gameId));
+                }
+                assertTrue(state != TicTacToeGame.ONE_WINS);
+
+                assertEquals(Protocol.STATUS_GAME_OVER, request(channel, gameId, Protocol.OP_MOVE, 0).get(4));
+                assertEquals(Protocol.STATUS_OK, request(channel, gameId, Protocol.OP_CLOSE, 0).get(4));
+                assertEquals(PackedBoard.EMPTY, sessions.board(gameId));
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static SocketChannel connect(int port) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(InetAddress.getByName(null), port));
+        channel.socket().setTcpNoDelay(true);
+        return channel;
+    }
+
+    /**
+     * Sends one request and blocks for its reply.
+     */
+    private static ByteBuffer request(SocketChannel channel, int gameId, byte op, int cell) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(Protocol.FRAME_SIZE);
+        Protocol.writeRequest(out, gameId, op, cell);
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        ByteBuffer in = ByteBuffer.allocate(Protocol.FRAME_SIZE);
+        while (in.hasRemaining()) {
+            if (channel.read(in) == -1) {
+                throw new IOException("Server hung up");
+            }
+        }
+        in.flip();
+        return in;
+    }
+
+    private static int randomMove(int board, Random random) {
+        int empty = PackedBoard.emptyMask(board);
+        int pick = random.nextInt(Integer.bitCount(empty));
+        for (int i = 0; i < PackedBoard.CELLS; i++) {
+            if ((empty & (1 << i)) != 0 && pick-- == 0) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("No moves left in " + board);
+    }
+}